@@ -1,35 +1,181 @@
 package org.protogalaxy.fractalfathom.cli
 
-import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
 import kotlinx.coroutines.runBlocking
+import org.protogalaxy.fractalfathom.cli.analysis.AnalyzerConfig
 import org.protogalaxy.fractalfathom.cli.analysis.CodeAnalyzer
+import org.protogalaxy.fractalfathom.cli.analysis.ProjectWatcher
+import org.protogalaxy.fractalfathom.cli.analysis.cache.IRCache
+import org.protogalaxy.fractalfathom.cli.analysis.ir.EmbeddingStorage
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.analysis.store.ColumnarIRStore
+import org.protogalaxy.fractalfathom.cli.analysis.store.IRBackend
+import org.protogalaxy.fractalfathom.cli.modelInference.EmbeddingCache
+import org.protogalaxy.fractalfathom.cli.modelInference.EmbeddingConfig
 import org.protogalaxy.fractalfathom.cli.modelInference.GraphCodeBERTUtils
 import org.protogalaxy.fractalfathom.cli.modelInference.LLMUtils
+import org.protogalaxy.fractalfathom.cli.output.IRDataWriter
+import org.protogalaxy.fractalfathom.cli.output.IRFormat
 import org.protogalaxy.fractalfathom.cli.visualization.DiagramViewer
 import java.io.File
 
-class FractalFathomCLI(private val projectPath: String, private val outputDir: String, private val analyzeOnly: Boolean = false) {
+class FractalFathomCLI(
+    private val projectPath: String,
+    private val outputDir: String,
+    private val analyzeOnly: Boolean = false,
+    private val useCache: Boolean = true,
+    private val analyzerConfig: AnalyzerConfig = AnalyzerConfig(),
+    private val irFormat: IRFormat = IRFormat.JSON,
+    private val promptClassBudget: Int? = null,
+    private val embeddingStorage: EmbeddingStorage = EmbeddingStorage.FLOAT,
+    private val irBackend: IRBackend = IRBackend.OBJECTS,
+    private val embeddingConfig: EmbeddingConfig = EmbeddingConfig()
+) {
 
-    private val mapper = jacksonObjectMapper()
+    private val irDataWriter = IRDataWriter(irFormat)
 
-    fun run() = runBlocking {
+    // The statement text mode, detail level and statement budget change the extracted IR, so entries of
+    // different settings must not be shared
+    private val irCache = if (useCache) {
+        val budget = analyzerConfig.statementBudget
+        IRCache(
+            File("${outputDir}/FractalFathomOutput/.cache/ir"),
+            "${CodeAnalyzer.ANALYZER_VERSION}-${analyzerConfig.statementTextMode.option}-${analyzerConfig.detailLevel.option}" +
+                    "-${budget.maxStatements}x${budget.maxDepth}"
+        )
+    } else {
+        null
+    }
+    private val codeAnalyzer = CodeAnalyzer(projectPath, analyzerConfig, irCache)
 
-        val codeAnalyzer = CodeAnalyzer(projectPath)
-        val irData = codeAnalyzer.analyzeProject()
+    // Embeddings are keyed by the snippet and model, so a single cache serves all settings
+    private val embeddingCache = if (useCache) {
+        EmbeddingCache(File("${outputDir}/FractalFathomOutput/.cache/embeddings"), embeddingConfig.modelId, embeddingConfig.cacheMaxBytes)
+    } else {
+        null
+    }
+
+    fun run() = runBlocking {
 
         if (analyzeOnly) {
-            val outputIrDataPath = "${outputDir}/FractalFathomOutput/irData.json"
-            saveIrDataToFile(irData, outputIrDataPath)
-            println("The IR data has been saved to $outputIrDataPath")
+            // Stream the classes to the output file while they are being analyzed
+            val classCount = irDataWriter.write(codeAnalyzer.analyzeProjectFlow(), irDataFile())
+            printCacheStatistics()
+            println("The IR data of $classCount classes has been saved to ${irDataFile().path}")
             return@runBlocking
         }
 
-        val graphCodeBERTUtils = GraphCodeBERTUtils()
+        if (irBackend == IRBackend.COLUMNAR) {
+            // Move every class into the off-heap store as soon as it has been analyzed
+            val store = ColumnarIRStore()
+            store.addAll(codeAnalyzer.analyzeProjectFlow())
+            printCacheStatistics()
+            println("Stored ${store.classCount} classes and ${store.statementCount} statements in ${store.offHeapBytes / 1024}KB off-heap")
+
+            generateDiagram(store)
+            return@runBlocking
+        }
+
+        val irData = codeAnalyzer.analyzeProject()
+        printCacheStatistics()
+
+        generateDiagram(irData)
+    }
+
+    /**
+     * Analyzes the project once and then keeps the IR in memory, re-analyzing only the Java files
+     * that are created, modified or deleted while watching. After every change the IR data and,
+     * unless running in analyze-only mode, the component diagram are emitted again.
+     *
+     * This method blocks until the process is terminated.
+     */
+    fun watch() = runBlocking {
+        val classesByFile = LinkedHashMap<String, MutableList<IRClassEntity>>()
+        codeAnalyzer.analyzeProject().groupByTo(classesByFile) { it.filePath }
+        emitWatchOutput(classesByFile)
+
+        ProjectWatcher(projectPath, sourceDiscovery = codeAnalyzer.sourceDiscovery).use { watcher ->
+            println("Watching $projectPath for changes")
+            while (true) {
+                val changedPaths = watcher.awaitChanges()
+                val startTime = System.nanoTime()
+
+                // Drop everything below changed paths, then re-analyze the Java files that still exist
+                val filesToAnalyze = mutableListOf<String>()
+                changedPaths.forEach { changedPath ->
+                    val changedFile = File(changedPath)
+                    classesByFile.keys.removeIf { it == changedPath || it.startsWith(changedPath + File.separator) }
+                    if (changedFile.isDirectory) {
+                        filesToAnalyze.addAll(codeAnalyzer.sourceDiscovery.discover(changedPath))
+                    } else if (codeAnalyzer.sourceDiscovery.isSourceFile(changedPath)) {
+                        filesToAnalyze.add(changedPath)
+                    }
+                }
+                codeAnalyzer.analyzeFiles(filesToAnalyze).groupByTo(classesByFile) { it.filePath }
+
+                val elapsedMillis = (System.nanoTime() - startTime) / 1_000_000
+                println("Re-analyzed ${filesToAnalyze.size} changed files in ${elapsedMillis}ms")
+                emitWatchOutput(classesByFile)
+            }
+        }
+    }
+
+    private suspend fun emitWatchOutput(classesByFile: Map<String, List<IRClassEntity>>) {
+        val irData = classesByFile.values.flatten()
+        saveIrData(irData)
+        if (!analyzeOnly) {
+            try {
+                generateDiagram(irData)
+            } catch (e: Exception) {
+                // Keep watching even if the model servers are temporarily unavailable
+                println("Error generating the component diagram: ${e.message}")
+            }
+        }
+    }
+
+    private suspend fun saveIrData(irData: List<IRClassEntity>) {
+        irDataWriter.write(irData, irDataFile())
+        println("The IR data has been saved to ${irDataFile().path}")
+    }
+
+    private fun irDataFile(): File = File("${outputDir}/FractalFathomOutput/irData.${irFormat.fileExtension}")
+
+    private fun printCacheStatistics() {
+        codeAnalyzer.lastPrescan?.let {
+            println(
+                "Pre-scan: ${it.markedFileCount} annotated files and ${it.neighborFileCount} neighbors analyzed in full, " +
+                        "${it.structuralFileCount} files scanned structurally"
+            )
+        }
+        irCache?.let { println("IR cache: ${it.hits} hits, ${it.misses} misses") }
+    }
+
+    private fun printEmbeddingStatistics(graphCodeBERTUtils: GraphCodeBERTUtils) {
+        graphCodeBERTUtils.lastStatistics?.let {
+            println(
+                "Embeddings: ${it.entityCount} entities, ${it.uniqueSnippetCount} distinct snippets " +
+                        "(%.1f%% deduplicated), ${it.sentSnippetCount} sent in ${it.requestCount} requests".format(it.dedupRatio * 100)
+            )
+        }
+        embeddingCache?.let { println("Embedding cache: ${it.hits} hits, ${it.misses} misses, ${it.evictions} evicted") }
+    }
+
+    private fun generateDiagram(irData: List<IRClassEntity>) {
+        val graphCodeBERTUtils = GraphCodeBERTUtils(embeddingStorage, embeddingConfig, embeddingCache)
         var enhancedIrData = graphCodeBERTUtils.enhanceIRDataWithEmbeddings(irData)
+        printEmbeddingStatistics(graphCodeBERTUtils)
 
         val llmUtils = LLMUtils()
-        val plantUMLCode = llmUtils.generatePlantUML(enhancedIrData)
+        saveDiagram(llmUtils.generatePlantUML(enhancedIrData, promptClassBudget))
+    }
+
+    private fun generateDiagram(store: ColumnarIRStore) {
+        val graphCodeBERTUtils = GraphCodeBERTUtils(embeddingStorage, embeddingConfig, embeddingCache)
+        graphCodeBERTUtils.enhanceStoreWithEmbeddings(store)
+        printEmbeddingStatistics(graphCodeBERTUtils)
+        saveDiagram(LLMUtils().generatePlantUML(store, promptClassBudget))
+    }
 
+    private fun saveDiagram(plantUMLCode: String) {
         val outputPlantUMLPath = "${outputDir}/FractalFathomOutput/component_diagram.puml"
         savePlantUMLToFile(plantUMLCode, outputPlantUMLPath)
         println("The PlantUML code for the component diagram has been saved to $outputPlantUMLPath")
@@ -40,16 +186,6 @@ class FractalFathomCLI(private val projectPath: String, private val outputDir: S
         println("The component diagram has been generated and saved to $outputImagePath")
     }
 
-    private fun saveIrDataToFile(irData: Any, outputPath: String) {
-        val file = File(outputPath)
-        file.parentFile?.let {
-            if (!it.exists()) {
-                it.mkdirs()
-            }
-        }
-        file.writeText(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(irData))
-    }
-
     private fun savePlantUMLToFile(plantUMLCode: String, outputPath: String) {
         val file = File(outputPath)
         file.parentFile?.let {
@@ -59,4 +195,4 @@ class FractalFathomCLI(private val projectPath: String, private val outputDir: S
         }
         file.writeText(plantUMLCode)
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,14 @@
 package org.protogalaxy.fractalfathom.cli
 
+import org.protogalaxy.fractalfathom.cli.analysis.AnalyzerConfig
+import org.protogalaxy.fractalfathom.cli.analysis.DetailLevel
+import org.protogalaxy.fractalfathom.cli.analysis.StatementTextMode
+import org.protogalaxy.fractalfathom.cli.analysis.ir.EmbeddingStorage
+import org.protogalaxy.fractalfathom.cli.analysis.store.IRBackend
+import org.protogalaxy.fractalfathom.cli.modelInference.EmbeddingCache
+import org.protogalaxy.fractalfathom.cli.modelInference.EmbeddingConfig
+import org.protogalaxy.fractalfathom.cli.output.IRFormat
+
 fun main(args: Array<String>) {
     if (args.isEmpty()) {
         println("Please provide the path to the project to be analyzed")
@@ -8,6 +17,81 @@ fun main(args: Array<String>) {
     val projectPath = args[0]
     val outputDir = args[1]
     val analyzeOnly = args.contains("--analyze-only")
-    val cli = FractalFathomCLI(projectPath, outputDir, analyzeOnly)
-    cli.run()
-}
\ No newline at end of file
+    // Cached IR keeps its resolution of other files' types, so members moved between files need a run without it
+    val useCache = !args.contains("--no-cache")
+    val watch = args.contains("--watch")
+
+    var analyzerConfig = AnalyzerConfig()
+    args.optionValue("--workers")?.let { analyzerConfig = analyzerConfig.copy(workerCount = it.toInt()) }
+    args.optionValue("--include")?.let { analyzerConfig = analyzerConfig.copy(includeGlobs = it.split(",")) }
+    args.optionValue("--exclude")?.let { analyzerConfig = analyzerConfig.copy(excludeGlobs = it.split(",")) }
+    if (args.contains("--fast-scan")) {
+        analyzerConfig = analyzerConfig.copy(markerPrescan = true)
+    }
+    if (args.contains("--no-gitignore")) {
+        analyzerConfig = analyzerConfig.copy(respectGitignore = false)
+    }
+    args.optionValue("--statement-text")?.let {
+        analyzerConfig = analyzerConfig.copy(statementTextMode = StatementTextMode.fromOption(it))
+    }
+    args.optionValue("--detail")?.let { analyzerConfig = analyzerConfig.copy(detailLevel = DetailLevel.fromOption(it)) }
+    args.optionValue("--max-statements")?.let {
+        analyzerConfig = analyzerConfig.copy(statementBudget = analyzerConfig.statementBudget.copy(maxStatements = it.toInt()))
+    }
+    args.optionValue("--max-depth")?.let {
+        analyzerConfig = analyzerConfig.copy(statementBudget = analyzerConfig.statementBudget.copy(maxDepth = it.toInt()))
+    }
+
+    val irFormat = args.optionValue("--ir-format")?.let { IRFormat.fromOption(it) } ?: IRFormat.JSON
+    val promptClassBudget = args.optionValue("--prompt-classes")?.toInt()
+    val embeddingStorage = args.optionValue("--embedding-storage")?.let { EmbeddingStorage.fromOption(it) } ?: EmbeddingStorage.FLOAT
+    var embeddingConfig = EmbeddingConfig()
+    args.optionValue("--embedding-endpoint")?.let { embeddingConfig = embeddingConfig.copy(endpointURL = it) }
+    // A fixed batch size or concurrency turns the adaptive batching off
+    args.optionValue("--embedding-batch-size")?.let {
+        embeddingConfig = embeddingConfig.copy(batchSize = it.toInt(), adaptiveBatching = null)
+    }
+    args.optionValue("--embedding-concurrency")?.let {
+        embeddingConfig = embeddingConfig.copy(maxConcurrentRequests = it.toInt(), adaptiveBatching = null)
+    }
+    args.optionValue("--embedding-cache-size")?.let {
+        val maxMegabytes = EmbeddingCache.MAX_BYTES / (1024 * 1024)
+        val megabytes = it.toLongOrNull()
+        if (megabytes == null || megabytes !in 1..maxMegabytes) {
+            println("The embedding cache size must be between 1 and $maxMegabytes MB, got '$it'")
+            return
+        }
+        embeddingConfig = embeddingConfig.copy(cacheMaxBytes = megabytes * 1024 * 1024)
+    }
+    if (args.contains("--no-length-buckets")) {
+        embeddingConfig = embeddingConfig.copy(bucketByLength = false)
+    }
+    embeddingConfig.adaptiveBatching?.let { adaptiveBatching ->
+        var bounds = adaptiveBatching
+        args.optionValue("--embedding-target-latency")?.let { bounds = bounds.copy(targetLatencyMillis = it.toLong()) }
+        args.optionValue("--embedding-max-concurrency")?.toInt()?.let {
+            bounds = bounds.copy(maxConcurrency = it, initialConcurrency = minOf(bounds.initialConcurrency, it))
+        }
+        embeddingConfig = embeddingConfig.copy(adaptiveBatching = bounds)
+    }
+
+    val irBackend = args.optionValue("--ir-backend")?.let { IRBackend.fromOption(it) } ?: IRBackend.OBJECTS
+
+    val cli = FractalFathomCLI(
+        projectPath, outputDir, analyzeOnly, useCache, analyzerConfig, irFormat, promptClassBudget, embeddingStorage, irBackend,
+        embeddingConfig
+    )
+    if (watch) {
+        cli.watch()
+    } else {
+        cli.run()
+    }
+}
+
+/**
+ * Returns the value following the given option name, e.g. `4` for `--workers 4`, or `null` if the option is absent.
+ */
+private fun Array<String>.optionValue(name: String): String? {
+    val index = indexOf(name)
+    return if (index >= 0 && index + 1 < size) this[index + 1] else null
+}
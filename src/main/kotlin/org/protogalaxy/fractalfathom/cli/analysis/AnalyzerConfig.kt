@@ -0,0 +1,42 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+import org.protogalaxy.fractalfathom.cli.analysis.parsers.StatementBudget
+
+/**
+ * Tuning options for [CodeAnalyzer].
+ *
+ * @property batchParsing Whether source files are grouped into batches that share a single Spoon model.
+ * When disabled, every file is parsed with its own `Launcher`.
+ * @property maxBatchSize The maximum number of files placed in a single batch, regardless of available heap.
+ * @property workerCount The number of work units (batches or single files) parsed concurrently. This also
+ * bounds the number of Spoon models held in memory at the same time.
+ * @property includeGlobs Globs, relative to the project root, selecting the source files to analyze.
+ * @property excludeGlobs Globs, relative to the project root, of files and directories to skip.
+ * @property respectGitignore Whether files ignored by `.gitignore` files inside the project are skipped.
+ * @property skipBuildOutput Whether build output and tooling directories such as `build/`, `target/`
+ * and `node_modules/` are skipped.
+ * @property statementTextMode How the text of statements in the low-level AST is obtained.
+ * @property detailLevel How much detail is extracted into the IR; lower levels skip the low-level AST,
+ * positions and regular annotations, and parse faster with less heap.
+ * @property statementBudget The limits on the low-level AST lowered from a single method; bodies exceeding
+ * them are truncated.
+ * @property markerPrescan Whether a project analysis pre-scans the raw files and only parses the files using
+ * FractalFathom annotations, and their direct neighbors, with Spoon; all other files only get a structural IR
+ * of their classes, without members.
+ * @property internSymbols Whether the type names, identifiers and file paths of the IR are interned in a
+ * project-wide [SymbolTable], so that equal symbols share a single String instance.
+ */
+data class AnalyzerConfig(
+    val batchParsing: Boolean = true,
+    val maxBatchSize: Int = 512,
+    val workerCount: Int = Runtime.getRuntime().availableProcessors(),
+    val includeGlobs: List<String> = listOf("**/*.java"),
+    val excludeGlobs: List<String> = emptyList(),
+    val respectGitignore: Boolean = true,
+    val skipBuildOutput: Boolean = true,
+    val statementTextMode: StatementTextMode = StatementTextMode.PRETTY_PRINT,
+    val detailLevel: DetailLevel = DetailLevel.FULL,
+    val statementBudget: StatementBudget = StatementBudget(),
+    val markerPrescan: Boolean = false,
+    val internSymbols: Boolean = true
+)
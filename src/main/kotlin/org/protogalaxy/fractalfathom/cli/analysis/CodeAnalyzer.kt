@@ -2,12 +2,22 @@ package org.protogalaxy.fractalfathom.cli.analysis
 
 
 import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.flowOn
+import org.protogalaxy.fractalfathom.cli.analysis.annotation.FeatureRegistry
+import org.protogalaxy.fractalfathom.cli.analysis.cache.IRCache
 import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
-import org.protogalaxy.fractalfathom.cli.analysis.parsers.ClassParser
+import org.protogalaxy.fractalfathom.cli.analysis.parsers.IRBuilder
+import org.protogalaxy.fractalfathom.cli.analysis.parsers.SourceBuffers
+import org.protogalaxy.fractalfathom.cli.analysis.prescan.ProjectPrescan
 import spoon.Launcher
 import spoon.reflect.CtModel
 import spoon.reflect.declaration.CtClass
+import spoon.reflect.declaration.CtType
 import java.io.File
+import java.nio.charset.Charset
 
 /**
  * A class responsible for analyzing Java source code files in a given project directory.
@@ -15,28 +25,271 @@ import java.io.File
  * This class uses Spoon, a library for Java source code analysis and transformation,
  * to parse Java files and extract intermediate representation (IR) for classes.
  *
+ * By default, files are grouped into batches sized to the available heap and each batch is parsed
+ * with a single Spoon `Launcher`, so the JDT environment is set up once per batch and type references
+ * between files of the same batch are resolved.
+ *
+ * When an [IRCache] is given, only files that are new or whose content changed since the cached run
+ * are parsed; the IR of all other files is read back from the cache. Files that are parsed while other
+ * files of the project are not, i.e. on a warm run or in [analyzeFiles], are resolved against the unparsed
+ * files they reach by type name (see [ProjectPrescan.reachableFiles]): these are added to the Spoon model
+ * as source-only inputs, so the types of the parsed files resolve like on a cold run, but are not analyzed.
+ *
+ * With [AnalyzerConfig.markerPrescan], a project analysis first scans the raw files with a
+ * [ProjectPrescan]; only files using FractalFathom annotations and their direct neighbors are parsed
+ * with Spoon, all other files get a structural IR from the pre-scan.
+ *
  * @param projectPath The root directory of the project containing Java source files.
+ * @param config Tuning options for the analysis.
+ * @param irCache An optional cache of the IR of previously analyzed files.
  */
-class CodeAnalyzer(private val projectPath: String)  {
+class CodeAnalyzer(
+    private val projectPath: String,
+    private val config: AnalyzerConfig = AnalyzerConfig(),
+    private val irCache: IRCache? = null
+) {
+
+    /**
+     * The discovery used to find the Java files of the project.
+     */
+    val sourceDiscovery = SourceDiscovery(projectPath, config)
+
+    /**
+     * The table holding the canonical instances of the symbols of all analyzed classes.
+     */
+    val symbolTable = SymbolTable()
+
+    /**
+     * The pre-scan of the last project analysis, or `null` if [AnalyzerConfig.markerPrescan] is disabled.
+     */
+    @Volatile
+    var lastPrescan: ProjectPrescan? = null
+        private set
 
     /**
      * Analyzes all Java files in the project directory and returns a list of IRClassEntity objects.
      *
      * @return A list of IRClassEntity objects representing the analyzed classes in the project.
      */
-    suspend fun analyzeProject(): List<IRClassEntity> = withContext(Dispatchers.Default) {
+    suspend fun analyzeProject(): List<IRClassEntity> {
         val javaFilePaths = getAllJavaFilePaths()
-        val deferredList = javaFilePaths.map { filePath ->
-            async {
-                try {
-                    analyzeSingleFile(filePath)
-                } catch (e: Exception) {
-                    e.printStackTrace()
-                    emptyList<IRClassEntity>()
+        val irData = analyzeFiles(javaFilePaths, prescan(javaFilePaths), javaFilePaths)
+        irCache?.retainOnly(javaFilePaths)
+        return irData
+    }
+
+    /**
+     * Analyzes all Java files in the project directory and emits every IRClassEntity as soon as the file
+     * declaring it has been analyzed.
+     *
+     * Unlike [analyzeProject], the classes are emitted in completion order rather than file order, and
+     * the analyzed classes are never held in memory all at once.
+     *
+     * @return A cold flow of the IRClassEntity objects representing the analyzed classes in the project.
+     */
+    fun analyzeProjectFlow(): Flow<IRClassEntity> = channelFlow {
+        val javaFilePaths = getAllJavaFilePaths()
+        analyzeFilesIncrementally(javaFilePaths, prescan(javaFilePaths), javaFilePaths) { _, classes ->
+            classes.forEach { send(it) }
+        }
+        irCache?.retainOnly(javaFilePaths)
+    }.flowOn(Dispatchers.Default)
+
+    /**
+     * Analyzes the given Java files of the project and returns a list of IRClassEntity objects. The files are
+     * always analyzed in full, without a pre-scan, and resolved against the other files of the project.
+     *
+     * @param javaFilePaths The absolute paths of the Java files to analyze.
+     * @return A list of IRClassEntity objects representing the classes declared in the files, in file order.
+     */
+    suspend fun analyzeFiles(javaFilePaths: List<String>): List<IRClassEntity> {
+        return analyzeFiles(javaFilePaths, null, getAllJavaFilePaths())
+    }
+
+    private suspend fun analyzeFiles(
+        javaFilePaths: List<String>,
+        prescan: ProjectPrescan?,
+        projectFilePaths: List<String>
+    ): List<IRClassEntity> = withContext(Dispatchers.Default) {
+        val classesByFile = HashMap<String, List<IRClassEntity>>()
+        analyzeFilesIncrementally(javaFilePaths, prescan, projectFilePaths) { filePath, classes ->
+            classesByFile[filePath] = classes
+        }
+        javaFilePaths.flatMap { classesByFile.getValue(it) }
+    }
+
+    /**
+     * Analyzes the given Java files and reports the classes of every file as soon as they are available.
+     *
+     * Files left to the structural IR of the pre-scan and cached files are reported first; the remaining
+     * files are parsed by a bounded pool of workers and reported in completion order.
+     *
+     * @param javaFilePaths The absolute paths of the Java files to analyze.
+     * @param prescan The pre-scan selecting the files to analyze in full, or `null` to analyze all of them.
+     * @param projectFilePaths The absolute paths of all Java files of the project.
+     * @param onFileAnalyzed Called once per file with the classes declared in it, on the calling coroutine.
+     */
+    private suspend fun analyzeFilesIncrementally(
+        javaFilePaths: List<String>,
+        prescan: ProjectPrescan?,
+        projectFilePaths: List<String>,
+        onFileAnalyzed: suspend (filePath: String, classes: List<IRClassEntity>) -> Unit
+    ) = coroutineScope {
+        // Look up every file in the cache; only the misses are parsed
+        val contentHashes = mutableMapOf<String, String>()
+        val filesToParse = mutableListOf<String>()
+        javaFilePaths.forEach { filePath ->
+            if (prescan != null && filePath !in prescan.filesToAnalyze) {
+                onFileAnalyzed(filePath, internSymbols(prescan.structuralClasses(filePath)))
+                return@forEach
+            }
+            val cachedClasses = irCache?.let { cache ->
+                val contentHash = cache.contentHash(filePath)
+                contentHashes[filePath] = contentHash
+                cache.lookup(filePath, contentHash)
+            }
+            if (cachedClasses != null) {
+                // Cached classes refer to their own copies of the features and mappings
+                onFileAnalyzed(filePath, internSymbols(cachedClasses.map { FeatureRegistry.shared.canonicalize(it) }))
+            } else {
+                filesToParse.add(filePath)
+            }
+        }
+
+        val contextFiles = contextFilesFor(filesToParse, prescan, projectFilePaths)
+        val workUnits = if (config.batchParsing) {
+            partitionIntoBatches(filesToParse)
+        } else {
+            filesToParse.map { listOf(it) }
+        }
+
+        // Bounded producer/consumer pipeline: at most `workerCount` work units are parsed at a time and
+        // at most `workerCount` are queued, so only that many Spoon models are alive at any moment.
+        val workerCount = config.workerCount.coerceAtLeast(1)
+        val workChannel = Channel<List<String>>(capacity = workerCount)
+        val resultChannel = Channel<Pair<List<String>, List<IRClassEntity>>>(capacity = workerCount)
+
+        launch(Dispatchers.Default) {
+            workUnits.forEach { workChannel.send(it) }
+            workChannel.close()
+        }
+        val workers = List(workerCount) {
+            launch(Dispatchers.Default) {
+                for (filePaths in workChannel) {
+                    resultChannel.send(filePaths to analyzeWorkUnit(filePaths, contextFiles))
                 }
             }
         }
-        deferredList.awaitAll().flatten()
+        launch {
+            workers.joinAll()
+            resultChannel.close()
+        }
+
+        // Collect the results as they arrive and write them to the cache right away
+        for ((filePaths, classes) in resultChannel) {
+            val classesOfUnit = classes.groupBy { it.filePath }
+            filePaths.forEach { filePath ->
+                val fileClasses = classesOfUnit[filePath] ?: emptyList()
+                irCache?.store(filePath, contentHashes.getValue(filePath), fileClasses)
+                onFileAnalyzed(filePath, internSymbols(fileClasses))
+            }
+        }
+    }
+
+    /**
+     * Pre-scans the given files, if enabled.
+     */
+    private suspend fun prescan(javaFilePaths: List<String>): ProjectPrescan? {
+        if (!config.markerPrescan) return null
+        return withContext(Dispatchers.IO) { ProjectPrescan.scan(javaFilePaths) }.also { lastPrescan = it }
+    }
+
+    /**
+     * Selects the files added to the Spoon models of the parsed files as source-only inputs: the files reached by
+     * type name from the parsed files that are neither parsed themselves nor left to the structural IR.
+     *
+     * @param filesToParse The files parsed in this run.
+     * @param prescan The pre-scan of this run, if any, which is reused to find the reached files.
+     * @param projectFilePaths The absolute paths of all Java files of the project.
+     * @return The context files, empty on a cold run.
+     */
+    private suspend fun contextFilesFor(
+        filesToParse: List<String>,
+        prescan: ProjectPrescan?,
+        projectFilePaths: List<String>
+    ): Set<String> {
+        val parsedFiles = filesToParse.toHashSet()
+        val unparsedFiles = projectFilePaths.filterTo(HashSet()) { filePath ->
+            filePath !in parsedFiles && (prescan == null || filePath in prescan.filesToAnalyze)
+        }
+        if (parsedFiles.isEmpty() || unparsedFiles.isEmpty()) return emptySet()
+
+        val scan = prescan ?: withContext(Dispatchers.IO) { ProjectPrescan.scan(projectFilePaths) }
+        return scan.reachableFiles(filesToParse).filterTo(LinkedHashSet()) { it in unparsedFiles }
+    }
+
+    /**
+     * Replaces the symbols of the given classes with their canonical instances, if enabled.
+     */
+    private fun internSymbols(classes: List<IRClassEntity>): List<IRClassEntity> {
+        return if (config.internSymbols) classes.map { symbolTable.intern(it) } else classes
+    }
+
+    /**
+     * Analyzes a single work unit, which is either a batch of files or a single file.
+     *
+     * @param filePaths The absolute paths of the Java files in the work unit.
+     * @param contextFiles The files added to the model of the work unit without being analyzed.
+     * @return A list of IRClassEntity objects extracted from the work unit, or an empty list on failure.
+     */
+    private fun analyzeWorkUnit(filePaths: List<String>, contextFiles: Set<String>): List<IRClassEntity> {
+        return try {
+            // With context files, the types of a single file have to be picked from the model like for a batch
+            if (config.batchParsing || contextFiles.isNotEmpty()) {
+                analyzeBatch(filePaths, contextFiles)
+            } else {
+                analyzeSingleFile(filePaths.single())
+            }
+        } catch (e: Exception) {
+            e.printStackTrace()
+            emptyList()
+        }
+    }
+
+    /**
+     * Analyzes a batch of Java files with a single Spoon model.
+     *
+     * Files whose types are missing from the shared model (for example because another file of the batch
+     * declares a type with the same qualified name) are re-analyzed on their own.
+     *
+     * @param filePaths The absolute paths of the Java files in the batch.
+     * @param contextFiles The files added to the model to resolve types, whose own types are not analyzed.
+     * @return A list of IRClassEntity objects extracted from the batch, in the order of `filePaths`.
+     */
+    private fun analyzeBatch(filePaths: List<String>, contextFiles: Set<String> = emptySet()): List<IRClassEntity> {
+        val launcher = createLauncher()
+        filePaths.forEach { launcher.addInputResource(it) }
+        contextFiles.forEach { launcher.addInputResource(it) }
+
+        try {
+            launcher.buildModel()
+        } catch (e: Exception) {
+            println("Error building model for a batch of ${filePaths.size} files, analyzing them one by one")
+            return filePaths.flatMap { analyzeSingleFile(it) }
+        }
+
+        // Group the types of the shared model by the file that declares them
+        val typesByFile = launcher.model.allTypes.groupBy { ctType -> ctType.position?.file?.canonicalPath }
+        val irBuilder = createIRBuilder(launcher)
+
+        return filePaths.flatMap { filePath ->
+            val types = typesByFile[File(filePath).canonicalPath]
+            when {
+                types != null -> parseClasses(types, filePath, irBuilder)
+                File(filePath).name in typelessFileNames -> emptyList()
+                else -> analyzeSingleFile(filePath)
+            }
+        }
     }
 
     /**
@@ -46,15 +299,9 @@ class CodeAnalyzer(private val projectPath: String)  {
      * @return A list of IRClassEntity objects extracted from the Java file.
      */
     private fun analyzeSingleFile(filePath: String): List<IRClassEntity> {
-        val launcher = Launcher()
+        val launcher = createLauncher()
         launcher.addInputResource(filePath)
 
-        launcher.environment.apply {
-            noClasspath = true          // Allow analysis without resolving external dependencies
-            ignoreSyntaxErrors = true   // Ignore syntax errors in the code
-            isAutoImports = true        // Enable automatic import handling
-        }
-
         try {
             launcher.buildModel()
         } catch (e: Exception) {
@@ -65,13 +312,21 @@ class CodeAnalyzer(private val projectPath: String)  {
 
         // Extract all classes from the Spoon model
         val model: CtModel = launcher.model
-        val classes = model.allTypes.filterIsInstance<CtClass<*>>()
-        val classParser = ClassParser()
+        return parseClasses(model.allTypes, filePath, createIRBuilder(launcher))
+    }
 
-        // Parse each class and convert it to IRClassEntity
-        return classes.mapNotNull { ctClass ->
+    /**
+     * Converts the classes among the given Spoon types into IRClassEntity objects.
+     *
+     * @param types The Spoon types declared in a single file.
+     * @param filePath The path of the file declaring the types.
+     * @param irBuilder The builder used for the conversion.
+     * @return A list of IRClassEntity objects, skipping classes that fail to parse.
+     */
+    private fun parseClasses(types: Collection<CtType<*>>, filePath: String, irBuilder: IRBuilder): List<IRClassEntity> {
+        return types.filterIsInstance<CtClass<*>>().mapNotNull { ctClass ->
             try {
-                classParser.parseClass(ctClass, filePath)
+                irBuilder.buildClass(ctClass, filePath)
             } catch (e: Exception) {
                 e.printStackTrace()
                 null
@@ -80,17 +335,88 @@ class CodeAnalyzer(private val projectPath: String)  {
     }
 
     /**
-     * Recursively collects all Java file paths from the project directory.
+     * Creates the IR builder for the model of a launcher. With [StatementTextMode.SOURCE], the builder slices
+     * statement text from the source files, decoded with the encoding Spoon used for parsing them.
+     */
+    private fun createIRBuilder(launcher: Launcher): IRBuilder {
+        return when (config.statementTextMode) {
+            StatementTextMode.PRETTY_PRINT -> IRBuilder(null, config.detailLevel, config.statementBudget)
+            StatementTextMode.SOURCE -> IRBuilder(
+                SourceBuffers(launcher.environment.encoding ?: Charset.defaultCharset()), config.detailLevel, config.statementBudget
+            )
+        }
+    }
+
+    /**
+     * Creates a Spoon launcher configured for analysis without a classpath. Comments are only attached to the
+     * model when the detail level needs them.
+     */
+    private fun createLauncher(): Launcher {
+        return Launcher().apply {
+            environment.apply {
+                noClasspath = true          // Allow analysis without resolving external dependencies
+                ignoreSyntaxErrors = true   // Ignore syntax errors in the code
+                isAutoImports = true        // Enable automatic import handling
+                setCommentEnabled(config.detailLevel.parsesComments)
+            }
+        }
+    }
+
+    /**
+     * Splits the given files into batches whose estimated Spoon model size fits into the heap share of one worker.
      *
-     * @return A list of absolute paths to all Java files in the project directory.
+     * The model size is estimated from the size of the source files, so a batch of large files contains
+     * fewer files than a batch of small ones.
+     *
+     * @param filePaths The paths of the files to split.
+     * @return A list of batches, preserving the order of `filePaths`.
      */
-    private fun getAllJavaFilePaths(): List<String> {
-        val javaFiles = mutableListOf<String>()
-        File(projectPath).walkTopDown().forEach { file ->
-            if (file.isFile && file.extension == "java") {
-                javaFiles.add(file.absolutePath)
+    private fun partitionIntoBatches(filePaths: List<String>): List<List<String>> {
+        // Each worker may hold one batch being parsed and one batch waiting in the queue
+        val heapPerWorker = Runtime.getRuntime().maxMemory() / (config.workerCount.coerceAtLeast(1) * 2)
+        val sourceBytesPerBatch = (heapPerWorker / MODEL_BYTES_PER_SOURCE_BYTE).coerceAtLeast(1)
+
+        val batches = mutableListOf<List<String>>()
+        var currentBatch = mutableListOf<String>()
+        var currentBytes = 0L
+        filePaths.forEach { filePath ->
+            val fileBytes = File(filePath).length()
+            if (currentBatch.isNotEmpty() &&
+                (currentBytes + fileBytes > sourceBytesPerBatch || currentBatch.size >= config.maxBatchSize)
+            ) {
+                batches.add(currentBatch)
+                currentBatch = mutableListOf()
+                currentBytes = 0L
             }
+            currentBatch.add(filePath)
+            currentBytes += fileBytes
+        }
+        if (currentBatch.isNotEmpty()) {
+            batches.add(currentBatch)
         }
-        return javaFiles
+        return batches
+    }
+
+    /**
+     * Collects the paths of all Java files in the project directory selected by the configured globs.
+     *
+     * @return A list of absolute paths to the Java files in the project directory.
+     */
+    private fun getAllJavaFilePaths(): List<String> {
+        return sourceDiscovery.discover()
+    }
+
+    companion object {
+        /**
+         * The version of the analyzer. It is part of every IR cache key, so it must be increased whenever
+         * the extracted IR changes.
+         */
+        const val ANALYZER_VERSION = "6"
+
+        // Rough ratio between the heap retained by a Spoon model and the size of its source files
+        private const val MODEL_BYTES_PER_SOURCE_BYTE = 48L
+
+        // Files that legitimately declare no types and therefore need no per-file fallback
+        private val typelessFileNames = setOf("package-info.java", "module-info.java")
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,66 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+/**
+ * Enum representing how much detail the analysis extracts into the IR, from the cheapest to the most complete.
+ *
+ * | Level       | Method bodies (calls, complexity) | Low-level AST | Member positions | Regular annotations | Comments |
+ * |-------------|-----------------------------------|---------------|------------------|---------------------|----------|
+ * | [STRUCTURE] | no                                | no            | no               | no                  | no       |
+ * | [MEMBERS]   | yes                               | no            | methods, fields  | yes                 | no       |
+ * | [FULL]      | yes                               | yes           | all              | yes                 | yes      |
+ *
+ * Classes, their fields and the signatures of their methods, as well as FractalFathom features and mappings,
+ * are extracted at every level. Architecture diagrams usually only need [STRUCTURE] or [MEMBERS], which skip
+ * most of the allocation and Spoon printing of a full analysis.
+ *
+ * @property option The name of the level on the command line.
+ */
+enum class DetailLevel(val option: String) {
+    STRUCTURE("structure"), // Declarations only
+    MEMBERS("members"),     // Declarations, calls and complexity metrics of the methods
+    FULL("full");           // Everything, including the lowered statements of the method bodies
+
+    /**
+     * Whether method bodies are scanned for calls and complexity metrics.
+     */
+    val scansBodies: Boolean
+        get() = this >= MEMBERS
+
+    /**
+     * Whether method bodies are lowered into a low-level AST.
+     */
+    val lowersStatements: Boolean
+        get() = this == FULL
+
+    /**
+     * Whether fields, methods and parameters get source code locations; at [MEMBERS] only fields and methods do.
+     */
+    val keepsMemberPositions: Boolean
+        get() = this >= MEMBERS
+
+    /**
+     * Whether annotations other than FractalFathom features and mappings are kept.
+     */
+    val keepsRegularAnnotations: Boolean
+        get() = this >= MEMBERS
+
+    /**
+     * Whether Spoon attaches comments to the model.
+     */
+    val parsesComments: Boolean
+        get() = this == FULL
+
+    companion object {
+        /**
+         * Resolves a level from its command line name, e.g. `structure`.
+         *
+         * @param name The case-insensitive name of the level.
+         * @return The matching level.
+         * @throws IllegalArgumentException if no level has the given name.
+         */
+        fun fromOption(name: String): DetailLevel {
+            return entries.firstOrNull { it.option.equals(name, ignoreCase = true) }
+                ?: throw IllegalArgumentException("Unknown detail level '$name', expected one of ${entries.joinToString { it.option }}")
+        }
+    }
+}
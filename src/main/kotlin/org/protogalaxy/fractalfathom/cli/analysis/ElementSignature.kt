@@ -0,0 +1,102 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRFieldEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRMethodEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticCallEntity
+import spoon.reflect.declaration.CtElement
+import spoon.reflect.declaration.CtExecutable
+import spoon.reflect.declaration.CtNamedElement
+import spoon.reflect.declaration.CtPackage
+import spoon.reflect.declaration.CtType
+import spoon.reflect.declaration.CtTypeMember
+
+/**
+ * Canonical signatures identifying the code elements of the analyzed project.
+ *
+ * A signature is built from names only, so it is cheap to compute and never prints source code:
+ *
+ * - a type is identified by its qualified name, e.g. `org.example.UserService`;
+ * - a field by its declaring type and name, e.g. `org.example.UserService#users`;
+ * - a method or constructor by its declaring type, name and parameter types without type arguments,
+ *   e.g. `org.example.UserService#find(java.lang.String,java.util.List)`, which keeps overloads apart.
+ *
+ * Signatures of IR entities use the package and simple name of their class. This is the qualified name of
+ * the class, since the IR only holds top-level classes; nested classes are not emitted as entities of their own.
+ *
+ * The signatures of methods are also the keys of the call graph, see
+ * [org.protogalaxy.fractalfathom.cli.analysis.callgraph.CallGraphIndex].
+ */
+object ElementSignature {
+
+    /**
+     * Returns the signature of a class of the IR.
+     */
+    fun of(irClass: IRClassEntity): String = ofType(irClass.packageName, irClass.name)
+
+    /**
+     * Returns the signature of a type from its package and simple name.
+     */
+    fun ofType(packageName: String, name: String): String {
+        return if (packageName.isEmpty()) name else "$packageName.$name"
+    }
+
+    /**
+     * Returns the signature of a field of the IR.
+     */
+    fun of(irClass: IRClassEntity, field: IRFieldEntity): String = member(of(irClass), field.name)
+
+    /**
+     * Returns the signature of a method of the IR.
+     */
+    fun of(irClass: IRClassEntity, method: IRMethodEntity): String {
+        return method(of(irClass), method.name, method.parameters.map { it.type })
+    }
+
+    /**
+     * Returns the signature of a method from its declaring type, name and parameter types.
+     */
+    fun ofMethod(declaringType: String, methodName: String, parameterTypes: List<String>): String {
+        return method(declaringType, methodName, parameterTypes)
+    }
+
+    /**
+     * Returns the signature of the method called by a call, using `?` for an unresolved declaring type and
+     * parameter types.
+     */
+    fun of(call: StaticCallEntity): String {
+        return member(call.declaringType ?: UNRESOLVED, call.signature ?: "${call.methodName}($UNRESOLVED)")
+    }
+
+    /**
+     * Returns the signature of a Spoon element. Elements that are neither types, members nor packages,
+     * such as parameters, are identified relative to the closest named element containing them.
+     *
+     * @param element The element, e.g. the parent of an annotation.
+     * @return The signature of the element, or `Unknown` for elements outside of any named element.
+     */
+    fun of(element: CtElement?): String {
+        return when (element) {
+            null -> UNKNOWN
+            is CtType<*> -> element.qualifiedName
+            is CtPackage -> element.qualifiedName
+            is CtExecutable<*> -> method(declaringTypeOf(element), element.simpleName, element.parameters.map { it.type.qualifiedName })
+            is CtTypeMember -> member(declaringTypeOf(element), element.simpleName)
+            is CtNamedElement -> member(of(element.parent), element.simpleName)
+            else -> of(element.parent)
+        }
+    }
+
+    private fun declaringTypeOf(element: CtElement): String {
+        return (element as? CtTypeMember)?.declaringType?.qualifiedName ?: of(element.parent)
+    }
+
+    private fun member(owner: String, name: String): String = "$owner#$name"
+
+    private fun method(owner: String, name: String, parameterTypes: List<String>): String {
+        return "$owner#$name(${parameterTypes.joinToString(",")})"
+    }
+
+    private const val UNKNOWN = "Unknown"
+    private const val UNRESOLVED = "?"
+}
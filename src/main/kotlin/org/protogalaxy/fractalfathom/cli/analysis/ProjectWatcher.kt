@@ -0,0 +1,93 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+import java.io.Closeable
+import java.nio.file.*
+import java.nio.file.StandardWatchEventKinds.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Watches a project directory tree for changes using `java.nio.file.WatchService`.
+ *
+ * The directories that [SourceDiscovery] descends into are registered, including directories created while
+ * watching, so tooling and build output directories and gitignored trees neither take up watch handles nor
+ * trigger a re-analysis. Events are coalesced: after the first event, further events are collected until the tree has been
+ * quiet for the debounce interval, so that an editor saving several files results in a single change set.
+ *
+ * @param projectPath The root directory of the project to watch.
+ * @param debounceMillis The quiet period that ends a change set, in milliseconds.
+ * @param sourceDiscovery The discovery whose pruning rules select the watched directories.
+ */
+class ProjectWatcher(
+    projectPath: String,
+    private val debounceMillis: Long = 50,
+    private val sourceDiscovery: SourceDiscovery = SourceDiscovery(projectPath)
+) : Closeable {
+
+    private val root: Path = Paths.get(projectPath).toAbsolutePath().normalize()
+    private val watchService: WatchService = root.fileSystem.newWatchService()
+    private val watchedDirectories = mutableMapOf<WatchKey, Path>()
+
+    init {
+        registerTree(root)
+    }
+
+    /**
+     * Blocks until the project tree changes and returns the affected paths.
+     *
+     * The result contains the absolute paths of created, modified and deleted `.java` files as well as
+     * created or deleted directories. If the watch service lost events, the project root is returned so
+     * that the caller can re-analyze the whole tree.
+     *
+     * @return The absolute paths affected by the change set.
+     */
+    fun awaitChanges(): Set<String> {
+        val changedPaths = linkedSetOf<String>()
+        var key: WatchKey? = watchService.take()
+        while (key != null) {
+            collectEvents(key, changedPaths)
+            key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)
+        }
+        return changedPaths
+    }
+
+    private fun collectEvents(key: WatchKey, changedPaths: MutableSet<String>) {
+        val directory = watchedDirectories[key]
+        if (directory != null) {
+            key.pollEvents().forEach { event ->
+                if (event.kind() == OVERFLOW) {
+                    changedPaths.add(root.toString())
+                    return@forEach
+                }
+                val path = directory.resolve(event.context() as Path)
+                when {
+                    event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) -> {
+                        if (registerTree(path)) changedPaths.add(path.toString())
+                    }
+                    path.toString().endsWith(".java") -> changedPaths.add(path.toString())
+                    event.kind() == ENTRY_DELETE -> changedPaths.add(path.toString())
+                }
+            }
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key)
+        }
+    }
+
+    // Registers the directories of a tree that are not pruned; returns `false` if the whole tree is pruned
+    private fun registerTree(start: Path): Boolean {
+        val directories = sourceDiscovery.discoverDirectories(start.toString())
+        directories.forEach { directory ->
+            try {
+                val dir = Paths.get(directory)
+                watchedDirectories[dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE)] = dir
+            } catch (e: java.io.IOException) {
+                // Deleted again before it could be registered
+            }
+        }
+        return directories.isNotEmpty()
+    }
+
+    override fun close() {
+        watchService.close()
+    }
+}
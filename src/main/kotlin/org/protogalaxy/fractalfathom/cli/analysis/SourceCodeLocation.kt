@@ -1,18 +1,176 @@
 package org.protogalaxy.fractalfathom.cli.analysis
 
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken
+import com.fasterxml.jackson.databind.DeserializationContext
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.SerializerProvider
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize
+import com.fasterxml.jackson.databind.annotation.JsonSerialize
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer
+import com.fasterxml.jackson.databind.ser.std.StdSerializer
+
 /**
  * Represents the location of a code element in the source code.
  *
+ * A location refers to its file by an id of the [SourceFileTable] and, as long as the values fit, packs
+ * its lines and columns into a single long, so the IR holds one small object per location instead of a
+ * path reference and four ints. Locations are immutable and compared by value.
+ *
+ * When a [DocumentFileTable] is set as the `DocumentFileTable` attribute of the Jackson writer or reader,
+ * a location is serialized as `[fileIndex, startLine, endLine, startColumn, endColumn]` with an index into
+ * that table; otherwise it is serialized as an object with the file path. Both forms can be read.
+ *
  * @property filePath The path of the file where the code element is located.
  * @property startLine The starting line number of the code element.
  * @property endLine The ending line number of the code element.
  * @property startColumn The starting column number of the code element.
  * @property endColumn The ending column number of the code element.
  */
-data class SourceCodeLocation(
-    var filePath: String,            // 文件路径
-    var startLine: Int,              // 起始行号
-    var endLine: Int,                // 结束行号
-    var startColumn: Int,            // 起始列号
-    var endColumn: Int               // 结束列号
-)
\ No newline at end of file
+@JsonSerialize(using = SourceCodeLocation.Serializer::class)
+@JsonDeserialize(using = SourceCodeLocation.Deserializer::class)
+sealed class SourceCodeLocation(
+    val fileId: Int                  // 文件在 SourceFileTable 中的编号
+) {
+    abstract val startLine: Int      // 起始行号
+    abstract val endLine: Int        // 结束行号
+    abstract val startColumn: Int    // 起始列号
+    abstract val endColumn: Int      // 结束列号
+
+    val filePath: String             // 文件路径
+        get() = SourceFileTable.pathOf(fileId)
+
+    /**
+     * Lines and columns packed into 20, 20, 12 and 12 bits, each stored with an offset of one so that the
+     * `-1` Spoon uses for unknown positions fits as well.
+     */
+    private class Packed(fileId: Int, private val packed: Long) : SourceCodeLocation(fileId) {
+        override val startLine: Int get() = (packed ushr 44).toInt() - 1
+        override val endLine: Int get() = ((packed ushr 24) and LINE_MASK).toInt() - 1
+        override val startColumn: Int get() = ((packed ushr 12) and COLUMN_MASK).toInt() - 1
+        override val endColumn: Int get() = (packed and COLUMN_MASK).toInt() - 1
+    }
+
+    /**
+     * The fallback for positions beyond the packed range, e.g. very long lines of generated code.
+     */
+    private class Wide(
+        fileId: Int,
+        override val startLine: Int,
+        override val endLine: Int,
+        override val startColumn: Int,
+        override val endColumn: Int
+    ) : SourceCodeLocation(fileId)
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is SourceCodeLocation) return false
+        return fileId == other.fileId && startLine == other.startLine && endLine == other.endLine &&
+            startColumn == other.startColumn && endColumn == other.endColumn
+    }
+
+    override fun hashCode(): Int {
+        var result = fileId
+        result = 31 * result + startLine
+        result = 31 * result + endLine
+        result = 31 * result + startColumn
+        result = 31 * result + endColumn
+        return result
+    }
+
+    override fun toString(): String {
+        return "SourceCodeLocation(filePath=$filePath, startLine=$startLine, endLine=$endLine, " +
+            "startColumn=$startColumn, endColumn=$endColumn)"
+    }
+
+    companion object {
+        private const val LINE_MASK = (1L shl 20) - 1
+        private const val COLUMN_MASK = (1L shl 12) - 1
+
+        /**
+         * Creates the location of a code element, registering its file in the [SourceFileTable].
+         */
+        operator fun invoke(
+            filePath: String,
+            startLine: Int,
+            endLine: Int,
+            startColumn: Int,
+            endColumn: Int
+        ): SourceCodeLocation = of(SourceFileTable.idOf(filePath), startLine, endLine, startColumn, endColumn)
+
+        /**
+         * Creates the location of a code element in the file with the given [SourceFileTable] id.
+         */
+        fun of(fileId: Int, startLine: Int, endLine: Int, startColumn: Int, endColumn: Int): SourceCodeLocation {
+            return if (fits(startLine, LINE_MASK) && fits(endLine, LINE_MASK) &&
+                fits(startColumn, COLUMN_MASK) && fits(endColumn, COLUMN_MASK)
+            ) {
+                val packed = ((startLine + 1L) shl 44) or ((endLine + 1L) shl 24) or
+                    ((startColumn + 1L) shl 12) or (endColumn + 1L)
+                Packed(fileId, packed)
+            } else {
+                Wide(fileId, startLine, endLine, startColumn, endColumn)
+            }
+        }
+
+        private fun fits(value: Int, mask: Long): Boolean = value >= -1 && value + 1L <= mask
+    }
+
+    /**
+     * Writes a location as an array of file index and positions if the writer has a [DocumentFileTable]
+     * attribute, and as an object with the file path otherwise.
+     */
+    class Serializer : StdSerializer<SourceCodeLocation>(SourceCodeLocation::class.java) {
+        override fun serialize(value: SourceCodeLocation, gen: JsonGenerator, provider: SerializerProvider) {
+            val fileTable = provider.getAttribute(DocumentFileTable::class.java) as DocumentFileTable?
+            if (fileTable != null) {
+                gen.writeStartArray(value, 5)
+                gen.writeNumber(fileTable.indexOf(value.fileId))
+                gen.writeNumber(value.startLine)
+                gen.writeNumber(value.endLine)
+                gen.writeNumber(value.startColumn)
+                gen.writeNumber(value.endColumn)
+                gen.writeEndArray()
+            } else {
+                gen.writeStartObject(value)
+                gen.writeStringField("filePath", value.filePath)
+                gen.writeNumberField("startLine", value.startLine)
+                gen.writeNumberField("endLine", value.endLine)
+                gen.writeNumberField("startColumn", value.startColumn)
+                gen.writeNumberField("endColumn", value.endColumn)
+                gen.writeEndObject()
+            }
+        }
+    }
+
+    /**
+     * Reads a location from either serialized form; the array form requires a [DocumentFileTable]
+     * attribute on the reader.
+     */
+    class Deserializer : StdDeserializer<SourceCodeLocation>(SourceCodeLocation::class.java) {
+        override fun deserialize(p: JsonParser, ctxt: DeserializationContext): SourceCodeLocation {
+            if (p.currentToken() == JsonToken.START_ARRAY) {
+                val fileTable = ctxt.getAttribute(DocumentFileTable::class.java) as DocumentFileTable?
+                    ?: return ctxt.reportInputMismatch(this, "Compact source code location without a file table")
+                val values = IntArray(5)
+                for (i in values.indices) {
+                    p.nextToken()
+                    values[i] = p.valueAsInt
+                }
+                if (p.nextToken() != JsonToken.END_ARRAY) {
+                    return ctxt.reportInputMismatch(this, "Expected 5 values in a compact source code location")
+                }
+                return of(fileTable.fileIdAt(values[0]), values[1], values[2], values[3], values[4])
+            }
+            val node = p.codec.readTree<JsonNode>(p)
+            return SourceCodeLocation(
+                filePath = node.path("filePath").asText(),
+                startLine = node.path("startLine").asInt(),
+                endLine = node.path("endLine").asInt(),
+                startColumn = node.path("startColumn").asInt(),
+                endColumn = node.path("endColumn").asInt()
+            )
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+import java.io.IOException
+import java.nio.file.*
+import java.nio.file.attribute.BasicFileAttributes
+
+/**
+ * Discovers the source files of a project with `Files.walkFileTree`.
+ *
+ * Directories are pruned as soon as they are reached, so excluded trees such as `node_modules` or build
+ * output are never listed. A file is reported if it matches one of the include globs, none of the
+ * exclude globs and, when enabled, is not ignored by a `.gitignore` file inside the project tree.
+ * Globs are matched against the path relative to the project root, using `/` as separator.
+ *
+ * Build output directories (`build`, `target`, `out`, `bin`) are only skipped outside of `src`
+ * directories, so that packages with these names are still analyzed.
+ *
+ * @param projectPath The root directory of the project.
+ * @param includeGlobs Globs selecting the files to report.
+ * @param excludeGlobs Globs of files and directories to skip.
+ * @param respectGitignore Whether `.gitignore` files inside the project tree are honored.
+ * @param skipBuildOutput Whether well-known build output and tooling directories are skipped.
+ */
+class SourceDiscovery(
+    projectPath: String,
+    includeGlobs: List<String> = listOf("**/*.java"),
+    excludeGlobs: List<String> = emptyList(),
+    private val respectGitignore: Boolean = true,
+    private val skipBuildOutput: Boolean = true
+) {
+
+    constructor(projectPath: String, config: AnalyzerConfig) : this(
+        projectPath,
+        config.includeGlobs,
+        config.excludeGlobs,
+        config.respectGitignore,
+        config.skipBuildOutput
+    )
+
+    private val root: Path = Paths.get(projectPath).toAbsolutePath().normalize()
+    private val includeMatchers = includeGlobs.flatMap { globMatchers(it) }
+    private val excludeMatchers = excludeGlobs.flatMap { globMatchers(it) }
+
+    /**
+     * Lists the source files below the given directory.
+     *
+     * @param start The directory to search, which must be the project root or one of its descendants.
+     * @return The absolute paths of the discovered source files.
+     */
+    fun discover(start: String = root.toString()): List<String> {
+        val sourceFiles = mutableListOf<String>()
+        walk(start, pruneStart = false, onDirectory = {}) { file -> sourceFiles.add(file.toString()) }
+        return sourceFiles
+    }
+
+    /**
+     * Lists the directories that [discover] descends into, e.g. to watch them for changes.
+     *
+     * @param start The directory to search, which must be the project root or one of its descendants.
+     * @return The absolute paths of the given directory and the directories below it that are not pruned, or
+     * an empty list if the given directory is pruned itself.
+     */
+    fun discoverDirectories(start: String = root.toString()): List<String> {
+        val directories = mutableListOf<String>()
+        walk(start, pruneStart = true, onDirectory = { dir -> directories.add(dir.toString()) }, onSourceFile = null)
+        return directories
+    }
+
+    // Walks the tree below `start`, pruning excluded directories, and reports the visited directories and
+    // the source files; the start directory itself is only pruned with `pruneStart`
+    private fun walk(start: String, pruneStart: Boolean, onDirectory: (Path) -> Unit, onSourceFile: ((Path) -> Unit)?) {
+        val startPath = Paths.get(start).toAbsolutePath().normalize()
+        if (!Files.isDirectory(startPath)) return
+
+        // Rules of the ancestors of the start directory apply to the whole walk
+        val ignoreRules = ArrayDeque<GitignoreRules>()
+        ancestorsOf(startPath).forEach { dir -> loadGitignore(dir)?.let { ignoreRules.addLast(it) } }
+
+        Files.walkFileTree(startPath, object : SimpleFileVisitor<Path>() {
+            override fun preVisitDirectory(dir: Path, attrs: BasicFileAttributes): FileVisitResult {
+                if ((dir != startPath || pruneStart) && dir != root && isExcludedDirectory(dir, ignoreRules)) {
+                    return FileVisitResult.SKIP_SUBTREE
+                }
+                onDirectory(dir)
+                loadGitignore(dir)?.let { ignoreRules.addLast(it) }
+                return FileVisitResult.CONTINUE
+            }
+
+            override fun postVisitDirectory(dir: Path, exc: IOException?): FileVisitResult {
+                if (ignoreRules.lastOrNull()?.directory == dir) {
+                    ignoreRules.removeLast()
+                }
+                return FileVisitResult.CONTINUE
+            }
+
+            override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+                if (onSourceFile != null && attrs.isRegularFile && isIncludedFile(file, ignoreRules)) {
+                    onSourceFile(file)
+                }
+                return FileVisitResult.CONTINUE
+            }
+
+            override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult {
+                return FileVisitResult.CONTINUE
+            }
+        })
+    }
+
+    /**
+     * Checks whether a single file would be reported by [discover], e.g. for a file reported by a watcher.
+     *
+     * @param filePath The path of the file to check.
+     * @return `true` if the file lies in the project tree, outside excluded directories, and is selected.
+     */
+    fun isSourceFile(filePath: String): Boolean {
+        val file = Paths.get(filePath).toAbsolutePath().normalize()
+        val parent = file.parent ?: return false
+        if (!file.startsWith(root) || !Files.isRegularFile(file)) return false
+
+        val ignoreRules = ArrayDeque<GitignoreRules>()
+        ancestorsOf(parent).forEach { dir ->
+            if (dir != root && isExcludedDirectory(dir, ignoreRules)) return false
+            loadGitignore(dir)?.let { ignoreRules.addLast(it) }
+        }
+        if (parent != root && isExcludedDirectory(parent, ignoreRules)) return false
+        loadGitignore(parent)?.let { ignoreRules.addLast(it) }
+        return isIncludedFile(file, ignoreRules)
+    }
+
+    private fun isExcludedDirectory(dir: Path, ignoreRules: Collection<GitignoreRules>): Boolean {
+        val name = dir.fileName?.toString() ?: return false
+        if (skipBuildOutput) {
+            if (name in alwaysSkippedDirectories) return true
+            if (name in buildOutputDirectories && !isInsideSourceDirectory(dir)) return true
+        }
+        val relativePath = relativePathOf(dir)
+        if (excludeMatchers.any { it.matches(relativePath) }) return true
+        return respectGitignore && isIgnored(dir, true, ignoreRules)
+    }
+
+    private fun isIncludedFile(file: Path, ignoreRules: Collection<GitignoreRules>): Boolean {
+        val relativePath = relativePathOf(file)
+        if (includeMatchers.none { it.matches(relativePath) }) return false
+        if (excludeMatchers.any { it.matches(relativePath) }) return false
+        return !(respectGitignore && isIgnored(file, false, ignoreRules))
+    }
+
+    // The last matching rule wins, and deeper .gitignore files override shallower ones
+    private fun isIgnored(path: Path, isDirectory: Boolean, ignoreRules: Collection<GitignoreRules>): Boolean {
+        var ignored = false
+        ignoreRules.forEach { rules ->
+            rules.match(path, isDirectory)?.let { ignored = it }
+        }
+        return ignored
+    }
+
+    private fun isInsideSourceDirectory(dir: Path): Boolean {
+        var current = dir.parent
+        while (current != null && current.startsWith(root) && current != root) {
+            if (current.fileName.toString() == "src") return true
+            current = current.parent
+        }
+        return false
+    }
+
+    // The directories from the project root down to, but excluding, the given directory
+    private fun ancestorsOf(dir: Path): List<Path> {
+        val ancestors = mutableListOf<Path>()
+        var current = dir.parent
+        while (current != null && current.startsWith(root)) {
+            ancestors.add(0, current)
+            current = current.parent
+        }
+        return ancestors
+    }
+
+    private fun relativePathOf(path: Path): Path = Paths.get(root.relativize(path).toString().replace('\\', '/'))
+
+    private fun loadGitignore(dir: Path): GitignoreRules? {
+        if (!respectGitignore) return null
+        val gitignore = dir.resolve(".gitignore")
+        if (!Files.isRegularFile(gitignore)) return null
+        return try {
+            GitignoreRules.parse(dir, Files.readAllLines(gitignore))
+        } catch (e: IOException) {
+            null
+        }
+    }
+
+    companion object {
+        // Directories that never contain project sources
+        private val alwaysSkippedDirectories = setOf(".git", ".hg", ".svn", ".gradle", ".idea", "node_modules")
+
+        // Directories that usually hold build output when they are not part of a source tree
+        private val buildOutputDirectories = setOf("build", "target", "out", "bin")
+
+        /**
+         * Creates the matchers for a glob. A leading `**` followed by a slash also matches at the root,
+         * as `**` does in Gradle and `.gitignore` patterns.
+         */
+        internal fun globMatchers(glob: String): List<PathMatcher> {
+            val fileSystem = FileSystems.getDefault()
+            val matchers = mutableListOf(fileSystem.getPathMatcher("glob:$glob"))
+            if (glob.startsWith("**/")) {
+                matchers.add(fileSystem.getPathMatcher("glob:${glob.removePrefix("**/")}"))
+            }
+            return matchers
+        }
+    }
+}
+
+/**
+ * The rules of a single `.gitignore` file.
+ *
+ * Supports comments, negation with `!`, directory-only patterns with a trailing `/` and patterns
+ * anchored to the directory of the `.gitignore` file with a leading or inner `/`.
+ *
+ * @property directory The directory containing the `.gitignore` file.
+ */
+internal class GitignoreRules private constructor(
+    val directory: Path,
+    private val rules: List<Rule>
+) {
+
+    private class Rule(val matchers: List<PathMatcher>, val negated: Boolean, val directoryOnly: Boolean)
+
+    /**
+     * Matches a path against the rules.
+     *
+     * @return `true` if the path is ignored, `false` if it is explicitly re-included, or `null` if no rule matches.
+     */
+    fun match(path: Path, isDirectory: Boolean): Boolean? {
+        if (!path.startsWith(directory) || path == directory) return null
+        val relativePath = Paths.get(directory.relativize(path).toString().replace('\\', '/'))
+        var result: Boolean? = null
+        rules.forEach { rule ->
+            if ((!rule.directoryOnly || isDirectory) && rule.matchers.any { it.matches(relativePath) }) {
+                result = !rule.negated
+            }
+        }
+        return result
+    }
+
+    companion object {
+        fun parse(directory: Path, lines: List<String>): GitignoreRules {
+            val rules = lines.mapNotNull { line ->
+                var pattern = line.trim()
+                if (pattern.isEmpty() || pattern.startsWith("#")) return@mapNotNull null
+
+                val negated = pattern.startsWith("!")
+                if (negated) pattern = pattern.substring(1)
+                val directoryOnly = pattern.endsWith("/")
+                pattern = pattern.trimEnd('/')
+                if (pattern.isEmpty()) return@mapNotNull null
+
+                // Patterns without an inner slash match at any depth
+                val anchored = pattern.contains('/')
+                pattern = pattern.removePrefix("/")
+                val glob = if (anchored) pattern else "**/$pattern"
+                Rule(SourceDiscovery.globMatchers(glob), negated, directoryOnly)
+            }
+            return GitignoreRules(directory, rules)
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * The process-wide table of the source files referenced by [SourceCodeLocation]s.
+ *
+ * Every distinct file path is stored once and identified by a dense int id, so a location only needs an
+ * int instead of a reference to its own path. Ids are never reused or removed.
+ */
+object SourceFileTable {
+
+    private val ids = ConcurrentHashMap<String, Int>()
+
+    @Volatile
+    private var paths = arrayOfNulls<String>(256)
+    private var size = 0
+
+    /**
+     * Returns the id of a file path, registering the path on first use.
+     */
+    fun idOf(filePath: String): Int = ids[filePath] ?: register(filePath)
+
+    /**
+     * Returns the path of the file with the given id.
+     */
+    fun pathOf(fileId: Int): String = paths[fileId] ?: throw IllegalArgumentException("Unknown file id $fileId")
+
+    @Synchronized
+    private fun register(filePath: String): Int {
+        ids[filePath]?.let { return it }
+        if (size == paths.size) {
+            paths = paths.copyOf(size * 2)
+        }
+        // The path is published before its id, so any thread that sees the id also sees the path
+        paths[size] = filePath
+        ids[filePath] = size
+        return size++
+    }
+}
+
+/**
+ * The file table of a single serialized IR document.
+ *
+ * While writing, it assigns document-local indices to the files in order of first use, so locations can
+ * be written as `[fileIndex, startLine, endLine, startColumn, endColumn]` and the paths are written once
+ * in [filePaths]. While reading, it is created from those paths and resolves the indices again.
+ */
+class DocumentFileTable private constructor(private val fileIds: MutableList<Int>) {
+
+    private val indices = HashMap<Int, Int>()
+
+    init {
+        fileIds.forEachIndexed { index, fileId -> indices[fileId] = index }
+    }
+
+    /**
+     * Creates an empty table for writing a document.
+     */
+    constructor() : this(mutableListOf())
+
+    /**
+     * The paths of the files in the order of their document-local indices.
+     */
+    val filePaths: List<String>
+        get() = fileIds.map { SourceFileTable.pathOf(it) }
+
+    /**
+     * Returns the document-local index of a file, assigning the next index on first use.
+     */
+    fun indexOf(fileId: Int): Int = indices.getOrPut(fileId) {
+        fileIds.add(fileId)
+        fileIds.size - 1
+    }
+
+    /**
+     * Returns the process-wide id of the file with the given document-local index.
+     */
+    fun fileIdAt(index: Int): Int = fileIds[index]
+
+    companion object {
+        /**
+         * Creates the table of a document being read from the file paths written with it.
+         */
+        fun fromPaths(filePaths: List<String>): DocumentFileTable {
+            return DocumentFileTable(filePaths.mapTo(mutableListOf()) { SourceFileTable.idOf(it) })
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+/**
+ * Enum representing how the text of a statement in the low-level AST is obtained.
+ *
+ * Pretty-printing a statement also prints every statement nested in it, so with [PRETTY_PRINT] the cost
+ * grows with the nesting depth of a method body. [SOURCE] slices the text from the original file using
+ * the positions reported by Spoon and only materializes it when the expression is read.
+ *
+ * @property option The name of the mode on the command line.
+ */
+enum class StatementTextMode(val option: String) {
+    PRETTY_PRINT("pretty-print"),   // Normalized text printed by Spoon
+    SOURCE("source");               // Original text, including formatting and comments
+
+    companion object {
+        /**
+         * Resolves a mode from its command line name, e.g. `source`.
+         *
+         * @param name The case-insensitive name of the mode.
+         * @return The matching mode.
+         * @throws IllegalArgumentException if no mode has the given name.
+         */
+        fun fromOption(name: String): StatementTextMode {
+            return entries.firstOrNull { it.option.equals(name, ignoreCase = true) }
+                ?: throw IllegalArgumentException("Unknown statement text mode '$name', expected one of ${entries.joinToString { it.option }}")
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+import org.protogalaxy.fractalfathom.cli.analysis.annotation.AnnotationEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRFieldEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRMethodEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticCallEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticParameterEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticRelationEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticStatementEntity
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A project-wide table of canonical String instances for the symbols of the IR.
+ *
+ * Type names, package names, identifiers, modifiers and class file paths repeat across the whole project, but
+ * Spoon and Jackson create a new String for every occurrence. Interning the IR through one table makes all
+ * entities share a single instance per distinct symbol, while free text such as statements, descriptions
+ * and annotation targets is left untouched.
+ *
+ * The table is thread-safe and only grows, so it should live as long as the IR it canonicalizes.
+ */
+class SymbolTable {
+
+    private val symbols = ConcurrentHashMap<String, String>()
+
+    /**
+     * The number of distinct symbols in the table.
+     */
+    val size: Int
+        get() = symbols.size
+
+    /**
+     * Returns the canonical instance of a symbol.
+     */
+    fun intern(symbol: String): String = symbols.putIfAbsent(symbol, symbol) ?: symbol
+
+    /**
+     * Returns the canonical instance of a symbol, or `null` for `null`.
+     */
+    @JvmName("internNullable")
+    fun intern(symbol: String?): String? = symbol?.let { intern(it) }
+
+    /**
+     * Returns a copy of a class whose symbols are canonical instances of this table.
+     *
+     * Source code locations need no interning, they refer to their files through the [SourceFileTable].
+     *
+     * @param irClass The class to intern.
+     * @return A class equal to `irClass` that shares its symbols with all other interned classes.
+     */
+    fun intern(irClass: IRClassEntity): IRClassEntity {
+        return irClass.copy(
+            name = intern(irClass.name),
+            type = intern(irClass.type),
+            packageName = intern(irClass.packageName),
+            filePath = intern(irClass.filePath),
+            modifiers = intern(irClass.modifiers),
+            superClass = intern(irClass.superClass),
+            interfaces = irClass.interfaces.map { intern(it) },
+            annotations = irClass.annotations.map { intern(it) },
+            fields = irClass.fields.map { intern(it) },
+            methods = irClass.methods.map { intern(it) },
+            relations = irClass.relations.map { intern(it) }
+        )
+    }
+
+    private fun intern(field: IRFieldEntity): IRFieldEntity {
+        return field.copy(
+            name = intern(field.name),
+            type = intern(field.type),
+            modifiers = intern(field.modifiers),
+            annotations = field.annotations.map { intern(it) }
+        )
+    }
+
+    private fun intern(method: IRMethodEntity): IRMethodEntity {
+        return method.copy(
+            name = intern(method.name),
+            returnType = intern(method.returnType),
+            parameters = method.parameters.map { intern(it) },
+            modifiers = intern(method.modifiers),
+            annotations = method.annotations.map { intern(it) },
+            calledMethods = method.calledMethods.map { intern(it) },
+            lowLevelAST = method.lowLevelAST?.let { ast -> ast.copy(statements = ast.statements.map { intern(it) }) }
+        )
+    }
+
+    private fun intern(parameter: StaticParameterEntity): StaticParameterEntity {
+        return parameter.copy(
+            name = intern(parameter.name),
+            type = intern(parameter.type)
+        )
+    }
+
+    private fun intern(call: StaticCallEntity): StaticCallEntity {
+        return call.copy(
+            methodName = intern(call.methodName),
+            declaringType = intern(call.declaringType),
+            signature = intern(call.signature)
+        )
+    }
+
+    private fun intern(relation: StaticRelationEntity): StaticRelationEntity {
+        return relation.copy(
+            relationType = intern(relation.relationType),
+            targetClass = intern(relation.targetClass)
+        )
+    }
+
+    private fun intern(annotation: AnnotationEntity): AnnotationEntity {
+        return annotation.copy(
+            name = intern(annotation.name),
+            attributes = annotation.attributes.mapKeys { intern(it.key) }
+        )
+    }
+
+    private fun intern(statement: StaticStatementEntity): StaticStatementEntity {
+        return statement.copy(
+            type = intern(statement.type),
+            subStatements = statement.subStatements?.map { intern(it) }
+        )
+    }
+}
@@ -7,7 +7,7 @@ import org.protogalaxy.fractalfathom.cli.analysis.SourceCodeLocation
  *
  * @property name The name of the annotation.
  * @property attributes A map containing the key-value pairs of annotation attributes.
- * @property targetElement The name of the code element the annotation applies to (e.g., class name, method name, field name).
+ * @property targetElement The signature of the code element the annotation applies to (see `ElementSignature`).
  * @property targetType The type of the code element (e.g., CLASS, METHOD, FIELD).
  * @property condition Optional condition that determines when the annotation is active.
  * @property dependencies Optional list of dependent annotation names.
@@ -0,0 +1,142 @@
+package org.protogalaxy.fractalfathom.cli.analysis.annotation
+
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import java.nio.ByteBuffer
+import java.security.MessageDigest
+import java.time.ZonedDateTime
+import java.util.EnumMap
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A registry of the features and mappings declared by FractalFathom annotations.
+ *
+ * Every distinct feature (by name and type) and mapping (by concept and type) is created once and shared
+ * by all code elements annotated with it, instead of one entity per annotation occurrence. The entities get
+ * name-based UUIDs (version 5), so the same feature has the same UUID in every run, and all entities of a
+ * registry carry the registry's timestamp.
+ *
+ * If occurrences of the same feature disagree on the description or labels, the first one registered wins.
+ *
+ * Lookups of registered entities do not lock; registering a new entity is a single `putIfAbsent`.
+ *
+ * @param timestamp The creation and update time of all entities of this registry.
+ */
+class FeatureRegistry(private val timestamp: ZonedDateTime = ZonedDateTime.now()) {
+
+    private val features = EnumMap<FeatureType, ConcurrentHashMap<String, FeatureEntity>>(FeatureType::class.java).apply {
+        FeatureType.entries.forEach { put(it, ConcurrentHashMap()) }
+    }
+    private val mappings = EnumMap<MappingType, ConcurrentHashMap<String, MappingEntity>>(MappingType::class.java).apply {
+        MappingType.entries.forEach { put(it, ConcurrentHashMap()) }
+    }
+
+    /**
+     * The number of distinct features in the registry.
+     */
+    val featureCount: Int
+        get() = features.values.sumOf { it.size }
+
+    /**
+     * The number of distinct mappings in the registry.
+     */
+    val mappingCount: Int
+        get() = mappings.values.sumOf { it.size }
+
+    /**
+     * Returns the shared instance of a feature, creating it on first use.
+     *
+     * @param name The name of the feature.
+     * @param description Optional description, only used when the feature is created.
+     * @param type The type of the feature.
+     * @param labels Optional list of tags, only used when the feature is created.
+     * @return The feature registered under the name and type.
+     */
+    fun feature(name: String, description: String? = null, type: FeatureType, labels: List<String>? = null): FeatureEntity {
+        val byName = features.getValue(type)
+        byName[name]?.let { return it }
+        val feature = FeatureEntity(
+            uuid = nameBasedUuid(FEATURE_NAMESPACE, "${type.name}:$name"),
+            name = name,
+            description = description,
+            type = type,
+            labels = labels,
+            creationTime = timestamp,
+            lastUpdatedTime = timestamp
+        )
+        return byName.putIfAbsent(name, feature) ?: feature
+    }
+
+    /**
+     * Returns the shared instance of a mapping, creating it on first use.
+     *
+     * @param toConcept The target high-level concept or design pattern.
+     * @param type The type of the mapping.
+     * @return The mapping registered under the concept and type.
+     */
+    fun mapping(toConcept: String, type: MappingType): MappingEntity {
+        val byConcept = mappings.getValue(type)
+        byConcept[toConcept]?.let { return it }
+        val mapping = MappingEntity(
+            uuid = nameBasedUuid(MAPPING_NAMESPACE, "${type.name}:$toConcept"),
+            toConcept = toConcept,
+            type = type,
+            creationTime = timestamp,
+            lastUpdatedTime = timestamp
+        )
+        return byConcept.putIfAbsent(toConcept, mapping) ?: mapping
+    }
+
+    /**
+     * Returns a class whose features and mappings, and those of its fields and methods, are the shared
+     * instances of this registry, e.g. for classes read back from the IR cache.
+     *
+     * @param irClass The class to canonicalize.
+     * @return A class referring to the entities of this registry.
+     */
+    fun canonicalize(irClass: IRClassEntity): IRClassEntity {
+        return irClass.copy(
+            features = canonicalFeatures(irClass.features),
+            mappings = canonicalMappings(irClass.mappings),
+            fields = irClass.fields.map { it.copy(features = canonicalFeatures(it.features), mappings = canonicalMappings(it.mappings)) },
+            methods = irClass.methods.map { it.copy(features = canonicalFeatures(it.features), mappings = canonicalMappings(it.mappings)) }
+        )
+    }
+
+    private fun canonicalFeatures(values: List<FeatureEntity>): List<FeatureEntity> {
+        return if (values.isEmpty()) values else values.map { feature(it.name, it.description, it.type, it.labels) }
+    }
+
+    private fun canonicalMappings(values: List<MappingEntity>): List<MappingEntity> {
+        return if (values.isEmpty()) values else values.map { mapping(it.toConcept, it.type) }
+    }
+
+    companion object {
+        private val FEATURE_NAMESPACE = UUID.fromString("5d0f5a3e-8a8c-4c1e-9b55-2f6f0b7a4e21")
+        private val MAPPING_NAMESPACE = UUID.fromString("a3b1e7c4-6d2f-4f0a-8e93-1c5d7b9f2a68")
+
+        /**
+         * The registry shared by all parsers of this process.
+         */
+        val shared = FeatureRegistry()
+
+        /**
+         * Creates a name-based UUID (version 5, SHA-1) as defined in RFC 4122.
+         *
+         * @param namespace The namespace of the name.
+         * @param name The name, encoded as UTF-8.
+         * @return The same UUID for the same namespace and name.
+         */
+        fun nameBasedUuid(namespace: UUID, name: String): UUID {
+            val digest = MessageDigest.getInstance("SHA-1")
+            digest.update(
+                ByteBuffer.allocate(16).putLong(namespace.mostSignificantBits).putLong(namespace.leastSignificantBits).array()
+            )
+            val hash = ByteBuffer.wrap(digest.digest(name.toByteArray(Charsets.UTF_8)))
+            // Set the version to 5 and the variant to RFC 4122
+            val mostSignificantBits = (hash.getLong(0) and 0xf000L.inv()) or 0x5000L
+            val leastSignificantBits = (hash.getLong(8) and (0x3L shl 62).inv()) or (0x2L shl 62)
+            return UUID(mostSignificantBits, leastSignificantBits)
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.protogalaxy.fractalfathom.cli.analysis.cache
+
+import com.fasterxml.jackson.module.kotlin.readValue
+import org.protogalaxy.fractalfathom.cli.analysis.CodeAnalyzer
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.output.IRFormat
+import java.io.File
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A persistent on-disk cache of the IR extracted from individual source files.
+ *
+ * Each source file is stored in its own entry, named after a hash of the file path. An entry is only
+ * reused when the hash of the current file content and analyzer version matches the hash stored
+ * with it, so changed files and analyzer upgrades are re-parsed automatically.
+ *
+ * The [CodeAnalyzer] resolves re-parsed files against the cached files they reach by type name, so a changed
+ * file gets the same IR as on a cold run. The key of an entry only covers its own file, though: an unchanged
+ * file keeps the resolution of its cached IR, e.g. the declaring types of its calls, when only another file
+ * changes, such as a method moving to another class. Run without the cache (`--no-cache`) to resolve all files
+ * again after such changes.
+ *
+ * @param cacheDir The directory holding the cache entries. It is created on first write.
+ * @param analyzerVersion The version of the analyzer, mixed into every content hash.
+ */
+class IRCache(private val cacheDir: File, private val analyzerVersion: String = CodeAnalyzer.ANALYZER_VERSION) {
+
+    // Entries are stored as binary Smile, which is smaller and faster to parse than JSON, with the same
+    // serialization settings as the IR files
+    private val mapper = IRFormat.SMILE.createMapper()
+
+    private val hitCount = AtomicInteger()
+    private val missCount = AtomicInteger()
+
+    /** The number of lookups answered from the cache since this instance was created. */
+    val hits: Int get() = hitCount.get()
+
+    /** The number of lookups that required the file to be parsed since this instance was created. */
+    val misses: Int get() = missCount.get()
+
+    /**
+     * Computes the hash identifying the current content of a source file.
+     *
+     * @param filePath The path of the source file.
+     * @return A hex-encoded SHA-256 hash of the analyzer version and the file content.
+     */
+    fun contentHash(filePath: String): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(analyzerVersion.toByteArray())
+        digest.update(0)
+        digest.update(File(filePath).readBytes())
+        return digest.digest().toHex()
+    }
+
+    /**
+     * Looks up the IR cached for a source file and records the outcome as a hit or a miss.
+     *
+     * @param filePath The path of the source file.
+     * @param contentHash The hash of the current file content, as returned by [contentHash].
+     * @return The cached classes, or `null` if the file is not cached or has changed.
+     */
+    fun lookup(filePath: String, contentHash: String): List<IRClassEntity>? {
+        val entry = readEntry(entryFile(filePath))
+        return if (entry != null && entry.filePath == filePath && entry.contentHash == contentHash) {
+            hitCount.incrementAndGet()
+            entry.classes
+        } else {
+            missCount.incrementAndGet()
+            null
+        }
+    }
+
+    /**
+     * Stores the IR extracted from a source file, replacing any previous entry for the same path.
+     *
+     * @param filePath The path of the source file.
+     * @param contentHash The hash of the file content the IR was extracted from.
+     * @param classes The classes extracted from the file.
+     */
+    fun store(filePath: String, contentHash: String, classes: List<IRClassEntity>) {
+        try {
+            cacheDir.mkdirs()
+            val target = entryFile(filePath)
+            // Write to a temporary file first so that an interrupted run never leaves a truncated entry
+            val temp = File(cacheDir, "${target.name}.tmp")
+            mapper.writeValue(temp, IRCacheEntry(filePath, contentHash, classes))
+            if (!temp.renameTo(target)) {
+                target.delete()
+                temp.renameTo(target)
+            }
+        } catch (e: Exception) {
+            println("Error writing IR cache entry for file: $filePath")
+            e.printStackTrace()
+        }
+    }
+
+    /**
+     * Removes the entries of all source files that are not in the given list, e.g. deleted files.
+     *
+     * @param filePaths The paths of the source files that still exist.
+     */
+    fun retainOnly(filePaths: Collection<String>) {
+        val retainedNames = filePaths.mapTo(HashSet()) { entryFile(it).name }
+        cacheDir.listFiles()?.forEach { file ->
+            if (file.name !in retainedNames) {
+                file.delete()
+            }
+        }
+    }
+
+    private fun readEntry(file: File): IRCacheEntry? {
+        if (!file.isFile) return null
+        return try {
+            mapper.readValue<IRCacheEntry>(file)
+        } catch (e: Exception) {
+            // A corrupt or outdated entry is treated like a missing one and overwritten later
+            null
+        }
+    }
+
+    private fun entryFile(filePath: String): File {
+        val digest = MessageDigest.getInstance("SHA-256").digest(filePath.toByteArray())
+        return File(cacheDir, "${digest.toHex()}.smile")
+    }
+
+    private fun ByteArray.toHex(): String = joinToString("") { "%02x".format(it) }
+}
+
+/**
+ * The content of a single cache entry.
+ *
+ * @property filePath The path of the source file the entry belongs to.
+ * @property contentHash The hash of the file content and analyzer version the IR was extracted from.
+ * @property classes The classes extracted from the file.
+ */
+data class IRCacheEntry(
+    val filePath: String,
+    val contentHash: String,
+    val classes: List<IRClassEntity>
+)
@@ -0,0 +1,278 @@
+package org.protogalaxy.fractalfathom.cli.analysis.callgraph
+
+import org.protogalaxy.fractalfathom.cli.analysis.ElementSignature
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRMethodEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticCallEntity
+import org.protogalaxy.fractalfathom.cli.analysis.store.ColumnarIRStore
+import java.util.BitSet
+
+/**
+ * A project-wide index of the calls between methods.
+ *
+ * Every method is identified by its [ElementSignature], `declaringType#name(parameterTypes)`, and mapped to
+ * a dense int id. The call edges are stored twice in compressed sparse row form, once by caller and once by
+ * callee, so the callees and callers of a method are a contiguous range of an `IntArray` and queries never
+ * touch boxed values. Duplicate calls between the same pair of methods are stored once.
+ *
+ * Called methods that are not part of the analyzed project, e.g. library methods, are indexed as well,
+ * so they can be queried like any other method.
+ */
+class CallGraphIndex private constructor(
+    private val methodKeys: Array<String>,
+    private val idsByKey: Map<String, Int>,
+    @PublishedApi internal val calleeOffsets: IntArray,
+    @PublishedApi internal val calleeIds: IntArray,
+    @PublishedApi internal val callerOffsets: IntArray,
+    @PublishedApi internal val callerIds: IntArray
+) {
+
+    /**
+     * The number of indexed methods.
+     */
+    val methodCount: Int
+        get() = methodKeys.size
+
+    /**
+     * The number of distinct call edges.
+     */
+    val callCount: Int
+        get() = calleeIds.size
+
+    /**
+     * Returns the id of a method, or `-1` if the method is not indexed.
+     */
+    fun idOf(methodKey: String): Int = idsByKey[methodKey] ?: -1
+
+    /**
+     * Returns the key of the method with the given id.
+     */
+    fun methodKeyOf(id: Int): String = methodKeys[id]
+
+    /**
+     * Returns the ids of the methods called by the method with the given id, in ascending order.
+     */
+    fun calleesOf(id: Int): IntArray = calleeIds.copyOfRange(calleeOffsets[id], calleeOffsets[id + 1])
+
+    /**
+     * Returns the ids of the methods calling the method with the given id, in ascending order.
+     */
+    fun callersOf(id: Int): IntArray = callerIds.copyOfRange(callerOffsets[id], callerOffsets[id + 1])
+
+    /**
+     * Calls [action] with the id of every method called by the method with the given id, without allocating.
+     */
+    inline fun forEachCallee(id: Int, action: (Int) -> Unit) {
+        for (edge in calleeOffsets[id] until calleeOffsets[id + 1]) action(calleeIds[edge])
+    }
+
+    /**
+     * Calls [action] with the id of every method calling the method with the given id, without allocating.
+     */
+    inline fun forEachCaller(id: Int, action: (Int) -> Unit) {
+        for (edge in callerOffsets[id] until callerOffsets[id + 1]) action(callerIds[edge])
+    }
+
+    /**
+     * Collects the methods that are transitively called by the method with the given id.
+     *
+     * @param id The id of the method to start from.
+     * @return The ids of the reachable methods. The start method is only included if it is part of a cycle.
+     */
+    fun reachableFrom(id: Int): BitSet = traverse(id, calleeOffsets, calleeIds)
+
+    /**
+     * Collects the methods that transitively call the method with the given id.
+     *
+     * @param id The id of the method to start from.
+     * @return The ids of the calling methods. The start method is only included if it is part of a cycle.
+     */
+    fun reachingTo(id: Int): BitSet = traverse(id, callerOffsets, callerIds)
+
+    /**
+     * Returns the keys of the methods calling the given method, or an empty list if it is not indexed.
+     */
+    fun callers(methodKey: String): List<String> = idOf(methodKey).let { id ->
+        if (id < 0) emptyList() else callersOf(id).map { methodKeys[it] }
+    }
+
+    /**
+     * Returns the keys of the methods called by the given method, or an empty list if it is not indexed.
+     */
+    fun callees(methodKey: String): List<String> = idOf(methodKey).let { id ->
+        if (id < 0) emptyList() else calleesOf(id).map { methodKeys[it] }
+    }
+
+    /**
+     * Returns the keys of the methods transitively called by the given method, or an empty list if it is not indexed.
+     */
+    fun reachable(methodKey: String): List<String> = idOf(methodKey).let { id ->
+        if (id < 0) emptyList() else reachableFrom(id).stream().mapToObj { methodKeys[it] }.toList()
+    }
+
+    // Depth-first traversal with an explicit int stack; every method is pushed at most once
+    private fun traverse(start: Int, offsets: IntArray, targets: IntArray): BitSet {
+        val visited = BitSet(methodKeys.size)
+        var stack = IntArray(16)
+        var size = 0
+        stack[size++] = start
+        while (size > 0) {
+            val id = stack[--size]
+            for (edge in offsets[id] until offsets[id + 1]) {
+                val target = targets[edge]
+                if (!visited.get(target)) {
+                    visited.set(target)
+                    if (size == stack.size) stack = stack.copyOf(size * 2)
+                    stack[size++] = target
+                }
+            }
+        }
+        return visited
+    }
+
+    /**
+     * Collects methods and call edges and builds an immutable [CallGraphIndex].
+     */
+    class Builder {
+        private val methodKeys = ArrayList<String>()
+        private val idsByKey = HashMap<String, Int>()
+        private var callers = IntArray(1024)
+        private var callees = IntArray(1024)
+        private var edgeCount = 0
+
+        /**
+         * Adds a method to the index if it is not indexed yet.
+         *
+         * @return The id of the method.
+         */
+        fun addMethod(methodKey: String): Int {
+            return idsByKey.getOrPut(methodKey) {
+                methodKeys.add(methodKey)
+                methodKeys.size - 1
+            }
+        }
+
+        /**
+         * Adds a call edge, adding both methods if needed.
+         */
+        fun addCall(callerKey: String, calleeKey: String) = addCall(addMethod(callerKey), addMethod(calleeKey))
+
+        /**
+         * Adds a call edge between two methods that have already been added.
+         */
+        fun addCall(callerId: Int, calleeId: Int) {
+            if (edgeCount == callers.size) {
+                callers = callers.copyOf(edgeCount * 2)
+                callees = callees.copyOf(edgeCount * 2)
+            }
+            callers[edgeCount] = callerId
+            callees[edgeCount] = calleeId
+            edgeCount++
+        }
+
+        /**
+         * Builds the index from the added methods and calls.
+         */
+        fun build(): CallGraphIndex {
+            val methodCount = methodKeys.size
+            val (calleeOffsets, calleeIds) = compressedRows(methodCount, callers, callees)
+            val (callerOffsets, callerIds) = compressedRows(methodCount, callees, callers)
+            return CallGraphIndex(
+                methodKeys.toTypedArray(),
+                HashMap(idsByKey),
+                calleeOffsets,
+                calleeIds,
+                callerOffsets,
+                callerIds
+            )
+        }
+
+        // Counting sort of the edges by source, followed by sorting and de-duplicating every row
+        private fun compressedRows(methodCount: Int, sources: IntArray, targets: IntArray): Pair<IntArray, IntArray> {
+            val offsets = IntArray(methodCount + 1)
+            for (edge in 0 until edgeCount) offsets[sources[edge] + 1]++
+            for (id in 0 until methodCount) offsets[id + 1] += offsets[id]
+
+            val rows = IntArray(edgeCount)
+            val next = offsets.copyOf(methodCount)
+            for (edge in 0 until edgeCount) rows[next[sources[edge]]++] = targets[edge]
+
+            val compactOffsets = IntArray(methodCount + 1)
+            var size = 0
+            for (id in 0 until methodCount) {
+                val start = offsets[id]
+                val end = offsets[id + 1]
+                rows.sort(start, end)
+                for (edge in start until end) {
+                    if (edge == start || rows[edge] != rows[edge - 1]) rows[size++] = rows[edge]
+                }
+                compactOffsets[id + 1] = size
+            }
+            return compactOffsets to rows.copyOf(size)
+        }
+    }
+
+    companion object {
+        /**
+         * Builds the key of a method from its declaring type, name and parameter types.
+         */
+        fun methodKey(declaringType: String, methodName: String, parameterTypes: List<String>): String {
+            return ElementSignature.ofMethod(declaringType, methodName, parameterTypes)
+        }
+
+        /**
+         * Returns the key of the method called by a call, using `?` for an unresolved declaring type.
+         */
+        fun methodKey(call: StaticCallEntity): String = ElementSignature.of(call)
+
+        /**
+         * Returns the key of a method declared by a class of the IR.
+         */
+        fun methodKey(irClass: IRClassEntity, method: IRMethodEntity): String = ElementSignature.of(irClass, method)
+
+        /**
+         * Builds the call graph of the analyzed classes from the calls recorded in their methods.
+         *
+         * @param irClasses The analyzed classes.
+         * @return The index of all declared and called methods.
+         */
+        fun fromIR(irClasses: List<IRClassEntity>): CallGraphIndex {
+            val builder = Builder()
+            // Declared methods first, so they get the lowest ids even if they are called before being declared
+            irClasses.forEach { irClass -> irClass.methods.forEach { builder.addMethod(methodKey(irClass, it)) } }
+            irClasses.forEach { irClass ->
+                irClass.methods.forEach { method ->
+                    val callerId = builder.addMethod(methodKey(irClass, method))
+                    method.calledMethods.forEach { call -> builder.addCall(callerId, builder.addMethod(methodKey(call))) }
+                }
+            }
+            return builder.build()
+        }
+
+        /**
+         * Builds the call graph of the classes of a columnar IR store from the calls recorded in their methods.
+         *
+         * The methods and calls are read from the columns of the store, so no class is materialized.
+         *
+         * @param store The store holding the analyzed classes.
+         * @return The index of all declared and called methods.
+         */
+        fun fromStore(store: ColumnarIRStore): CallGraphIndex {
+            val builder = Builder()
+            val classes = store.classes()
+            classes.forEach { irClass -> irClass.methods.forEach { builder.addMethod(methodKey(irClass, it)) } }
+            classes.forEach { irClass ->
+                irClass.methods.forEach { method ->
+                    val callerId = builder.addMethod(methodKey(irClass, method))
+                    method.calledMethods.forEach { call -> builder.addCall(callerId, builder.addMethod(methodKey(call))) }
+                }
+            }
+            return builder.build()
+        }
+
+        private fun methodKey(irClass: ColumnarIRStore.ClassView, method: ColumnarIRStore.MethodView): String {
+            val declaringType = ElementSignature.ofType(irClass.packageName, irClass.name)
+            return ElementSignature.ofMethod(declaringType, method.name, method.parameters.map { it.type })
+        }
+    }
+}
@@ -1,11 +1,161 @@
 package org.protogalaxy.fractalfathom.cli.analysis.ir
 
+import com.fasterxml.jackson.core.JsonGenerator
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.databind.DeserializationContext
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.SerializerProvider
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize
+import com.fasterxml.jackson.databind.annotation.JsonSerialize
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer
+import com.fasterxml.jackson.databind.ser.std.StdSerializer
+import kotlin.math.abs
+import kotlin.math.roundToInt
+
 /**
  * Represents an embedding vector for a code entity.
  *
- * @property values A list of double values representing the embedding vector.
+ * The values are kept in a primitive array: either one float per dimension ([EmbeddingStorage.FLOAT]) or,
+ * after [quantize], one signed byte per dimension and a per-vector scale ([EmbeddingStorage.INT8]), which
+ * takes a quarter of the memory at the cost of a quantization error of at most `scale / 2` per value.
+ *
+ * Float embeddings are serialized as `{"values": [...]}`, the same shape as before; quantized embeddings as
+ * `{"scale": s, "quantized": <bytes>}`, where the bytes are Base64 in JSON and native binary in Smile and CBOR.
+ *
+ * @property values A read-only view of the (dequantized) values of the embedding vector.
  */
+@JsonSerialize(using = Embedding.Serializer::class)
+@JsonDeserialize(using = Embedding.Deserializer::class)
+class Embedding private constructor(
+    private val floats: FloatArray?,        // 浮点存储
+    private val quantized: ByteArray?,      // int8 量化存储
+    val scale: Float                        // 量化比例，值 = 字节 * scale
+) {
+
+    /**
+     * Creates a float embedding that takes ownership of the given array.
+     */
+    constructor(values: FloatArray) : this(values, null, 0f)
+
+    /**
+     * Creates a float embedding from a list of values, e.g. as returned by a model server.
+     */
+    constructor(values: List<Double>) : this(FloatArray(values.size) { values[it].toFloat() })
+
+    /**
+     * The number of dimensions of the embedding vector.
+     */
+    val dimension: Int
+        get() = floats?.size ?: quantized!!.size
+
+    /**
+     * The storage mode of the values.
+     */
+    val storage: EmbeddingStorage
+        get() = if (quantized != null) EmbeddingStorage.INT8 else EmbeddingStorage.FLOAT
+
+    val values: List<Float>
+        get() = object : AbstractList<Float>() {
+            override val size: Int get() = dimension
+            override fun get(index: Int): Float = this@Embedding[index]
+        }
+
+    /**
+     * Returns the (dequantized) value of a dimension.
+     */
+    operator fun get(index: Int): Float = floats?.get(index) ?: (quantized!![index] * scale)
+
+    /**
+     * Returns the stored byte of a dimension of a quantized embedding.
+     *
+     * @throws IllegalStateException if the embedding is not quantized.
+     */
+    fun quantizedValue(index: Int): Byte = quantized?.get(index) ?: throw IllegalStateException("Embedding is not quantized")
+
+    /**
+     * Returns a copy of the (dequantized) values.
+     */
+    fun toFloatArray(): FloatArray = floats?.copyOf() ?: FloatArray(dimension) { get(it) }
+
+    /**
+     * Returns this embedding stored in the given mode.
+     */
+    fun withStorage(storage: EmbeddingStorage): Embedding {
+        return when (storage) {
+            EmbeddingStorage.FLOAT -> if (floats != null) this else Embedding(toFloatArray())
+            EmbeddingStorage.INT8 -> quantize()
+        }
+    }
+
+    /**
+     * Returns this embedding quantized to one signed byte per dimension.
+     *
+     * The scale maps the largest absolute value to 127, so the quantization is symmetric around zero.
+     */
+    fun quantize(): Embedding {
+        val floats = floats ?: return this
+        var maxAbs = 0f
+        for (value in floats) maxAbs = maxOf(maxAbs, abs(value))
+        if (maxAbs == 0f) return Embedding(null, ByteArray(floats.size), 0f)
+        val scale = maxAbs / 127f
+        val bytes = ByteArray(floats.size) { (floats[it] / scale).roundToInt().coerceIn(-127, 127).toByte() }
+        return Embedding(null, bytes, scale)
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is Embedding) return false
+        return scale == other.scale && floats.contentEquals(other.floats) && quantized.contentEquals(other.quantized)
+    }
+
+    override fun hashCode(): Int {
+        var result = floats.contentHashCode()
+        result = 31 * result + quantized.contentHashCode()
+        result = 31 * result + scale.hashCode()
+        return result
+    }
+
+    override fun toString(): String {
+        return if (quantized != null) "Embedding(quantized=${quantized.contentToString()}, scale=$scale)" else "Embedding(values=${floats.contentToString()})"
+    }
+
+    companion object {
+        /**
+         * Creates a quantized embedding from its stored bytes and scale, taking ownership of the array.
+         */
+        fun ofQuantized(quantized: ByteArray, scale: Float): Embedding = Embedding(null, quantized, scale)
+    }
+
+    /**
+     * Writes the values of a float embedding, or the bytes and scale of a quantized one.
+     */
+    class Serializer : StdSerializer<Embedding>(Embedding::class.java) {
+        override fun serialize(value: Embedding, gen: JsonGenerator, provider: SerializerProvider) {
+            gen.writeStartObject(value)
+            if (value.quantized != null) {
+                gen.writeNumberField("scale", value.scale)
+                gen.writeBinaryField("quantized", value.quantized)
+            } else {
+                gen.writeArrayFieldStart("values")
+                value.floats!!.forEach { gen.writeNumber(it) }
+                gen.writeEndArray()
+            }
+            gen.writeEndObject()
+        }
+    }
 
-data class Embedding(
-    val values: List<Double>
-)
+    /**
+     * Reads an embedding in either storage mode.
+     */
+    class Deserializer : StdDeserializer<Embedding>(Embedding::class.java) {
+        override fun deserialize(p: JsonParser, ctxt: DeserializationContext): Embedding {
+            val node = p.codec.readTree<JsonNode>(p)
+            val quantized = node.get("quantized")
+            if (quantized != null) {
+                return Embedding(null, quantized.binaryValue(), node.path("scale").floatValue())
+            }
+            val values = node.path("values")
+            return Embedding(FloatArray(values.size()) { values[it].floatValue() })
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.protogalaxy.fractalfathom.cli.analysis.ir
+
+/**
+ * Enum representing how the values of an [Embedding] are stored.
+ *
+ * @property option The name of the mode on the command line.
+ */
+enum class EmbeddingStorage(val option: String) {
+    FLOAT("float"),     // One 32-bit float per dimension
+    INT8("int8");       // One signed byte per dimension and a scale per vector
+
+    companion object {
+        /**
+         * Resolves a mode from its command line name, e.g. `int8`.
+         *
+         * @param name The case-insensitive name of the mode.
+         * @return The matching mode.
+         * @throws IllegalArgumentException if no mode has the given name.
+         */
+        fun fromOption(name: String): EmbeddingStorage {
+            return entries.firstOrNull { it.option.equals(name, ignoreCase = true) }
+                ?: throw IllegalArgumentException("Unknown embedding storage '$name', expected one of ${entries.joinToString { it.option }}")
+        }
+    }
+}
@@ -23,7 +23,8 @@ import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticRelat
  * @property methods A list of methods defined in the class.
  * @property relations A list of relationships (e.g., inheritance, implementation) associated with the class.
  * @property sourceCodeLocation The location of the class in the source code.
- * @property complexityMetrics The complexity metrics for the class.
+ * @property complexityMetrics The complexity metrics for the class, aggregated from its methods, or `null` if the
+ *   method bodies were not scanned.
  * @property embedding The embedding vector for the class, optional.
  */
 
@@ -42,6 +43,6 @@ data class IRClassEntity(
     val methods: List<IRMethodEntity>,
     val relations: List<StaticRelationEntity>,
     val sourceCodeLocation: SourceCodeLocation?,
-    val complexityMetrics: ComplexityMetrics,
+    val complexityMetrics: ComplexityMetrics?,
     val embedding: Embedding? = null
 )
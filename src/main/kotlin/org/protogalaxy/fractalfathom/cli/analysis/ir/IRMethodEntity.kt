@@ -21,6 +21,7 @@ import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticParam
  * @property calledMethods A list of methods called within the body of this method.
  * @property lowLevelAST The low-level abstract syntax tree of the method body, optional.
  * @property sourceCodeLocation The location of the method in the source code.
+ * @property complexityMetrics The complexity metrics of the method body, optional.
  * @property embedding The embedding vector for the method, optional.
  */
 data class IRMethodEntity(
@@ -34,5 +35,6 @@ data class IRMethodEntity(
     val calledMethods: List<StaticCallEntity>,
     val lowLevelAST: LowLevelAST?,
     val sourceCodeLocation: SourceCodeLocation?,
+    val complexityMetrics: ComplexityMetrics? = null,
     val embedding: Embedding? = null
 )
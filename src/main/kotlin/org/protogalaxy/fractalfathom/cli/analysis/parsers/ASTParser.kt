@@ -3,6 +3,7 @@ package org.protogalaxy.fractalfathom.cli.analysis.parsers
 import org.protogalaxy.fractalfathom.cli.analysis.SourceCodeLocation
 import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.LowLevelAST
 import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticStatementEntity
+import spoon.reflect.code.CtBlock
 import spoon.reflect.code.CtStatement
 import spoon.reflect.declaration.CtExecutable
 
@@ -12,8 +13,35 @@ import spoon.reflect.declaration.CtExecutable
  *
  * This class processes Spoon's `CtExecutable` and its statements to generate
  * a custom low-level AST representation, suitable for further analysis.
+ *
+ * Nested blocks are lowered with an explicit stack of frames instead of recursion, so deeply nested bodies
+ * cannot overflow the call stack, and the lowered statements of a body are limited by a [StatementBudget].
+ * The parser tracks the budget of the body being lowered and is therefore confined to a single thread.
+ *
+ * @param sourceBuffers The buffers used to slice statement text from the original source files. If `null`,
+ * statements are pretty-printed by Spoon instead.
+ * @param budget The limits on the statements lowered from a single body.
  */
-class ASTParser {
+class ASTParser(
+    private val sourceBuffers: SourceBuffers? = null,
+    private val budget: StatementBudget = StatementBudget()
+) {
+
+    private var statementCount = 0
+
+    /**
+     * Whether statements of the body being lowered were left out because of the budget.
+     */
+    internal var truncated = false
+        private set
+
+    /**
+     * A statement whose sub-statements are lowered, i.e. a method body or a block statement nested in it.
+     */
+    internal class BlockFrame(val statement: CtStatement?, val statements: List<CtStatement>) {
+        val lowered = ArrayList<StaticStatementEntity>(statements.size)
+        var next = 0
+    }
 
     /**
      * Parses the body of a given `CtExecutable` (e.g., a method or constructor) into a low-level AST.
@@ -23,28 +51,72 @@ class ASTParser {
      */
     fun parseAST(ctExecutable: CtExecutable<*>): LowLevelAST? {
         val body = ctExecutable.body ?: return null
-        val statements = body.statements.map { parseStatement(it) }
-        return LowLevelAST(statements)
+        startBody()
+        val frames = ArrayList<BlockFrame>()
+        frames.add(BlockFrame(null, body.statements))
+        while (true) {
+            val frame = frames.last()
+            if (frame.next < frame.statements.size) {
+                val statement = frame.statements[frame.next++]
+                if (!admit()) continue
+                if (statement is CtBlock<*>) {
+                    frames.add(BlockFrame(statement, subStatementsOf(statement, frames.size)))
+                } else {
+                    frame.lowered.add(createStatement(statement, null))
+                }
+            } else {
+                frames.removeLast()
+                val statement = frame.statement ?: return LowLevelAST(frame.lowered, truncated)
+                frames.last().lowered.add(createStatement(statement, frame.lowered))
+            }
+        }
+    }
+
+    /**
+     * Resets the budget before the statements of a new body are lowered.
+     */
+    internal fun startBody() {
+        statementCount = 0
+        truncated = false
+    }
+
+    /**
+     * Accounts for the next statement of the body, returning `false` if it exceeds the statement budget.
+     */
+    internal fun admit(): Boolean {
+        if (statementCount >= budget.maxStatements) {
+            truncated = true
+            return false
+        }
+        statementCount++
+        return true
     }
 
     /**
-     * Parses a single `CtStatement` into a custom `StaticStatementEntity`.
+     * Returns the statements to lower below a statement: those of a block, unless the block is nested too
+     * deeply, and none for other statements.
      *
-     * This method handles different types of statements and recursively processes
-     * block statements (e.g., `{ ... }`).
+     * @param ctStatement The statement being lowered.
+     * @param depth The depth of the statement; the top-level statements of the body are at depth 1.
+     */
+    internal fun subStatementsOf(ctStatement: CtStatement, depth: Int): List<CtStatement> {
+        if (ctStatement !is CtBlock<*>) return emptyList()
+        if (depth < budget.maxDepth) return ctStatement.statements
+        if (ctStatement.statements.isNotEmpty()) truncated = true
+        return emptyList()
+    }
+
+    /**
+     * Creates the `StaticStatementEntity` of a single statement from its already parsed sub-statements.
      *
-     * @param ctStatement The Spoon `CtStatement` to parse.
+     * @param ctStatement The Spoon `CtStatement` to convert.
+     * @param subStatements The parsed statements of a block statement, or `null` for other statements.
      * @return A `StaticStatementEntity` representing the statement.
      */
-    private fun parseStatement(ctStatement: CtStatement): StaticStatementEntity {
+    internal fun createStatement(ctStatement: CtStatement, subStatements: List<StaticStatementEntity>?): StaticStatementEntity {
         val type = ctStatement.javaClass.simpleName
-        val expression = ctStatement.toString()
-
-        val subStatements = if (ctStatement is spoon.reflect.code.CtBlock<*>) {
-            ctStatement.statements.map { parseStatement(it) }
-        } else {
-            null
-        }
+        // Implicit statements have no source position and are printed instead
+        val expressionText = sourceBuffers?.slice(ctStatement.position) ?: ctStatement.toString()
 
         val sourceCodeLocation = ctStatement.position?.let {
             SourceCodeLocation(
@@ -58,9 +130,9 @@ class ASTParser {
 
         return StaticStatementEntity(
             type = type,
-            expression = expression,
+            expressionText = expressionText,
             subStatements = subStatements,
             sourceCodeLocation = sourceCodeLocation
         )
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package org.protogalaxy.fractalfathom.cli.analysis.parsers
 
+import org.protogalaxy.fractalfathom.cli.analysis.ElementSignature
 import org.protogalaxy.fractalfathom.cli.analysis.SourceCodeLocation
 import org.protogalaxy.fractalfathom.cli.analysis.annotation.AnnotationEntity
 import org.protogalaxy.fractalfathom.cli.analysis.annotation.AnnotationPhase
@@ -19,9 +20,14 @@ class AnnotationParser {
      * Parses a Spoon `CtAnnotation` object into a custom `AnnotationEntity`.
      *
      * @param ctAnnotation The Spoon `CtAnnotation` object to be parsed.
+     * @param targetElement The signature of the element carrying the annotation, which callers parsing
+     * several annotations of the same element can compute once and share.
      * @return An `AnnotationEntity` object containing the parsed data.
      */
-    fun parseAnnotation(ctAnnotation: CtAnnotation<*>): AnnotationEntity {
+    fun parseAnnotation(
+        ctAnnotation: CtAnnotation<*>,
+        targetElement: String = ElementSignature.of(ctAnnotation.parent)
+    ): AnnotationEntity {
         // Extract the fully qualified name of the annotation
         val name = ctAnnotation.annotationType.qualifiedName
 
@@ -34,7 +40,6 @@ class AnnotationParser {
             }
         }
 
-        val targetElement = ctAnnotation.parent?.toString() ?: "Unknown"
         // Map Spoon's annotated element type to custom `AnnotationTargetType`
         val targetType = when (ctAnnotation.annotatedElementType) {
             CtAnnotatedElementType.TYPE -> AnnotationTargetType.CLASS
@@ -2,11 +2,17 @@ package org.protogalaxy.fractalfathom.cli.analysis.parsers
 
 import org.protogalaxy.fractalfathom.cli.analysis.annotation.AnnotationEntity
 import org.protogalaxy.fractalfathom.cli.analysis.annotation.FeatureEntity
+import org.protogalaxy.fractalfathom.cli.analysis.annotation.FeatureRegistry
 import org.protogalaxy.fractalfathom.cli.analysis.annotation.FeatureType
 import org.protogalaxy.fractalfathom.cli.analysis.annotation.MappingEntity
 import org.protogalaxy.fractalfathom.cli.analysis.annotation.MappingType
 
-class AnnotationProcessor {
+/**
+ * Classifies the annotations of a code element into features, mappings, and regular annotations.
+ *
+ * @param registry The registry providing the shared feature and mapping entities.
+ */
+class AnnotationProcessor(private val registry: FeatureRegistry = FeatureRegistry.shared) {
 
     /**
      * Processes a list of annotations and classifies them into features, mappings, and regular annotations.
@@ -21,18 +27,18 @@ class AnnotationProcessor {
 
         annotations.forEach { annotation ->
             when (annotation.name) {
-                "org.protogalaxy.fractalfathom.FractalFathomFeature" -> {
+                FEATURE_ANNOTATION -> {
                     features.add(
-                        FeatureEntity.create(
+                        registry.feature(
                             name = annotation.attributes["name"] as? String ?: "Unnamed Feature",
                             description = annotation.attributes["description"] as? String,
                             type = FeatureType.valueOf(annotation.attributes["type"] as? String ?: "FUNCTIONAL")
                         )
                     )
                 }
-                "org.protogalaxy.fractalfathom.FractalFathomMapping" -> {
+                MAPPING_ANNOTATION -> {
                     mappings.add(
-                        MappingEntity.create(
+                        registry.mapping(
                             toConcept = annotation.attributes["toConcept"] as? String ?: "Unnamed Mapping",
                             type = MappingType.valueOf(annotation.attributes["type"] as? String ?: "CONCEPT")
                         )
@@ -46,4 +52,16 @@ class AnnotationProcessor {
 
         return Triple(features, mappings, regularAnnotations)
     }
-}
\ No newline at end of file
+
+    companion object {
+        /**
+         * The qualified name of the annotation declaring a feature.
+         */
+        const val FEATURE_ANNOTATION = "org.protogalaxy.fractalfathom.FractalFathomFeature"
+
+        /**
+         * The qualified name of the annotation declaring a mapping.
+         */
+        const val MAPPING_ANNOTATION = "org.protogalaxy.fractalfathom.FractalFathomMapping"
+    }
+}
@@ -0,0 +1,94 @@
+package org.protogalaxy.fractalfathom.cli.analysis.parsers
+
+import org.protogalaxy.fractalfathom.cli.analysis.SourceCodeLocation
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticCallEntity
+import spoon.reflect.code.CtAbstractInvocation
+import spoon.reflect.code.CtConstructorCall
+import spoon.reflect.code.CtInvocation
+import spoon.reflect.code.CtNewClass
+import spoon.reflect.declaration.CtExecutable
+import spoon.reflect.reference.CtExecutableReference
+import spoon.reflect.visitor.CtScanner
+
+/**
+ * A parser for extracting the method and constructor calls made in the body of a Java executable.
+ *
+ * The body is scanned once; calls nested in arguments, lambdas and anonymous classes are attributed to
+ * the scanned executable. Declaring types and signatures are taken from the called declaration when it
+ * is part of the model, and from the executable reference otherwise, so calls into libraries are still
+ * resolved as far as Spoon can infer them without a classpath.
+ *
+ * @param sourceBuffers The buffers used to slice argument text from the original source files, or `null`
+ * to pretty-print arguments.
+ */
+class CallParser(private val sourceBuffers: SourceBuffers? = null) {
+
+    /**
+     * Parses the calls made in the body of a `CtExecutable`, in source order.
+     *
+     * @param ctExecutable The Spoon `CtExecutable` object to scan.
+     * @return A list of `StaticCallEntity` objects, empty if the executable has no body.
+     */
+    fun parseCalls(ctExecutable: CtExecutable<*>): List<StaticCallEntity> {
+        val body = ctExecutable.body ?: return emptyList()
+        val calls = mutableListOf<StaticCallEntity>()
+
+        body.accept(object : CtScanner() {
+            override fun <T> visitCtInvocation(invocation: CtInvocation<T>) {
+                calls.add(parseCall(invocation))
+                super.visitCtInvocation(invocation)
+            }
+
+            override fun <T> visitCtConstructorCall(constructorCall: CtConstructorCall<T>) {
+                calls.add(parseCall(constructorCall))
+                super.visitCtConstructorCall(constructorCall)
+            }
+
+            override fun <T> visitCtNewClass(newClass: CtNewClass<T>) {
+                calls.add(parseCall(newClass))
+                super.visitCtNewClass(newClass)
+            }
+        })
+        return calls
+    }
+
+    /**
+     * Converts a single invocation or constructor call into a `StaticCallEntity`.
+     */
+    internal fun parseCall(invocation: CtAbstractInvocation<*>): StaticCallEntity {
+        val executable = invocation.executable
+        val arguments = invocation.arguments.map { argument ->
+            sourceBuffers?.slice(argument.position)?.toString() ?: argument.toString()
+        }
+
+        val sourceCodeLocation = invocation.position?.let {
+            SourceCodeLocation(
+                filePath = it.file?.path ?: "",
+                startLine = it.line,
+                endLine = it.endLine,
+                startColumn = it.column,
+                endColumn = it.endColumn
+            )
+        } ?: SourceCodeLocation("", 0, 0, 0, 0)
+
+        return StaticCallEntity(
+            methodName = executable?.simpleName ?: "",
+            arguments = arguments,
+            sourceCodeLocation = sourceCodeLocation,
+            declaringType = executable?.declaringType?.qualifiedName,
+            signature = executable?.let { signatureOf(it) }
+        )
+    }
+
+    // Prefer the parameter types of the declaration, which are written the same way as in the IR of the callee
+    private fun signatureOf(executable: CtExecutableReference<*>): String? {
+        return try {
+            val parameterTypes = executable.declaration?.parameters?.map { it.type.qualifiedName }
+                ?: executable.parameters.map { it?.qualifiedName ?: "?" }
+            "${executable.simpleName}(${parameterTypes.joinToString(",")})"
+        } catch (e: Exception) {
+            // Unresolvable references in no-classpath mode
+            null
+        }
+    }
+}
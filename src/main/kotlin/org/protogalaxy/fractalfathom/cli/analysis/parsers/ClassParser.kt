@@ -9,8 +9,11 @@ import spoon.reflect.declaration.CtClass
  * A parser for converting Spoon's `CtClass` representation of a Java class into
  * a custom `IRClassEntity` representation, including annotations, fields, methods,
  * and relationships.
+ *
+ * @param sourceBuffers The buffers used to slice statement text from the original source files, or `null`
+ * to pretty-print statements.
  */
-class ClassParser {
+class ClassParser(private val sourceBuffers: SourceBuffers? = null) {
 
     private val annotationProcessor = AnnotationProcessor()
 
@@ -38,7 +41,7 @@ class ClassParser {
             fieldParser.parseField(it)
         }
 
-        val methodParser = MethodParser()
+        val methodParser = MethodParser(sourceBuffers)
         val methods = ctClass.methods.map {
             methodParser.parseMethod(it)
         }
@@ -60,9 +63,8 @@ class ClassParser {
             endColumn = ctClass.position?.endColumn ?: 0
         )
 
-        // Calculate complexity metrics for the class
-        val complexityMetricsCalculator = ComplexityMetricsCalculator()
-        val complexityMetrics = complexityMetricsCalculator.calculateComplexity(ctClass)
+        // Aggregate the complexity metrics of the methods for the class
+        val complexityMetrics = ComplexityMetricsCalculator.aggregate(methods.mapNotNull { it.complexityMetrics })
 
         return IRClassEntity(
             name = name,
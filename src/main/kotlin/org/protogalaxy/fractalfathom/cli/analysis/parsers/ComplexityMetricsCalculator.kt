@@ -1,28 +1,162 @@
 package org.protogalaxy.fractalfathom.cli.analysis.parsers
 
 import org.protogalaxy.fractalfathom.cli.analysis.ir.ComplexityMetrics
+import spoon.reflect.code.BinaryOperatorKind
+import spoon.reflect.code.CtBinaryOperator
+import spoon.reflect.code.CtBlock
+import spoon.reflect.code.CtCase
+import spoon.reflect.code.CtCatch
+import spoon.reflect.code.CtConditional
+import spoon.reflect.code.CtIf
+import spoon.reflect.code.CtLoop
+import spoon.reflect.code.CtStatement
+import spoon.reflect.code.CtSwitch
+import spoon.reflect.code.CtSwitchExpression
+import spoon.reflect.code.CtSynchronized
+import spoon.reflect.code.CtTry
 import spoon.reflect.declaration.CtClass
+import spoon.reflect.declaration.CtElement
+import spoon.reflect.declaration.CtExecutable
+import spoon.reflect.visitor.CtScanner
 
+/**
+ * Calculates the complexity metrics of methods and classes.
+ *
+ * The metrics of a method are accumulated from the enter and exit events of a traversal of its body, so
+ * they can be computed by the traversal that builds the IR (see [IRBuilder]) instead of a separate pass:
+ * call [reset] before the body is scanned, forward every [enter] and [exit] event, and read [result].
+ * Lambdas, local and anonymous classes count towards the enclosing method.
+ *
+ * - The cyclomatic complexity is 1 plus the number of decision points: `if`, loops, `case` labels,
+ *   `catch` clauses, conditional expressions and the `&&` and `||` operators.
+ * - The nesting depth is the maximum number of nested control structures (`if`, loops, `switch`, `try`
+ *   and `synchronized`); an `else if` stays on the level of its `if`.
+ * - The branch count is the number of alternatives of conditional constructs: the then and else branch
+ *   of an `if`, every `case` of a `switch` and both alternatives of a conditional expression.
+ *
+ * The calculator keeps mutable state and is therefore confined to a single thread.
+ */
 class ComplexityMetricsCalculator {
 
+    private var decisionPoints = 0
+    private var branchCount = 0
+    private var depth = 0
+    private var maxDepth = 0
+
     /**
-     * 计算给定类的复杂度指标。
+     * Calculates the complexity metrics of a class.
      *
-     * @param ctClass Spoon 中的 CtClass 对象。
-     * @return 计算得到的 ComplexityMetrics。
+     * @param ctClass The Spoon CtClass object.
+     * @return The calculated ComplexityMetrics, aggregated from the metrics of its methods.
      */
     fun calculateComplexity(ctClass: CtClass<*>): ComplexityMetrics {
-        // TODO: 实现实际的复杂度计算逻辑
-        val cyclomaticComplexity = 1 // 默认值
-        val nestingDepth = 0
-        val branchCount = 0
+        return aggregate(ctClass.methods.map { calculateComplexity(it) })
+    }
+
+    /**
+     * Calculates the complexity metrics of a method or constructor.
+     *
+     * @param ctExecutable The Spoon CtExecutable object.
+     * @return The calculated ComplexityMetrics.
+     */
+    fun calculateComplexity(ctExecutable: CtExecutable<*>): ComplexityMetrics {
+        reset()
+        ctExecutable.body?.accept(object : CtScanner() {
+            override fun enter(e: CtElement) = this@ComplexityMetricsCalculator.enter(e)
+            override fun exit(e: CtElement) = this@ComplexityMetricsCalculator.exit(e)
+        })
+        return result()
+    }
+
+    /**
+     * Starts the calculation for a new method body.
+     */
+    fun reset() {
+        decisionPoints = 0
+        branchCount = 0
+        depth = 0
+        maxDepth = 0
+    }
+
+    /**
+     * Accounts for an element of the method body when the traversal enters it.
+     */
+    fun enter(element: CtElement) {
+        when (element) {
+            is CtIf -> {
+                decisionPoints++
+                branchCount += if (element.getElseStatement<CtStatement>() != null) 2 else 1
+            }
+            is CtLoop, is CtCatch -> decisionPoints++
+            is CtCase<*> -> {
+                decisionPoints += element.caseExpressions.size
+                branchCount++
+            }
+            is CtConditional<*> -> {
+                decisionPoints++
+                branchCount += 2
+            }
+            is CtBinaryOperator<*> -> {
+                if (element.kind == BinaryOperatorKind.AND || element.kind == BinaryOperatorKind.OR) decisionPoints++
+            }
+        }
+        if (isNesting(element)) {
+            depth++
+            if (depth > maxDepth) maxDepth = depth
+        }
+    }
 
-        // 在此可以遍历方法和语句，计算实际的复杂度指标
+    /**
+     * Accounts for an element of the method body when the traversal leaves it.
+     */
+    fun exit(element: CtElement) {
+        if (isNesting(element)) depth--
+    }
 
+    /**
+     * Returns the metrics of the method body scanned since the last [reset].
+     */
+    fun result(): ComplexityMetrics {
         return ComplexityMetrics(
-            cyclomaticComplexity = cyclomaticComplexity,
-            nestingDepth = nestingDepth,
+            cyclomaticComplexity = 1 + decisionPoints,
+            nestingDepth = maxDepth,
             branchCount = branchCount
         )
     }
-}
\ No newline at end of file
+
+    private fun isNesting(element: CtElement): Boolean {
+        return when (element) {
+            is CtIf -> !isElseIf(element)
+            is CtLoop, is CtSwitch<*>, is CtSwitchExpression<*, *>, is CtTry, is CtSynchronized -> true
+            else -> false
+        }
+    }
+
+    // An `if` that is the only statement of the else branch of another `if`
+    private fun isElseIf(ctIf: CtIf): Boolean {
+        val parent = ctIf.parent
+        if (parent is CtIf) return parent.getElseStatement<CtStatement>() === ctIf
+        if (parent is CtBlock<*> && parent.isImplicit && parent.statements.size == 1) {
+            val grandParent = parent.parent
+            return grandParent is CtIf && grandParent.getElseStatement<CtStatement>() === parent
+        }
+        return false
+    }
+
+    companion object {
+        /**
+         * Aggregates the metrics of the methods of a class: the cyclomatic complexities and branch counts are
+         * summed up (weighted methods per class), and the nesting depth is the maximum over all methods.
+         *
+         * @param methodMetrics The metrics of the methods of the class.
+         * @return The metrics of the class, all zero for a class without methods.
+         */
+        fun aggregate(methodMetrics: List<ComplexityMetrics>): ComplexityMetrics {
+            return ComplexityMetrics(
+                cyclomaticComplexity = methodMetrics.sumOf { it.cyclomaticComplexity },
+                nestingDepth = methodMetrics.maxOfOrNull { it.nestingDepth } ?: 0,
+                branchCount = methodMetrics.sumOf { it.branchCount }
+            )
+        }
+    }
+}
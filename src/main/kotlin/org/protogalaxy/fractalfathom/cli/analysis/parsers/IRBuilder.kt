@@ -0,0 +1,310 @@
+package org.protogalaxy.fractalfathom.cli.analysis.parsers
+
+import org.protogalaxy.fractalfathom.cli.analysis.DetailLevel
+import org.protogalaxy.fractalfathom.cli.analysis.ElementSignature
+import org.protogalaxy.fractalfathom.cli.analysis.SourceCodeLocation
+import org.protogalaxy.fractalfathom.cli.analysis.annotation.AnnotationEntity
+import org.protogalaxy.fractalfathom.cli.analysis.annotation.FeatureEntity
+import org.protogalaxy.fractalfathom.cli.analysis.annotation.MappingEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRFieldEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRMethodEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.LowLevelAST
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticCallEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticRelationEntity
+import spoon.reflect.code.CtBlock
+import spoon.reflect.code.CtConstructorCall
+import spoon.reflect.code.CtInvocation
+import spoon.reflect.code.CtNewClass
+import spoon.reflect.code.CtStatement
+import spoon.reflect.declaration.CtAnnotation
+import spoon.reflect.declaration.CtClass
+import spoon.reflect.declaration.CtConstructor
+import spoon.reflect.declaration.CtElement
+import spoon.reflect.declaration.CtEnum
+import spoon.reflect.declaration.CtEnumValue
+import spoon.reflect.declaration.CtField
+import spoon.reflect.declaration.CtInterface
+import spoon.reflect.declaration.CtMethod
+import spoon.reflect.declaration.CtRecord
+import spoon.reflect.visitor.CtScanner
+
+/**
+ * Builds the `IRClassEntity` of a class in a single traversal of its Spoon tree.
+ *
+ * [ClassParser], [FieldParser], [MethodParser], [ASTParser] and [CallParser] each walk their own part of
+ * the tree and are created anew for every class or method. This builder produces the same IR in one
+ * `CtScanner` walk: the members of the class are visited in order, and while a method body is scanned,
+ * its statements are lowered, its calls are recorded and its complexity metrics are accumulated from the
+ * same enter and exit events.
+ *
+ * The builder keeps reusable state between classes and is therefore confined to a single thread; one
+ * instance is meant to be used by a single work unit of the analysis.
+ *
+ * Below [DetailLevel.FULL], the builder leaves out the parts of the IR the level does not cover: method
+ * bodies are not lowered, or not scanned at all, and positions and regular annotations are skipped.
+ *
+ * @param sourceBuffers The buffers used to slice statement and argument text from the original source
+ * files, or `null` to pretty-print them.
+ * @param detailLevel How much detail is extracted; [DetailLevel.FULL] builds the same IR as the parsers.
+ * @param statementBudget The limits on the low-level AST of a single method.
+ */
+class IRBuilder(
+    sourceBuffers: SourceBuffers? = null,
+    private val detailLevel: DetailLevel = DetailLevel.FULL,
+    statementBudget: StatementBudget = StatementBudget()
+) : CtScanner() {
+
+    private val annotationParser = AnnotationParser()
+    private val annotationProcessor = AnnotationProcessor()
+    private val parameterParser = ParameterParser()
+    private val astParser = ASTParser(sourceBuffers, statementBudget)
+    private val callParser = CallParser(sourceBuffers)
+    private val complexityMetricsCalculator = ComplexityMetricsCalculator()
+
+    // State of the class being built
+    private var rootClass: CtClass<*>? = null
+    private val fields = ArrayList<IRFieldEntity>()
+    private val methods = ArrayList<Pair<String, IRMethodEntity>>()
+
+    // State of the method whose body is being scanned
+    private var currentMethod: CtMethod<*>? = null
+    private val calls = ArrayList<StaticCallEntity>()
+    private val blockFrames = ArrayList<ASTParser.BlockFrame>()
+
+    /**
+     * Builds a `CtClass` object into a custom `IRClassEntity`.
+     *
+     * @param ctClass The Spoon `CtClass` object representing a Java class or interface.
+     * @param filePath The file path of the Java source file containing this class.
+     * @return An `IRClassEntity` equal to the one created by [ClassParser.parseClass].
+     */
+    fun buildClass(ctClass: CtClass<*>, filePath: String): IRClassEntity {
+        rootClass = ctClass
+        fields.clear()
+        methods.clear()
+        try {
+            // Visit the members directly, the annotations and type references of the class need no traversal.
+            // Enum values come first, like in `CtEnum.getFields()`.
+            if (ctClass is CtEnum<*>) ctClass.enumValues.forEach { scan(it) }
+            ctClass.typeMembers.forEach { scan(it) }
+            return createClass(ctClass, filePath)
+        } finally {
+            rootClass = null
+        }
+    }
+
+    private fun createClass(ctClass: CtClass<*>, filePath: String): IRClassEntity {
+        val superClass = ctClass.superclass?.qualifiedName
+        val interfaces = ctClass.superInterfaces.map { it.qualifiedName }
+        val (features, mappings, annotations) = parseAnnotations(ctClass.annotations)
+
+        // Collect class relationships (e.g., inheritance, implementation)
+        val relations = ArrayList<StaticRelationEntity>(interfaces.size + 1)
+        superClass?.let { relations.add(StaticRelationEntity("extends", it)) }
+        interfaces.forEach { relations.add(StaticRelationEntity("implements", it)) }
+
+        // Methods are ordered by signature, like `CtType.getMethods()`
+        methods.sortBy { it.first }
+
+        return IRClassEntity(
+            name = ctClass.simpleName,
+            type = if (ctClass.isInterface) "Interface" else "Class",
+            packageName = ctClass.`package`?.qualifiedName ?: "",
+            filePath = filePath,
+            modifiers = ctClass.modifiers.joinToString(" "),
+            superClass = superClass,
+            interfaces = interfaces,
+            annotations = annotations,
+            features = features,
+            mappings = mappings,
+            fields = fields.toList(),
+            methods = methods.map { it.second },
+            relations = relations,
+            sourceCodeLocation = locationOf(ctClass, filePath, 0),
+            complexityMetrics = if (detailLevel.scansBodies) {
+                ComplexityMetricsCalculator.aggregate(methods.mapNotNull { it.second.complexityMetrics })
+            } else {
+                null
+            }
+        )
+    }
+
+    override fun <T> visitCtClass(ctClass: CtClass<T>) {
+        // Member classes are separate entities; local and anonymous classes are part of the scanned method
+        if (currentMethod != null) super.visitCtClass(ctClass)
+    }
+
+    override fun <T : Enum<*>> visitCtEnum(ctEnum: CtEnum<T>) {
+        if (currentMethod != null) super.visitCtEnum(ctEnum)
+    }
+
+    override fun <T> visitCtInterface(intrface: CtInterface<T>) {
+        if (currentMethod != null) super.visitCtInterface(intrface)
+    }
+
+    override fun visitCtRecord(recordType: CtRecord) {
+        if (currentMethod != null) super.visitCtRecord(recordType)
+    }
+
+    override fun <T> visitCtField(f: CtField<T>) {
+        if (currentMethod != null) {
+            super.visitCtField(f)
+        } else if (f.parent === rootClass) {
+            addField(f)
+        }
+    }
+
+    override fun <T> visitCtEnumValue(enumValue: CtEnumValue<T>) {
+        if (currentMethod != null) {
+            super.visitCtEnumValue(enumValue)
+        } else if (enumValue.parent === rootClass) {
+            addField(enumValue)
+        }
+    }
+
+    private fun addField(f: CtField<*>) {
+        val (features, mappings, annotations) = parseAnnotations(f.annotations)
+        fields.add(
+            IRFieldEntity(
+                name = f.simpleName,
+                type = f.type.qualifiedName,
+                modifiers = f.modifiers.joinToString(" "),
+                annotations = annotations,
+                features = features,
+                mappings = mappings,
+                sourceCodeLocation = memberLocationOf(f)
+            )
+        )
+    }
+
+    override fun <T> visitCtConstructor(c: CtConstructor<T>) {
+        // Constructors are not part of the IR, but those of local and anonymous classes may contain calls
+        if (currentMethod != null) super.visitCtConstructor(c)
+    }
+
+    override fun <T> visitCtMethod(m: CtMethod<T>) {
+        if (currentMethod != null) {
+            super.visitCtMethod(m)
+        } else if (m.parent === rootClass) {
+            methods.add(m.signature to buildMethod(m))
+        }
+    }
+
+    private fun buildMethod(ctMethod: CtMethod<*>): IRMethodEntity {
+        val parameters = ctMethod.parameters.map { parameterParser.parseParameter(it, detailLevel == DetailLevel.FULL) }
+        val (features, mappings, annotations) = parseAnnotations(ctMethod.annotations)
+
+        val body = if (detailLevel.scansBodies) ctMethod.body else null
+        var lowLevelAST: LowLevelAST? = null
+        currentMethod = ctMethod
+        calls.clear()
+        complexityMetricsCalculator.reset()
+        try {
+            if (body != null && detailLevel.lowersStatements) {
+                astParser.startBody()
+                blockFrames.add(ASTParser.BlockFrame(null, body.statements))
+                scan(body)
+                lowLevelAST = LowLevelAST(blockFrames.removeLast().lowered, astParser.truncated)
+            } else if (body != null) {
+                // Without frames, the scan only records calls and complexity metrics
+                scan(body)
+            }
+        } finally {
+            currentMethod = null
+            blockFrames.clear()
+        }
+
+        return IRMethodEntity(
+            name = ctMethod.simpleName,
+            returnType = ctMethod.type.qualifiedName,
+            parameters = parameters,
+            modifiers = ctMethod.modifiers.joinToString(" "),
+            annotations = annotations,
+            features = features,
+            mappings = mappings,
+            calledMethods = calls.toList(),
+            lowLevelAST = lowLevelAST,
+            sourceCodeLocation = memberLocationOf(ctMethod),
+            complexityMetrics = if (detailLevel.scansBodies) complexityMetricsCalculator.result() else null
+        )
+    }
+
+    override fun enter(e: CtElement) {
+        if (currentMethod == null) return
+        complexityMetricsCalculator.enter(e)
+
+        // Statements directly inside a lowered block open a frame; only blocks collect sub-statements.
+        // Statements beyond the budget open no frame, so nothing below them is lowered either.
+        val frame = blockFrames.lastOrNull() ?: return
+        if (frame.next < frame.statements.size && frame.statements[frame.next] === e) {
+            frame.next++
+            val statement = e as CtStatement
+            if (astParser.admit()) blockFrames.add(ASTParser.BlockFrame(statement, astParser.subStatementsOf(statement, blockFrames.size)))
+        }
+    }
+
+    override fun exit(e: CtElement) {
+        if (currentMethod == null) return
+        complexityMetricsCalculator.exit(e)
+
+        val frame = blockFrames.lastOrNull() ?: return
+        if (frame.statement === e) {
+            blockFrames.removeLast()
+            val subStatements = if (e is CtBlock<*>) frame.lowered.toList() else null
+            blockFrames.last().lowered.add(astParser.createStatement(frame.statement, subStatements))
+        }
+    }
+
+    override fun <T> visitCtInvocation(invocation: CtInvocation<T>) {
+        if (currentMethod != null) calls.add(callParser.parseCall(invocation))
+        super.visitCtInvocation(invocation)
+    }
+
+    override fun <T> visitCtConstructorCall(ctConstructorCall: CtConstructorCall<T>) {
+        if (currentMethod != null) calls.add(callParser.parseCall(ctConstructorCall))
+        super.visitCtConstructorCall(ctConstructorCall)
+    }
+
+    override fun <T> visitCtNewClass(newClass: CtNewClass<T>) {
+        if (currentMethod != null) calls.add(callParser.parseCall(newClass))
+        super.visitCtNewClass(newClass)
+    }
+
+    // Separate annotations into FeatureEntity, MappingEntity, and others; the annotated element's signature is computed once
+    private fun parseAnnotations(
+        ctAnnotations: List<CtAnnotation<*>>
+    ): Triple<List<FeatureEntity>, List<MappingEntity>, List<AnnotationEntity>> {
+        val parsedAnnotations = if (detailLevel.keepsRegularAnnotations) ctAnnotations else ctAnnotations.filter { isFractalFathomAnnotation(it) }
+        if (parsedAnnotations.isEmpty()) return NO_ANNOTATIONS
+        val targetElement = ElementSignature.of(parsedAnnotations.first().parent)
+        return annotationProcessor.processAnnotations(parsedAnnotations.map { annotationParser.parseAnnotation(it, targetElement) })
+    }
+
+    // Compares the simple name first, which does not need to build the qualified name
+    private fun isFractalFathomAnnotation(ctAnnotation: CtAnnotation<*>): Boolean {
+        val annotationType = ctAnnotation.annotationType
+        return annotationType.simpleName.startsWith("FractalFathom") &&
+                annotationType.qualifiedName.let { it == AnnotationProcessor.FEATURE_ANNOTATION || it == AnnotationProcessor.MAPPING_ANNOTATION }
+    }
+
+    private fun memberLocationOf(element: CtElement): SourceCodeLocation? {
+        if (!detailLevel.keepsMemberPositions) return null
+        return locationOf(element, element.position?.file?.path ?: "", 0)
+    }
+
+    private fun locationOf(element: CtElement, filePath: String, default: Int): SourceCodeLocation {
+        val position = element.position
+        return SourceCodeLocation(
+            filePath = filePath,
+            startLine = position?.line ?: default,
+            endLine = position?.endLine ?: default,
+            startColumn = position?.column ?: default,
+            endColumn = position?.endColumn ?: default
+        )
+    }
+
+    companion object {
+        private val NO_ANNOTATIONS = Triple(emptyList<FeatureEntity>(), emptyList<MappingEntity>(), emptyList<AnnotationEntity>())
+    }
+}
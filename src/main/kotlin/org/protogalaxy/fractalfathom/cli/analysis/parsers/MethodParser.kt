@@ -7,8 +7,11 @@ import spoon.reflect.declaration.CtMethod
 /**
  * A parser for converting Spoon's `CtMethod` representation of a Java method
  * into a custom `IRMethodEntity` representation.
+ *
+ * @param sourceBuffers The buffers used to slice statement text from the original source files, or `null`
+ * to pretty-print statements.
  */
-class MethodParser {
+class MethodParser(private val sourceBuffers: SourceBuffers? = null) {
 
     private val annotationProcessor = AnnotationProcessor()
 
@@ -34,9 +37,15 @@ class MethodParser {
         val parsedAnnotations = ctMethod.annotations.map { annotationParser.parseAnnotation(it) }
         val (features, mappings, annotations) = annotationProcessor.processAnnotations(parsedAnnotations)
 
-        val astParser = ASTParser()
+        val astParser = ASTParser(sourceBuffers)
         val lowLevelAST = astParser.parseAST(ctMethod)
 
+        val callParser = CallParser(sourceBuffers)
+        val calledMethods = callParser.parseCalls(ctMethod)
+
+        val complexityMetricsCalculator = ComplexityMetricsCalculator()
+        val complexityMetrics = complexityMetricsCalculator.calculateComplexity(ctMethod)
+
         val sourceCodeLocation = SourceCodeLocation(
             filePath = ctMethod.position?.file?.path ?: "",
             startLine = ctMethod.position?.line ?: 0,
@@ -53,9 +62,10 @@ class MethodParser {
             annotations = annotations,
             features = features,
             mappings = mappings,
-            calledMethods = emptyList(),
+            calledMethods = calledMethods,
             lowLevelAST = lowLevelAST,
-            sourceCodeLocation = sourceCodeLocation
+            sourceCodeLocation = sourceCodeLocation,
+            complexityMetrics = complexityMetrics
         )
     }
 }
\ No newline at end of file
@@ -15,13 +15,14 @@ class ParameterParser {
      * Parses a Spoon `CtParameter` object into a custom `StaticParameterEntity`.
      *
      * @param ctParameter The Spoon `CtParameter` object representing a method parameter.
+     * @param withLocation Whether the source code location of the parameter is extracted.
      * @return A `StaticParameterEntity` containing the parameter's name, type, and source code location.
      */
-    fun parseParameter(ctParameter: CtParameter<*>): StaticParameterEntity {
+    fun parseParameter(ctParameter: CtParameter<*>, withLocation: Boolean = true): StaticParameterEntity {
         val name = ctParameter.simpleName
         val type = ctParameter.type.qualifiedName
 
-        val sourceCodeLocation = ctParameter.position?.let {
+        val sourceCodeLocation = if (!withLocation) null else ctParameter.position?.let {
             SourceCodeLocation(
                 filePath = it.file?.path ?: "",
                 startLine = it.line,
@@ -0,0 +1,84 @@
+package org.protogalaxy.fractalfathom.cli.analysis.parsers
+
+import spoon.reflect.cu.SourcePosition
+import java.io.File
+import java.io.IOException
+import java.nio.CharBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+import java.nio.file.StandardOpenOption
+
+/**
+ * Holds the decoded content of source files so that the text of code elements can be sliced from the
+ * original source instead of being pretty-printed.
+ *
+ * Every file is memory-mapped and decoded once, on first use. The buffers are not thread-safe; one
+ * instance is meant to be used by a single work unit of the analysis.
+ *
+ * @param charset The encoding of the source files, which must match the encoding used by Spoon so that
+ * the character offsets of source positions line up with the decoded content.
+ */
+class SourceBuffers(private val charset: Charset = Charsets.UTF_8) {
+
+    private val buffers = HashMap<String, CharBuffer?>()
+
+    /**
+     * Returns a lazy slice of the source text covered by a position.
+     *
+     * @param position The position of a code element.
+     * @return The slice, or `null` if the position is not backed by a readable file or lies outside of it.
+     */
+    fun slice(position: SourcePosition?): SourceSlice? {
+        val file = position?.takeIf { it.isValidPosition }?.file ?: return null
+        val buffer = bufferOf(file) ?: return null
+        val start = position.sourceStart
+        // Spoon reports the offset of the last character, slices use an exclusive end
+        val end = position.sourceEnd + 1
+        if (start < 0 || end > buffer.length || start > end) return null
+        return SourceSlice(buffer, start, end)
+    }
+
+    private fun bufferOf(file: File): CharBuffer? {
+        return buffers.getOrPut(file.path) {
+            try {
+                FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+                    val mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    charset.decode(mapped)
+                }
+            } catch (e: IOException) {
+                null
+            }
+        }
+    }
+}
+
+/**
+ * A read-only view of a range of a source file.
+ *
+ * The text is only copied into a String when [toString] is first called; the result is kept, so later
+ * calls return the same instance.
+ */
+class SourceSlice internal constructor(
+    private val buffer: CharBuffer,
+    private val start: Int,
+    private val end: Int
+) : CharSequence {
+
+    private var text: String? = null
+
+    override val length: Int
+        get() = end - start
+
+    override fun get(index: Int): Char = buffer[start + index]
+
+    override fun subSequence(startIndex: Int, endIndex: Int): CharSequence {
+        if (startIndex < 0 || endIndex > length || startIndex > endIndex) {
+            throw IndexOutOfBoundsException("[$startIndex, $endIndex) is out of bounds for length $length")
+        }
+        return SourceSlice(buffer, start + startIndex, start + endIndex)
+    }
+
+    override fun toString(): String {
+        return text ?: buffer.subSequence(start, end).toString().also { text = it }
+    }
+}
@@ -0,0 +1,22 @@
+package org.protogalaxy.fractalfathom.cli.analysis.parsers
+
+/**
+ * Limits on the low-level AST lowered from a single method body.
+ *
+ * Generated code can contain methods with thousands of statements or deeply nested blocks. Lowering stops
+ * adding statements once a limit is reached and marks the AST of the method as truncated, so the size of
+ * the IR per method, and thus per file, stays bounded.
+ *
+ * @property maxStatements The maximum number of statements of a method, counting nested statements.
+ * @property maxDepth The maximum nesting depth of blocks; the top-level statements of the body are at depth 1.
+ * The statements of blocks nested deeper are dropped.
+ */
+data class StatementBudget(
+    val maxStatements: Int = 10_000,
+    val maxDepth: Int = 64
+) {
+    init {
+        require(maxStatements >= 0) { "maxStatements must not be negative" }
+        require(maxDepth >= 1) { "maxDepth must be at least 1" }
+    }
+}
@@ -0,0 +1,85 @@
+package org.protogalaxy.fractalfathom.cli.analysis.prescan
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * Searches the raw bytes of source files for the FractalFathom annotations, `FractalFathomFeature` and
+ * `FractalFathomMapping`, without decoding or parsing them.
+ *
+ * The search reads eight bytes at a time and finds the candidate positions of the first byte of the marker
+ * with a few arithmetic operations on the whole word (SIMD within a register); only candidates are compared
+ * byte by byte. Since the annotation names are ASCII, this works for every ASCII-compatible encoding.
+ *
+ * A marker in a comment or string also counts, so the search may report files that do not use the
+ * annotations, but never misses one that does.
+ */
+object MarkerScanner {
+
+    private val PREFIX = "FractalFathom".toByteArray(Charsets.US_ASCII)
+    private val SUFFIXES = listOf("Feature", "Mapping").map { it.toByteArray(Charsets.US_ASCII) }
+
+    private const val ONES = 0x0101010101010101L
+    private const val HIGH_BITS = -0x7f7f7f7f7f7f7f80L   // 0x8080808080808080
+    private val FIRST_BYTES = ONES * PREFIX[0]
+
+    /**
+     * Returns whether a file contains a FractalFathom annotation name. The file is memory-mapped.
+     *
+     * @param path The path of the file.
+     * @return `true` if the file mentions a FractalFathom annotation, or if it cannot be read.
+     */
+    fun containsMarker(path: Path): Boolean {
+        return try {
+            FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+                channel.size() > 0 && containsMarker(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()))
+            }
+        } catch (e: IOException) {
+            true    // Let the full analysis report the problem
+        }
+    }
+
+    /**
+     * Returns whether the remaining bytes of a buffer contain a FractalFathom annotation name.
+     *
+     * @param buffer The bytes to search; its position is not changed.
+     */
+    fun containsMarker(buffer: ByteBuffer): Boolean {
+        val bytes = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+        val limit = bytes.limit()
+        var offset = bytes.position()
+        while (offset + Long.SIZE_BYTES <= limit) {
+            // A byte of the word equal to the first byte of the marker becomes zero, which sets its high bit in
+            // `candidates`. Bytes above such a byte may be flagged as well, they are rejected by the comparison.
+            val word = bytes.getLong(offset) xor FIRST_BYTES
+            var candidates = (word - ONES) and word.inv() and HIGH_BITS
+            while (candidates != 0L) {
+                if (matchesAt(bytes, offset + (candidates.countTrailingZeroBits() ushr 3))) return true
+                candidates = candidates and (candidates - 1)
+            }
+            offset += Long.SIZE_BYTES
+        }
+        while (offset < limit) {
+            if (matchesAt(bytes, offset)) return true
+            offset++
+        }
+        return false
+    }
+
+    private fun matchesAt(bytes: ByteBuffer, index: Int): Boolean {
+        if (!matchesAt(bytes, index, PREFIX)) return false
+        return SUFFIXES.any { matchesAt(bytes, index + PREFIX.size, it) }
+    }
+
+    private fun matchesAt(bytes: ByteBuffer, index: Int, expected: ByteArray): Boolean {
+        if (index + expected.size > bytes.limit()) return false
+        for (i in expected.indices) {
+            if (bytes.get(index + i) != expected[i]) return false
+        }
+        return true
+    }
+}
@@ -0,0 +1,195 @@
+package org.protogalaxy.fractalfathom.cli.analysis.prescan
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import org.protogalaxy.fractalfathom.cli.analysis.SourceCodeLocation
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticRelationEntity
+import java.io.IOException
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * Decides, before any Spoon model is built, which files of a project need a full analysis.
+ *
+ * Every file is memory-mapped once: its bytes are searched for the FractalFathom annotations by the
+ * [MarkerScanner], and its text is scanned by the [StructureScanner]. A file is analyzed in full if
+ *
+ * - it mentions a FractalFathom annotation (a marked file),
+ * - it declares a type whose simple name is mentioned in a marked file, or
+ * - it mentions the simple name of a type declared in a marked file.
+ *
+ * All other files only get the structural IR of their top-level classes: the name, package, modifiers,
+ * superclass and interfaces, without members. Type names are resolved through the imports and the types
+ * declared in the project; other names are kept as written.
+ *
+ * The scan also tells which files a file reaches by type name (see [reachableFiles]), so a Spoon model can be
+ * given the sources needed to resolve the types of the files parsed in it.
+ *
+ * @property filesToAnalyze The files that need a full analysis.
+ */
+class ProjectPrescan private constructor(
+    private val summaries: Map<String, FileSummary>,
+    val filesToAnalyze: Set<String>,
+    private val projectTypes: Set<String>,
+    private val filesByTypeName: Map<String, List<String>>
+) {
+
+    /**
+     * The result of scanning a single file.
+     */
+    private class FileSummary(val marked: Boolean, val structure: FileStructure)
+
+    /**
+     * The number of files mentioning a FractalFathom annotation.
+     */
+    val markedFileCount: Int
+        get() = summaries.values.count { it.marked }
+
+    /**
+     * The number of files that are analyzed in full because they are neighbors of a marked file.
+     */
+    val neighborFileCount: Int
+        get() = filesToAnalyze.size - markedFileCount
+
+    /**
+     * The number of files that only get the structural IR.
+     */
+    val structuralFileCount: Int
+        get() = summaries.size - filesToAnalyze.size
+
+    /**
+     * Returns the structural IR of the classes declared in a file, like the full analysis only for classes,
+     * enums and records.
+     *
+     * @param filePath The path of a scanned file.
+     * @return The classes of the file without fields and methods.
+     */
+    fun structuralClasses(filePath: String): List<IRClassEntity> {
+        val structure = summaries.getValue(filePath).structure
+        return structure.types
+            .filter { it.kind == DeclarationKind.CLASS || it.kind == DeclarationKind.ENUM || it.kind == DeclarationKind.RECORD }
+            .map { declaration ->
+                val superClass = declaration.superClass?.let { resolve(it, structure) }
+                val interfaces = declaration.interfaces.map { resolve(it, structure) }
+                val relations = ArrayList<StaticRelationEntity>(interfaces.size + 1)
+                superClass?.let { relations.add(StaticRelationEntity("extends", it)) }
+                interfaces.forEach { relations.add(StaticRelationEntity("implements", it)) }
+
+                IRClassEntity(
+                    name = declaration.name,
+                    type = "Class",
+                    packageName = structure.packageName,
+                    filePath = filePath,
+                    modifiers = declaration.modifiers.joinToString(" "),
+                    superClass = superClass,
+                    interfaces = interfaces,
+                    annotations = emptyList(),
+                    features = emptyList(),
+                    mappings = emptyList(),
+                    fields = emptyList(),
+                    methods = emptyList(),
+                    relations = relations,
+                    sourceCodeLocation = SourceCodeLocation(
+                        filePath = filePath,
+                        startLine = declaration.startLine,
+                        endLine = declaration.endLine,
+                        startColumn = declaration.startColumn,
+                        endColumn = declaration.endColumn
+                    ),
+                    complexityMetrics = null
+                )
+            }
+    }
+
+    /**
+     * Collects the files reached by type name from the given files: the files declaring a type whose simple name
+     * is mentioned in one of the given files, the files declaring a type mentioned in those, and so on.
+     *
+     * These are the files whose declarations a Spoon model may need to resolve the types, e.g. the declaring
+     * types of inherited or chained method calls, of the given files.
+     *
+     * @param filePaths The paths of scanned files.
+     * @return The reached files, without the given ones.
+     */
+    fun reachableFiles(filePaths: Collection<String>): Set<String> {
+        val visited = HashSet(filePaths)
+        val reached = LinkedHashSet<String>()
+        val pending = ArrayDeque(filePaths)
+        while (pending.isNotEmpty()) {
+            val summary = summaries[pending.removeFirst()] ?: continue
+            summary.structure.referencedNames.forEach { name ->
+                filesByTypeName[name]?.forEach { filePath ->
+                    if (visited.add(filePath)) {
+                        reached.add(filePath)
+                        pending.addLast(filePath)
+                    }
+                }
+            }
+        }
+        return reached
+    }
+
+    // Resolves a type name as written in a file to a qualified name, where possible
+    private fun resolve(name: String, structure: FileStructure): String {
+        if ('.' in name) return name
+        structure.imports[name]?.let { return it }
+        val samePackage = if (structure.packageName.isEmpty()) name else "${structure.packageName}.$name"
+        if (samePackage in projectTypes) return samePackage
+        return structure.wildcardImports.map { "$it.$name" }.firstOrNull { it in projectTypes } ?: name
+    }
+
+    companion object {
+        /**
+         * Scans the given files concurrently and selects the files to analyze in full.
+         *
+         * @param filePaths The paths of the source files of the project.
+         * @param charset The encoding used to decode the files for the structural scan.
+         * @return The result of the scan.
+         */
+        suspend fun scan(filePaths: List<String>, charset: Charset = Charsets.UTF_8): ProjectPrescan = coroutineScope {
+            val summaries = filePaths
+                .map { filePath -> async(Dispatchers.IO) { filePath to scanFile(filePath, charset) } }
+                .awaitAll()
+                .toMap(LinkedHashMap())
+
+            // Marked files and their direct neighbors by simple type name
+            val filesByTypeName = HashMap<String, MutableList<String>>()
+            summaries.forEach { (filePath, summary) ->
+                summary.structure.types.forEach { filesByTypeName.getOrPut(it.name) { ArrayList() }.add(filePath) }
+            }
+            val markedSummaries = summaries.filterValues { it.marked }
+            val markedTypeNames = markedSummaries.values.flatMap { summary -> summary.structure.types.map { it.name } }.toSet()
+
+            val filesToAnalyze = LinkedHashSet(markedSummaries.keys)
+            markedSummaries.values.forEach { summary ->
+                summary.structure.referencedNames.forEach { name -> filesByTypeName[name]?.let { filesToAnalyze.addAll(it) } }
+            }
+            summaries.forEach { (filePath, summary) ->
+                if (summary.structure.referencedNames.any { it in markedTypeNames }) filesToAnalyze.add(filePath)
+            }
+
+            val projectTypes = summaries.values.flatMapTo(HashSet()) { summary ->
+                val packagePrefix = if (summary.structure.packageName.isEmpty()) "" else "${summary.structure.packageName}."
+                summary.structure.types.map { packagePrefix + it.name }
+            }
+            ProjectPrescan(summaries, filesToAnalyze, projectTypes, filesByTypeName)
+        }
+
+        private fun scanFile(filePath: String, charset: Charset): FileSummary {
+            return try {
+                FileChannel.open(Path.of(filePath), StandardOpenOption.READ).use { channel ->
+                    val bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    FileSummary(MarkerScanner.containsMarker(bytes), StructureScanner().scan(charset.decode(bytes)))
+                }
+            } catch (e: IOException) {
+                // Let the full analysis report the problem
+                FileSummary(true, StructureScanner().scan(""))
+            }
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package org.protogalaxy.fractalfathom.cli.analysis.prescan
+
+/**
+ * The kind of a top-level type declaration found by the [StructureScanner].
+ */
+enum class DeclarationKind {
+    CLASS,
+    INTERFACE,
+    ENUM,
+    RECORD,
+    ANNOTATION
+}
+
+/**
+ * A top-level type declaration found by the [StructureScanner].
+ *
+ * @property kind The kind of the declaration.
+ * @property name The simple name of the type.
+ * @property modifiers The modifiers of the type, in declaration order.
+ * @property superClass The extended class as written in the source, without type arguments.
+ * @property interfaces The implemented (or, for interfaces, extended) interfaces as written in the source.
+ * @property startLine The line of the first modifier, annotation or keyword of the declaration.
+ * @property startColumn The column of the first modifier, annotation or keyword of the declaration.
+ * @property endLine The line of the closing brace of the declaration.
+ * @property endColumn The column of the closing brace of the declaration.
+ */
+data class TypeDeclaration(
+    val kind: DeclarationKind,
+    val name: String,
+    val modifiers: List<String>,
+    val superClass: String?,
+    val interfaces: List<String>,
+    val startLine: Int,
+    val startColumn: Int,
+    val endLine: Int,
+    val endColumn: Int
+)
+
+/**
+ * The structure of a source file found by the [StructureScanner].
+ *
+ * @property packageName The declared package, or an empty string for the default package.
+ * @property imports The single-type imports, by simple name.
+ * @property wildcardImports The packages imported on demand.
+ * @property types The top-level type declarations.
+ * @property referencedNames The identifiers starting with an upper-case letter, i.e. the probable type names
+ * mentioned anywhere in the file outside of comments and literals.
+ */
+data class FileStructure(
+    val packageName: String,
+    val imports: Map<String, String>,
+    val wildcardImports: List<String>,
+    val types: List<TypeDeclaration>,
+    val referencedNames: Set<String>
+)
+
+/**
+ * Extracts the package, imports and top-level type declarations of a Java source file with a single lexical
+ * pass, without building a syntax tree.
+ *
+ * The scanner only understands the headers of top-level declarations; the bodies are skipped by counting
+ * braces. Comments, string and character literals and text blocks are recognized, so braces and names in them
+ * are ignored. The result is approximate for code that does not compile.
+ *
+ * The scanner keeps the state of the file being scanned and is therefore confined to a single thread.
+ */
+class StructureScanner {
+
+    private var text: CharSequence = ""
+    private var pos = 0
+    private var line = 1
+    private var lineStart = 0
+
+    // The current token
+    private var token: String? = null
+    private var tokenLine = 0
+    private var tokenColumn = 0
+
+    private val referencedNames = HashSet<String>()
+
+    /**
+     * Scans the text of a source file.
+     *
+     * @param source The content of the file.
+     * @return The structure of the file.
+     */
+    fun scan(source: CharSequence): FileStructure {
+        text = source
+        pos = 0
+        line = 1
+        lineStart = 0
+        referencedNames.clear()
+
+        var packageName = ""
+        val imports = HashMap<String, String>()
+        val wildcardImports = ArrayList<String>()
+        val types = ArrayList<TypeDeclaration>()
+
+        // The modifiers and start of the declaration being read
+        val modifiers = ArrayList<String>()
+        var startLine = -1
+        var startColumn = -1
+
+        advance()
+        while (token != null) {
+            val current = token!!
+            if (startLine < 0) {
+                startLine = tokenLine
+                startColumn = tokenColumn
+            }
+            when {
+                current == "package" -> {
+                    advance()
+                    packageName = readQualifiedName()
+                    modifiers.clear()
+                    startLine = -1
+                }
+                current == "import" -> {
+                    advance()
+                    val isStatic = token == "static"
+                    if (isStatic) advance()
+                    val name = readQualifiedName()
+                    if (!isStatic) {
+                        if (token == ".") {
+                            advance()   // `.*`
+                            advance()
+                            wildcardImports.add(name)
+                        } else {
+                            imports[name.substringAfterLast('.')] = name
+                        }
+                    }
+                    skipTo(";")
+                    startLine = -1
+                }
+                current == "@" -> {
+                    advance()
+                    if (token == "interface") {
+                        advance()
+                        types.add(readDeclaration(DeclarationKind.ANNOTATION, modifiers, startLine, startColumn))
+                        modifiers.clear()
+                        startLine = -1
+                    } else {
+                        readQualifiedName()
+                        if (token == "(") skipBalanced("(", ")")
+                    }
+                }
+                current in DECLARATION_KEYWORDS -> {
+                    advance()
+                    types.add(readDeclaration(DECLARATION_KEYWORDS.getValue(current), modifiers, startLine, startColumn))
+                    modifiers.clear()
+                    startLine = -1
+                }
+                current in MODIFIERS -> {
+                    modifiers.add(current)
+                    advance()
+                }
+                current == "non" -> {
+                    // `non-sealed`
+                    advance()
+                    if (token == "-") advance()
+                    if (token == "sealed") advance()
+                    modifiers.add("non-sealed")
+                }
+                current == "{" -> {
+                    skipBalanced("{", "}")
+                    modifiers.clear()
+                    startLine = -1
+                }
+                else -> {
+                    // `;` and anything not understood end the current declaration
+                    advance()
+                    modifiers.clear()
+                    startLine = -1
+                }
+            }
+        }
+
+        return FileStructure(packageName, imports, wildcardImports, types, HashSet(referencedNames))
+    }
+
+    // Reads the header after the keyword and skips the body
+    private fun readDeclaration(kind: DeclarationKind, modifiers: List<String>, startLine: Int, startColumn: Int): TypeDeclaration {
+        val name = token ?: ""
+        advance()
+        var superClass: String? = null
+        val interfaces = ArrayList<String>()
+        while (token != null && token != "{") {
+            when (token) {
+                "<" -> skipBalanced("<", ">")
+                "(" -> skipBalanced("(", ")")   // Record components
+                "extends" -> {
+                    advance()
+                    val types = readTypeList()
+                    if (kind == DeclarationKind.INTERFACE) interfaces.addAll(types) else superClass = types.firstOrNull()
+                }
+                "implements" -> {
+                    advance()
+                    interfaces.addAll(readTypeList())
+                }
+                else -> advance()
+            }
+        }
+        var endLine = tokenLine
+        var endColumn = tokenColumn
+        if (token == "{") {
+            skipBalanced("{", "}") { closingLine, closingColumn ->
+                endLine = closingLine
+                endColumn = closingColumn
+            }
+        }
+        return TypeDeclaration(kind, name, modifiers.toList(), superClass, interfaces, startLine, startColumn, endLine, endColumn)
+    }
+
+    // Reads a comma separated list of types, dropping type arguments and annotations
+    private fun readTypeList(): List<String> {
+        val types = ArrayList<String>()
+        while (true) {
+            while (token == "@") {
+                advance()
+                readQualifiedName()
+                if (token == "(") skipBalanced("(", ")")
+            }
+            types.add(readQualifiedName())
+            if (token == "<") skipBalanced("<", ">")
+            if (token != ",") return types
+            advance()
+        }
+    }
+
+    // Reads a dotted name; stops before a `.` that is not followed by an identifier, e.g. in `.*`
+    private fun readQualifiedName(): String {
+        val builder = StringBuilder()
+        while (true) {
+            val current = token ?: break
+            if (!current[0].isJavaIdentifierStart()) break
+            builder.append(current)
+            advance()
+            if (token != "." || !nextIsIdentifier()) break
+            builder.append('.')
+            advance()
+        }
+        return builder.toString()
+    }
+
+    // Skips from the current opening token to the matching closing token, inclusive
+    private inline fun skipBalanced(open: String, close: String, onClose: (line: Int, column: Int) -> Unit = { _, _ -> }) {
+        var depth = 0
+        while (token != null) {
+            when (token) {
+                open -> depth++
+                close -> depth--
+            }
+            if (depth == 0) {
+                onClose(tokenLine, tokenColumn)
+                advance()
+                return
+            }
+            advance()
+        }
+    }
+
+    private fun skipTo(end: String) {
+        while (token != null && token != end) advance()
+        advance()
+    }
+
+    private fun nextIsIdentifier(): Boolean {
+        var index = pos
+        while (index < text.length) {
+            val c = text[index]
+            if (c.isJavaIdentifierStart()) return true
+            if (!c.isWhitespace()) return false
+            index++
+        }
+        return false
+    }
+
+    /**
+     * Moves to the next token: an identifier or a single punctuation character. Comments, literals and
+     * numbers are skipped.
+     */
+    private fun advance() {
+        while (pos < text.length) {
+            val c = text[pos]
+            when {
+                c == '\n' -> {
+                    pos++
+                    line++
+                    lineStart = pos
+                }
+                c.isWhitespace() -> pos++
+                c == '/' && pos + 1 < text.length && text[pos + 1] == '/' -> {
+                    while (pos < text.length && text[pos] != '\n') pos++
+                }
+                c == '/' && pos + 1 < text.length && text[pos + 1] == '*' -> skipUntil("*/", pos + 2)
+                c == '"' && startsWith("\"\"\"", pos) -> skipUntil("\"\"\"", pos + 3)
+                c == '"' || c == '\'' -> skipLiteral(c)
+                c.isDigit() -> {
+                    while (pos < text.length && (text[pos].isLetterOrDigit() || text[pos] == '_' || text[pos] == '.')) pos++
+                }
+                c.isJavaIdentifierStart() -> {
+                    val start = pos
+                    while (pos < text.length && text[pos].isJavaIdentifierPart()) pos++
+                    setToken(text.subSequence(start, pos).toString(), start)
+                    if (c.isUpperCase()) referencedNames.add(token!!)
+                    return
+                }
+                else -> {
+                    pos++
+                    setToken(if (c.code < PUNCTUATION.size) PUNCTUATION[c.code] else c.toString(), pos - 1)
+                    return
+                }
+            }
+        }
+        token = null
+    }
+
+    private fun setToken(value: String, start: Int) {
+        token = value
+        tokenLine = line
+        tokenColumn = start - lineStart + 1
+    }
+
+    private fun startsWith(prefix: String, index: Int): Boolean {
+        if (index + prefix.length > text.length) return false
+        for (i in prefix.indices) {
+            if (text[index + i] != prefix[i]) return false
+        }
+        return true
+    }
+
+    // Skips to the end of a comment or text block, counting the lines
+    private fun skipUntil(end: String, from: Int) {
+        pos = from
+        val escapes = end[0] == '"'
+        while (pos < text.length && !startsWith(end, pos)) {
+            if (escapes && text[pos] == '\\') step()
+            step()
+        }
+        pos = minOf(pos + end.length, text.length)
+    }
+
+    private fun step() {
+        if (pos < text.length && text[pos] == '\n') {
+            line++
+            lineStart = pos + 1
+        }
+        pos++
+    }
+
+    // Skips a string or character literal, which cannot span lines
+    private fun skipLiteral(quote: Char) {
+        pos++
+        while (pos < text.length && text[pos] != quote && text[pos] != '\n') {
+            if (text[pos] == '\\') pos++
+            pos++
+        }
+        if (pos < text.length && text[pos] == quote) pos++
+    }
+
+    companion object {
+        private val DECLARATION_KEYWORDS = mapOf(
+            "class" to DeclarationKind.CLASS,
+            "interface" to DeclarationKind.INTERFACE,
+            "enum" to DeclarationKind.ENUM,
+            "record" to DeclarationKind.RECORD
+        )
+
+        private val MODIFIERS = setOf("public", "protected", "private", "abstract", "static", "final", "sealed", "strictfp")
+
+        // Shared single character tokens, so punctuation does not allocate
+        private val PUNCTUATION = Array(128) { it.toChar().toString() }
+    }
+}
@@ -1,10 +1,16 @@
 package org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis
 
+import com.fasterxml.jackson.annotation.JsonInclude
+
 /**
  * Represents the low-level Abstract Syntax Tree (AST) of a method body.
  *
  * @property statements A list of static statements that make up the method body.
+ * @property truncated Whether statements were left out because the body exceeded the statement or depth
+ * budget of the analysis. Only written to the IR data when set.
  */
 data class LowLevelAST(
-    val statements: List<StaticStatementEntity>    // 方法体的低层AST
+    val statements: List<StaticStatementEntity>,    // 方法体的低层AST
+    @get:JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    val truncated: Boolean = false                  // 是否因超出预算而被截断
 )
@@ -5,12 +5,16 @@ import org.protogalaxy.fractalfathom.cli.analysis.SourceCodeLocation
 /**
  * Represents a static method call in the code.
  *
- * @property methodName The name of the method being called.
+ * @property methodName The name of the method being called, or `<init>` for a constructor call.
  * @property arguments The arguments passed during the method call.
  * @property sourceCodeLocation The location in the source code where the call occurs.
+ * @property declaringType The qualified name of the type declaring the called method, if it could be resolved.
+ * @property signature The signature of the called method, e.g. `save(java.lang.String,int)`, if it could be resolved.
  */
 data class StaticCallEntity(
     val methodName: String,                        // 被调用方法的名称
     val arguments: List<String>,                   // 调用时传入的参数
-    val sourceCodeLocation: SourceCodeLocation?     // 调用发生的源码位置
+    val sourceCodeLocation: SourceCodeLocation?,    // 调用发生的源码位置
+    val declaringType: String? = null,             // 被调用方法所属的类型
+    val signature: String? = null                  // 被调用方法的签名
 )
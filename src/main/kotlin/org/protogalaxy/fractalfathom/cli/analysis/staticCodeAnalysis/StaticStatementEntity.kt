@@ -1,18 +1,57 @@
 package org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis
 
+import com.fasterxml.jackson.annotation.JsonCreator
+import com.fasterxml.jackson.annotation.JsonIgnore
+import com.fasterxml.jackson.annotation.JsonProperty
 import org.protogalaxy.fractalfathom.cli.analysis.SourceCodeLocation
 
 /**
  * Represents a static statement in the code.
  *
+ * The text of the statement is held as a `CharSequence`, so a lazy slice of the source file can be stored
+ * and only turned into a String when [expression] is read. Equality compares the text by content.
+ *
  * @property type The type of the statement (e.g., assignment, conditional statement).
- * @property expression The content of the expression, if any.
+ * @property expressionText The text of the statement, if any.
  * @property subStatements An optional list of sub-statements for nested structures.
  * @property sourceCodeLocation The location of the statement in the source code.
  */
 data class StaticStatementEntity(
     val type: String,                              // 语句类型（如赋值、条件语句等）
-    val expression: String?,                       // 表达式内容
+    @get:JsonIgnore
+    val expressionText: CharSequence?,             // 语句文本（可为源码的惰性切片）
     val subStatements: List<StaticStatementEntity>?, // 子语句列表
     val sourceCodeLocation: SourceCodeLocation?     // 语句在源码中的位置
-)
+) {
+
+    @JsonCreator
+    constructor(
+        @JsonProperty("type") type: String,
+        @JsonProperty("expression") expression: String?,
+        @JsonProperty("subStatements") subStatements: List<StaticStatementEntity>?,
+        @JsonProperty("sourceCodeLocation") sourceCodeLocation: SourceCodeLocation?
+    ) : this(type, expression as CharSequence?, subStatements, sourceCodeLocation)
+
+    /**
+     * The content of the expression, if any. Reading it materializes a lazy source slice.
+     */
+    val expression: String?
+        get() = expressionText?.toString()
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is StaticStatementEntity) return false
+        return type == other.type &&
+                expression == other.expression &&
+                subStatements == other.subStatements &&
+                sourceCodeLocation == other.sourceCodeLocation
+    }
+
+    override fun hashCode(): Int {
+        var result = type.hashCode()
+        result = 31 * result + (expression?.hashCode() ?: 0)
+        result = 31 * result + (subStatements?.hashCode() ?: 0)
+        result = 31 * result + (sourceCodeLocation?.hashCode() ?: 0)
+        return result
+    }
+}
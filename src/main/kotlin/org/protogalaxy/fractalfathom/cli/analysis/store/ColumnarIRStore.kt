@@ -0,0 +1,619 @@
+package org.protogalaxy.fractalfathom.cli.analysis.store
+
+import kotlinx.coroutines.flow.Flow
+import org.protogalaxy.fractalfathom.cli.analysis.SourceCodeLocation
+import org.protogalaxy.fractalfathom.cli.analysis.annotation.AnnotationEntity
+import org.protogalaxy.fractalfathom.cli.analysis.annotation.FeatureEntity
+import org.protogalaxy.fractalfathom.cli.analysis.annotation.MappingEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.ComplexityMetrics
+import org.protogalaxy.fractalfathom.cli.analysis.ir.Embedding
+import org.protogalaxy.fractalfathom.cli.analysis.ir.EmbeddingStorage
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRFieldEntity
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRMethodEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.LowLevelAST
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticCallEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticParameterEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticRelationEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticStatementEntity
+
+/**
+ * An IR backend that keeps the entities of a project in columnar tables outside the heap.
+ *
+ * Every kind of entity (classes, fields, methods, parameters, calls and statements) is a table of int
+ * columns in direct buffers, and entities refer to their children by the range of their rows. Names and
+ * types are ids of a symbol dictionary, statement and argument text is stored as UTF-16 in an off-heap
+ * text heap, and embeddings in an off-heap vector heap. Only the symbol dictionary and the few annotations,
+ * features and mappings stay on the heap, so the heap usage no longer grows with the number of statements.
+ *
+ * Classes are added one at a time, e.g. while collecting [org.protogalaxy.fractalfathom.cli.analysis.CodeAnalyzer.analyzeProjectFlow],
+ * so the object graph of the whole project never exists at once. They are read back through typed views
+ * ([ClassView], [FieldView], [MethodView] and [StatementView]) that decode columns on access, or
+ * materialized one class at a time with [ClassView.toEntity] for code working on `IRClassEntity`.
+ *
+ * The store is not thread-safe; it should be filled and read by a single coroutine at a time.
+ */
+class ColumnarIRStore {
+
+    private val symbols = StringDictionary()
+    private val texts = CharHeap()
+    private val vectors = VectorHeap()
+    private val annotationGroups = ArrayList<AnnotationGroup>()
+
+    private val classTable = IntTable(CLASS_COLUMNS)
+    private val fieldTable = IntTable(FIELD_COLUMNS)
+    private val methodTable = IntTable(METHOD_COLUMNS)
+    private val parameterTable = IntTable(PARAMETER_COLUMNS)
+    private val callTable = IntTable(CALL_COLUMNS)
+    private val statementTable = IntTable(STATEMENT_COLUMNS)
+    private val relationTable = IntTable(RELATION_COLUMNS)
+    private val interfaceTable = IntTable(1)
+    private val argumentTable = IntTable(TEXT_COLUMNS)
+
+    /**
+     * The annotations, features and mappings of an entity, kept on the heap as they are.
+     */
+    private class AnnotationGroup(
+        val annotations: List<AnnotationEntity>,
+        val features: List<FeatureEntity>,
+        val mappings: List<MappingEntity>
+    )
+
+    /** The number of classes in the store. */
+    val classCount: Int
+        get() = classTable.size
+
+    /** The number of statements in the store, including nested ones. */
+    val statementCount: Int
+        get() = statementTable.size
+
+    /** The number of distinct symbols in the dictionary of the store. */
+    val symbolCount: Int
+        get() = symbols.size
+
+    /** The number of bytes the store has allocated outside the heap. */
+    val offHeapBytes: Long
+        get() = listOf(classTable, fieldTable, methodTable, parameterTable, callTable, statementTable, relationTable, interfaceTable, argumentTable)
+            .sumOf { it.offHeapBytes } + texts.offHeapBytes + vectors.offHeapBytes
+
+    /**
+     * Adds a class and all its members to the store.
+     *
+     * @param irClass The class to add.
+     * @return The id of the class in the store.
+     */
+    fun add(irClass: IRClassEntity): Int {
+        val row = classTable.addRows()
+        classTable[row, C_NAME] = symbols.idOf(irClass.name)
+        classTable[row, C_TYPE] = symbols.idOf(irClass.type)
+        classTable[row, C_PACKAGE] = symbols.idOf(irClass.packageName)
+        classTable[row, C_FILE_PATH] = symbols.idOf(irClass.filePath)
+        classTable[row, C_MODIFIERS] = symbols.idOf(irClass.modifiers)
+        classTable[row, C_SUPER_CLASS] = symbols.idOf(irClass.superClass)
+        classTable[row, C_FIRST_INTERFACE] = addSymbols(irClass.interfaces)
+        classTable[row, C_INTERFACE_COUNT] = irClass.interfaces.size
+        classTable[row, C_FIRST_RELATION] = addRelations(irClass.relations)
+        classTable[row, C_RELATION_COUNT] = irClass.relations.size
+        classTable[row, C_FIRST_FIELD] = addFields(irClass.fields)
+        classTable[row, C_FIELD_COUNT] = irClass.fields.size
+        classTable[row, C_FIRST_METHOD] = addMethods(irClass.methods)
+        classTable[row, C_METHOD_COUNT] = irClass.methods.size
+        classTable[row, C_ANNOTATIONS] = addAnnotations(irClass.annotations, irClass.features, irClass.mappings)
+        val metrics = irClass.complexityMetrics
+        classTable[row, C_HAS_METRICS] = if (metrics != null) 1 else 0
+        metrics?.let {
+            classTable[row, C_CYCLOMATIC] = it.cyclomaticComplexity
+            classTable[row, C_NESTING] = it.nestingDepth
+            classTable[row, C_BRANCHES] = it.branchCount
+        }
+        putLocation(classTable, row, C_LOCATION, irClass.sourceCodeLocation)
+        putEmbedding(classTable, row, C_EMBEDDING, irClass.embedding)
+        return row
+    }
+
+    /**
+     * Adds all classes emitted by a flow, e.g. the classes of a project while it is being analyzed.
+     *
+     * @param irData The flow of classes to add.
+     * @return The number of classes added.
+     */
+    suspend fun addAll(irData: Flow<IRClassEntity>): Int {
+        var count = 0
+        irData.collect {
+            add(it)
+            count++
+        }
+        return count
+    }
+
+    /**
+     * Stores the embeddings of a class and its members, e.g. after they have been generated for a class
+     * materialized from this store.
+     *
+     * @param classId The id of the class in the store.
+     * @param irClass The class holding the embeddings, with the fields and methods of the stored class.
+     */
+    fun setEmbeddings(classId: Int, irClass: IRClassEntity) {
+        val fieldCount = classTable[classId, C_FIELD_COUNT]
+        val methodCount = classTable[classId, C_METHOD_COUNT]
+        require(irClass.fields.size == fieldCount && irClass.methods.size == methodCount) {
+            "Class ${irClass.name} does not match the members of stored class $classId"
+        }
+        putEmbedding(classTable, classId, C_EMBEDDING, irClass.embedding)
+        val firstField = classTable[classId, C_FIRST_FIELD]
+        irClass.fields.forEachIndexed { index, field -> putEmbedding(fieldTable, firstField + index, F_EMBEDDING, field.embedding) }
+        val firstMethod = classTable[classId, C_FIRST_METHOD]
+        irClass.methods.forEachIndexed { index, method -> putEmbedding(methodTable, firstMethod + index, M_EMBEDDING, method.embedding) }
+    }
+
+    /**
+     * Returns the view of a class.
+     */
+    fun classView(id: Int): ClassView = ClassView(id)
+
+    /**
+     * Returns the views of all classes in the order they were added.
+     */
+    fun classes(): List<ClassView> = rangeList(0, classTable.size) { ClassView(it) }
+
+    /**
+     * Materializes the classes one at a time, in the order they were added.
+     */
+    fun asSequence(): Sequence<IRClassEntity> = classes().asSequence().map { it.toEntity() }
+
+    private fun addSymbols(values: List<String>): Int {
+        val first = interfaceTable.addRows(values.size)
+        values.forEachIndexed { index, value -> interfaceTable[first + index, 0] = symbols.idOf(value) }
+        return first
+    }
+
+    private fun addRelations(values: List<StaticRelationEntity>): Int {
+        val first = relationTable.addRows(values.size)
+        values.forEachIndexed { index, relation ->
+            relationTable[first + index, R_TYPE] = symbols.idOf(relation.relationType)
+            relationTable[first + index, R_TARGET] = symbols.idOf(relation.targetClass)
+        }
+        return first
+    }
+
+    private fun addFields(values: List<IRFieldEntity>): Int {
+        val first = fieldTable.addRows(values.size)
+        values.forEachIndexed { index, field ->
+            val row = first + index
+            fieldTable[row, F_NAME] = symbols.idOf(field.name)
+            fieldTable[row, F_TYPE] = symbols.idOf(field.type)
+            fieldTable[row, F_MODIFIERS] = symbols.idOf(field.modifiers)
+            fieldTable[row, F_ANNOTATIONS] = addAnnotations(field.annotations, field.features, field.mappings)
+            putLocation(fieldTable, row, F_LOCATION, field.sourceCodeLocation)
+            putEmbedding(fieldTable, row, F_EMBEDDING, field.embedding)
+        }
+        return first
+    }
+
+    private fun addMethods(values: List<IRMethodEntity>): Int {
+        val first = methodTable.addRows(values.size)
+        values.forEachIndexed { index, method ->
+            val row = first + index
+            methodTable[row, M_NAME] = symbols.idOf(method.name)
+            methodTable[row, M_RETURN_TYPE] = symbols.idOf(method.returnType)
+            methodTable[row, M_MODIFIERS] = symbols.idOf(method.modifiers)
+            methodTable[row, M_ANNOTATIONS] = addAnnotations(method.annotations, method.features, method.mappings)
+            methodTable[row, M_FIRST_PARAMETER] = addParameters(method.parameters)
+            methodTable[row, M_PARAMETER_COUNT] = method.parameters.size
+            methodTable[row, M_FIRST_CALL] = addCalls(method.calledMethods)
+            methodTable[row, M_CALL_COUNT] = method.calledMethods.size
+            val ast = method.lowLevelAST
+            if (ast != null) {
+                methodTable[row, M_FIRST_STATEMENT] = addStatements(ast.statements)
+                methodTable[row, M_STATEMENT_COUNT] = ast.statements.size
+                methodTable[row, M_AST_TRUNCATED] = if (ast.truncated) 1 else 0
+            } else {
+                methodTable[row, M_STATEMENT_COUNT] = -1
+            }
+            val metrics = method.complexityMetrics
+            methodTable[row, M_HAS_METRICS] = if (metrics != null) 1 else 0
+            metrics?.let {
+                methodTable[row, M_CYCLOMATIC] = it.cyclomaticComplexity
+                methodTable[row, M_NESTING] = it.nestingDepth
+                methodTable[row, M_BRANCHES] = it.branchCount
+            }
+            putLocation(methodTable, row, M_LOCATION, method.sourceCodeLocation)
+            putEmbedding(methodTable, row, M_EMBEDDING, method.embedding)
+        }
+        return first
+    }
+
+    private fun addParameters(values: List<StaticParameterEntity>): Int {
+        val first = parameterTable.addRows(values.size)
+        values.forEachIndexed { index, parameter ->
+            parameterTable[first + index, P_NAME] = symbols.idOf(parameter.name)
+            parameterTable[first + index, P_TYPE] = symbols.idOf(parameter.type)
+            putLocation(parameterTable, first + index, P_LOCATION, parameter.sourceCodeLocation)
+        }
+        return first
+    }
+
+    private fun addCalls(values: List<StaticCallEntity>): Int {
+        val first = callTable.addRows(values.size)
+        values.forEachIndexed { index, call ->
+            val row = first + index
+            callTable[row, K_METHOD_NAME] = symbols.idOf(call.methodName)
+            callTable[row, K_DECLARING_TYPE] = symbols.idOf(call.declaringType)
+            callTable[row, K_SIGNATURE] = symbols.idOf(call.signature)
+            val firstArgument = argumentTable.addRows(call.arguments.size)
+            call.arguments.forEachIndexed { argumentIndex, argument -> putText(argumentTable, firstArgument + argumentIndex, T_OFFSET, argument) }
+            callTable[row, K_FIRST_ARGUMENT] = firstArgument
+            callTable[row, K_ARGUMENT_COUNT] = call.arguments.size
+            putLocation(callTable, row, K_LOCATION, call.sourceCodeLocation)
+        }
+        return first
+    }
+
+    // Siblings occupy consecutive rows, their children are added after them
+    private fun addStatements(values: List<StaticStatementEntity>): Int {
+        val first = statementTable.addRows(values.size)
+        values.forEachIndexed { index, statement ->
+            val row = first + index
+            statementTable[row, S_TYPE] = symbols.idOf(statement.type)
+            putText(statementTable, row, S_TEXT_OFFSET, statement.expressionText)
+            val subStatements = statement.subStatements
+            if (subStatements != null) {
+                statementTable[row, S_FIRST_CHILD] = addStatements(subStatements)
+                statementTable[row, S_CHILD_COUNT] = subStatements.size
+            } else {
+                statementTable[row, S_CHILD_COUNT] = -1
+            }
+            putLocation(statementTable, row, S_LOCATION, statement.sourceCodeLocation)
+        }
+        return first
+    }
+
+    private fun addAnnotations(annotations: List<AnnotationEntity>, features: List<FeatureEntity>, mappings: List<MappingEntity>): Int {
+        if (annotations.isEmpty() && features.isEmpty() && mappings.isEmpty()) return -1
+        annotationGroups.add(AnnotationGroup(annotations, features, mappings))
+        return annotationGroups.size - 1
+    }
+
+    private fun annotationGroup(id: Int): AnnotationGroup = if (id < 0) NO_ANNOTATIONS else annotationGroups[id]
+
+    // The text is stored at `column` and its length at `column + 1`; an offset of -1 stands for `null`
+    private fun putText(table: IntTable, row: Int, column: Int, text: CharSequence?) {
+        if (text == null) {
+            table[row, column] = -1
+        } else {
+            table[row, column] = texts.append(text)
+            table[row, column + 1] = text.length
+        }
+    }
+
+    private fun text(table: IntTable, row: Int, column: Int): CharSequence? {
+        val offset = table[row, column]
+        return if (offset < 0) null else texts.slice(offset, table[row, column + 1])
+    }
+
+    // A location takes five columns starting at `base`; a file id of -1 stands for `null`
+    private fun putLocation(table: IntTable, row: Int, base: Int, location: SourceCodeLocation?) {
+        if (location == null) {
+            table[row, base] = -1
+            return
+        }
+        table[row, base] = location.fileId
+        table[row, base + 1] = location.startLine
+        table[row, base + 2] = location.endLine
+        table[row, base + 3] = location.startColumn
+        table[row, base + 4] = location.endColumn
+    }
+
+    private fun location(table: IntTable, row: Int, base: Int): SourceCodeLocation? {
+        val fileId = table[row, base]
+        if (fileId < 0) return null
+        return SourceCodeLocation.of(fileId, table[row, base + 1], table[row, base + 2], table[row, base + 3], table[row, base + 4])
+    }
+
+    // An embedding takes four columns starting at `base`: offset (-1 for `null`), dimension, storage and scale
+    private fun putEmbedding(table: IntTable, row: Int, base: Int, embedding: Embedding?) {
+        if (embedding == null) {
+            table[row, base] = -1
+            return
+        }
+        table[row, base] = when (embedding.storage) {
+            EmbeddingStorage.FLOAT -> vectors.appendFloats(embedding.dimension) { embedding[it] }
+            EmbeddingStorage.INT8 -> vectors.appendBytes(embedding.dimension) { embedding.quantizedValue(it) }
+        }
+        table[row, base + 1] = embedding.dimension
+        table[row, base + 2] = embedding.storage.ordinal
+        table[row, base + 3] = embedding.scale.toRawBits()
+    }
+
+    private fun embedding(table: IntTable, row: Int, base: Int): Embedding? {
+        val offset = table[row, base]
+        if (offset < 0) return null
+        val dimension = table[row, base + 1]
+        return when (EmbeddingStorage.entries[table[row, base + 2]]) {
+            EmbeddingStorage.FLOAT -> Embedding(FloatArray(dimension) { vectors.getFloat(offset, it) })
+            EmbeddingStorage.INT8 -> Embedding.ofQuantized(
+                ByteArray(dimension) { vectors.getByte(offset, it) },
+                Float.fromBits(table[row, base + 3])
+            )
+        }
+    }
+
+    private fun symbol(table: IntTable, row: Int, column: Int): String? = symbols.symbolOf(table[row, column])
+
+    private fun <T> rangeList(first: Int, count: Int, element: (Int) -> T): List<T> {
+        return object : AbstractList<T>() {
+            override val size: Int get() = count
+            override fun get(index: Int): T {
+                if (index < 0 || index >= count) throw IndexOutOfBoundsException("Index $index, size $count")
+                return element(first + index)
+            }
+        }
+    }
+
+    /**
+     * A view of a stored class that decodes its columns on access.
+     *
+     * @property id The id of the class in the store.
+     */
+    inner class ClassView internal constructor(val id: Int) {
+        val name: String get() = symbol(classTable, id, C_NAME)!!
+        val type: String get() = symbol(classTable, id, C_TYPE)!!
+        val packageName: String get() = symbol(classTable, id, C_PACKAGE)!!
+        val filePath: String get() = symbol(classTable, id, C_FILE_PATH)!!
+        val modifiers: String get() = symbol(classTable, id, C_MODIFIERS)!!
+        val superClass: String? get() = symbol(classTable, id, C_SUPER_CLASS)
+        val interfaces: List<String>
+            get() = rangeList(classTable[id, C_FIRST_INTERFACE], classTable[id, C_INTERFACE_COUNT]) { symbols.symbolOf(interfaceTable[it, 0])!! }
+        val relations: List<StaticRelationEntity>
+            get() = rangeList(classTable[id, C_FIRST_RELATION], classTable[id, C_RELATION_COUNT]) {
+                StaticRelationEntity(symbol(relationTable, it, R_TYPE)!!, symbol(relationTable, it, R_TARGET)!!)
+            }
+        val annotations: List<AnnotationEntity> get() = annotationGroup(classTable[id, C_ANNOTATIONS]).annotations
+        val features: List<FeatureEntity> get() = annotationGroup(classTable[id, C_ANNOTATIONS]).features
+        val mappings: List<MappingEntity> get() = annotationGroup(classTable[id, C_ANNOTATIONS]).mappings
+        val fields: List<FieldView> get() = rangeList(classTable[id, C_FIRST_FIELD], classTable[id, C_FIELD_COUNT]) { FieldView(it) }
+        val methods: List<MethodView> get() = rangeList(classTable[id, C_FIRST_METHOD], classTable[id, C_METHOD_COUNT]) { MethodView(it) }
+        val sourceCodeLocation: SourceCodeLocation? get() = location(classTable, id, C_LOCATION)
+        val complexityMetrics: ComplexityMetrics?
+            get() = if (classTable[id, C_HAS_METRICS] == 0) null else ComplexityMetrics(classTable[id, C_CYCLOMATIC], classTable[id, C_NESTING], classTable[id, C_BRANCHES])
+        val embedding: Embedding? get() = embedding(classTable, id, C_EMBEDDING)
+
+        /**
+         * Materializes the class with all its members.
+         */
+        fun toEntity(): IRClassEntity {
+            return IRClassEntity(
+                name = name,
+                type = type,
+                packageName = packageName,
+                filePath = filePath,
+                modifiers = modifiers,
+                superClass = superClass,
+                interfaces = interfaces.toList(),
+                annotations = annotations,
+                features = features,
+                mappings = mappings,
+                fields = fields.map { it.toEntity() },
+                methods = methods.map { it.toEntity() },
+                relations = relations.toList(),
+                sourceCodeLocation = sourceCodeLocation,
+                complexityMetrics = complexityMetrics,
+                embedding = embedding
+            )
+        }
+    }
+
+    /**
+     * A view of a stored field that decodes its columns on access.
+     *
+     * @property id The id of the field in the store.
+     */
+    inner class FieldView internal constructor(val id: Int) {
+        val name: String get() = symbol(fieldTable, id, F_NAME)!!
+        val type: String get() = symbol(fieldTable, id, F_TYPE)!!
+        val modifiers: String get() = symbol(fieldTable, id, F_MODIFIERS)!!
+        val annotations: List<AnnotationEntity> get() = annotationGroup(fieldTable[id, F_ANNOTATIONS]).annotations
+        val features: List<FeatureEntity> get() = annotationGroup(fieldTable[id, F_ANNOTATIONS]).features
+        val mappings: List<MappingEntity> get() = annotationGroup(fieldTable[id, F_ANNOTATIONS]).mappings
+        val sourceCodeLocation: SourceCodeLocation? get() = location(fieldTable, id, F_LOCATION)
+        val embedding: Embedding? get() = embedding(fieldTable, id, F_EMBEDDING)
+
+        /**
+         * Materializes the field.
+         */
+        fun toEntity(): IRFieldEntity {
+            return IRFieldEntity(
+                name = name,
+                type = type,
+                modifiers = modifiers,
+                annotations = annotations,
+                features = features,
+                mappings = mappings,
+                sourceCodeLocation = sourceCodeLocation,
+                embedding = embedding
+            )
+        }
+    }
+
+    /**
+     * A view of a stored method that decodes its columns on access.
+     *
+     * @property id The id of the method in the store.
+     */
+    inner class MethodView internal constructor(val id: Int) {
+        val name: String get() = symbol(methodTable, id, M_NAME)!!
+        val returnType: String get() = symbol(methodTable, id, M_RETURN_TYPE)!!
+        val modifiers: String get() = symbol(methodTable, id, M_MODIFIERS)!!
+        val parameters: List<StaticParameterEntity>
+            get() = rangeList(methodTable[id, M_FIRST_PARAMETER], methodTable[id, M_PARAMETER_COUNT]) {
+                StaticParameterEntity(symbol(parameterTable, it, P_NAME)!!, symbol(parameterTable, it, P_TYPE)!!, location(parameterTable, it, P_LOCATION))
+            }
+        val annotations: List<AnnotationEntity> get() = annotationGroup(methodTable[id, M_ANNOTATIONS]).annotations
+        val features: List<FeatureEntity> get() = annotationGroup(methodTable[id, M_ANNOTATIONS]).features
+        val mappings: List<MappingEntity> get() = annotationGroup(methodTable[id, M_ANNOTATIONS]).mappings
+        val calledMethods: List<StaticCallEntity>
+            get() = rangeList(methodTable[id, M_FIRST_CALL], methodTable[id, M_CALL_COUNT]) { call ->
+                StaticCallEntity(
+                    methodName = symbol(callTable, call, K_METHOD_NAME)!!,
+                    arguments = rangeList(callTable[call, K_FIRST_ARGUMENT], callTable[call, K_ARGUMENT_COUNT]) {
+                        text(argumentTable, it, T_OFFSET).toString()
+                    }.toList(),
+                    sourceCodeLocation = location(callTable, call, K_LOCATION),
+                    declaringType = symbol(callTable, call, K_DECLARING_TYPE),
+                    signature = symbol(callTable, call, K_SIGNATURE)
+                )
+            }
+
+        /** The top-level statements of the method body, or `null` if the method has no low-level AST. */
+        val statements: List<StatementView>?
+            get() {
+                val count = methodTable[id, M_STATEMENT_COUNT]
+                return if (count < 0) null else rangeList(methodTable[id, M_FIRST_STATEMENT], count) { StatementView(it) }
+            }
+        /** Whether statements of the method body were left out because of the statement budget. */
+        val astTruncated: Boolean get() = methodTable[id, M_AST_TRUNCATED] != 0
+        val sourceCodeLocation: SourceCodeLocation? get() = location(methodTable, id, M_LOCATION)
+        val complexityMetrics: ComplexityMetrics?
+            get() = if (methodTable[id, M_HAS_METRICS] == 0) null else ComplexityMetrics(methodTable[id, M_CYCLOMATIC], methodTable[id, M_NESTING], methodTable[id, M_BRANCHES])
+        val embedding: Embedding? get() = embedding(methodTable, id, M_EMBEDDING)
+
+        /**
+         * Materializes the method with its parameters, calls and low-level AST.
+         */
+        fun toEntity(): IRMethodEntity {
+            return IRMethodEntity(
+                name = name,
+                returnType = returnType,
+                parameters = parameters.toList(),
+                modifiers = modifiers,
+                annotations = annotations,
+                features = features,
+                mappings = mappings,
+                calledMethods = calledMethods.toList(),
+                lowLevelAST = statements?.let { statements -> LowLevelAST(statements.map { it.toEntity() }, astTruncated) },
+                sourceCodeLocation = sourceCodeLocation,
+                complexityMetrics = complexityMetrics,
+                embedding = embedding
+            )
+        }
+    }
+
+    /**
+     * A view of a stored statement that decodes its columns on access.
+     *
+     * @property id The id of the statement in the store.
+     */
+    inner class StatementView internal constructor(val id: Int) {
+        val type: String get() = symbol(statementTable, id, S_TYPE)!!
+
+        /** The text of the statement, a view of the off-heap text that is only copied when converted to a String. */
+        val expression: CharSequence? get() = text(statementTable, id, S_TEXT_OFFSET)
+        val subStatements: List<StatementView>?
+            get() {
+                val count = statementTable[id, S_CHILD_COUNT]
+                return if (count < 0) null else rangeList(statementTable[id, S_FIRST_CHILD], count) { StatementView(it) }
+            }
+        val sourceCodeLocation: SourceCodeLocation? get() = location(statementTable, id, S_LOCATION)
+
+        /**
+         * Materializes the statement with its sub-statements.
+         */
+        fun toEntity(): StaticStatementEntity {
+            return StaticStatementEntity(
+                type = type,
+                expressionText = expression,
+                subStatements = subStatements?.map { it.toEntity() },
+                sourceCodeLocation = sourceCodeLocation
+            )
+        }
+    }
+
+    private companion object {
+        val NO_ANNOTATIONS = AnnotationGroup(emptyList(), emptyList(), emptyList())
+
+        // Class columns
+        const val C_NAME = 0
+        const val C_TYPE = 1
+        const val C_PACKAGE = 2
+        const val C_FILE_PATH = 3
+        const val C_MODIFIERS = 4
+        const val C_SUPER_CLASS = 5
+        const val C_FIRST_INTERFACE = 6
+        const val C_INTERFACE_COUNT = 7
+        const val C_FIRST_RELATION = 8
+        const val C_RELATION_COUNT = 9
+        const val C_FIRST_FIELD = 10
+        const val C_FIELD_COUNT = 11
+        const val C_FIRST_METHOD = 12
+        const val C_METHOD_COUNT = 13
+        const val C_ANNOTATIONS = 14
+        const val C_CYCLOMATIC = 15
+        const val C_NESTING = 16
+        const val C_BRANCHES = 17
+        const val C_LOCATION = 18
+        const val C_EMBEDDING = 23
+        const val C_HAS_METRICS = 27
+        const val CLASS_COLUMNS = 28
+
+        // Field columns
+        const val F_NAME = 0
+        const val F_TYPE = 1
+        const val F_MODIFIERS = 2
+        const val F_ANNOTATIONS = 3
+        const val F_LOCATION = 4
+        const val F_EMBEDDING = 9
+        const val FIELD_COLUMNS = 13
+
+        // Method columns
+        const val M_NAME = 0
+        const val M_RETURN_TYPE = 1
+        const val M_MODIFIERS = 2
+        const val M_ANNOTATIONS = 3
+        const val M_FIRST_PARAMETER = 4
+        const val M_PARAMETER_COUNT = 5
+        const val M_FIRST_CALL = 6
+        const val M_CALL_COUNT = 7
+        const val M_FIRST_STATEMENT = 8
+        const val M_STATEMENT_COUNT = 9
+        const val M_HAS_METRICS = 10
+        const val M_CYCLOMATIC = 11
+        const val M_NESTING = 12
+        const val M_BRANCHES = 13
+        const val M_LOCATION = 14
+        const val M_EMBEDDING = 19
+        const val M_AST_TRUNCATED = 23
+        const val METHOD_COLUMNS = 24
+
+        // Parameter columns
+        const val P_NAME = 0
+        const val P_TYPE = 1
+        const val P_LOCATION = 2
+        const val PARAMETER_COLUMNS = 7
+
+        // Call columns
+        const val K_METHOD_NAME = 0
+        const val K_DECLARING_TYPE = 1
+        const val K_SIGNATURE = 2
+        const val K_FIRST_ARGUMENT = 3
+        const val K_ARGUMENT_COUNT = 4
+        const val K_LOCATION = 5
+        const val CALL_COLUMNS = 10
+
+        // Statement columns
+        const val S_TYPE = 0
+        const val S_TEXT_OFFSET = 1
+        const val S_FIRST_CHILD = 3
+        const val S_CHILD_COUNT = 4
+        const val S_LOCATION = 5
+        const val STATEMENT_COLUMNS = 10
+
+        // Relation columns
+        const val R_TYPE = 0
+        const val R_TARGET = 1
+        const val RELATION_COLUMNS = 2
+
+        // Text columns: offset and length
+        const val T_OFFSET = 0
+        const val TEXT_COLUMNS = 2
+    }
+}
@@ -0,0 +1,25 @@
+package org.protogalaxy.fractalfathom.cli.analysis.store
+
+/**
+ * Enum representing where the IR of a project is held between the analysis and the diagram generation.
+ *
+ * @property option The name of the backend on the command line.
+ */
+enum class IRBackend(val option: String) {
+    OBJECTS("objects"),     // A list of IRClassEntity object graphs on the heap
+    COLUMNAR("columnar");   // A ColumnarIRStore with off-heap columns
+
+    companion object {
+        /**
+         * Resolves a backend from its command line name, e.g. `columnar`.
+         *
+         * @param name The case-insensitive name of the backend.
+         * @return The matching backend.
+         * @throws IllegalArgumentException if no backend has the given name.
+         */
+        fun fromOption(name: String): IRBackend {
+            return entries.firstOrNull { it.option.equals(name, ignoreCase = true) }
+                ?: throw IllegalArgumentException("Unknown IR backend '$name', expected one of ${entries.joinToString { it.option }}")
+        }
+    }
+}
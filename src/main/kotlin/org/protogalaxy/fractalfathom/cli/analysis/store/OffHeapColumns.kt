@@ -0,0 +1,171 @@
+package org.protogalaxy.fractalfathom.cli.analysis.store
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.CharBuffer
+
+// Direct buffers are limited to Int.MAX_VALUE bytes; leave some headroom like the JDK collections do
+private const val MAX_BUFFER_BYTES = Int.MAX_VALUE - 8
+
+/**
+ * Allocates a native-ordered direct buffer holding the content of `old` and room for at least `required` bytes.
+ */
+private fun grow(old: ByteBuffer, used: Int, required: Int): ByteBuffer {
+    if (required > MAX_BUFFER_BYTES) throw IllegalStateException("Off-heap column exceeds $MAX_BUFFER_BYTES bytes")
+    val capacity = maxOf(required.toLong(), old.capacity() * 2L).coerceAtMost(MAX_BUFFER_BYTES.toLong()).toInt()
+    val buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder())
+    buffer.put(old.duplicate().position(0).limit(used))
+    return buffer.clear()
+}
+
+/**
+ * A table of int columns stored off-heap, one direct buffer per column.
+ *
+ * Rows are identified by their index; all columns grow together when a row is added.
+ *
+ * @param columnCount The number of columns of the table.
+ */
+internal class IntTable(private val columnCount: Int, initialRows: Int = 1024) {
+
+    private val columns = Array(columnCount) { ByteBuffer.allocateDirect(initialRows * 4).order(ByteOrder.nativeOrder()) }
+
+    /** The number of rows of the table. */
+    var size = 0
+        private set
+
+    /** The number of bytes allocated outside the heap. */
+    val offHeapBytes: Long
+        get() = columns.sumOf { it.capacity().toLong() }
+
+    /**
+     * Adds `count` rows whose values are all zero and returns the index of the first one.
+     */
+    fun addRows(count: Int = 1): Int {
+        val first = size
+        val required = (size + count) * 4
+        for (i in 0 until columnCount) {
+            if (required > columns[i].capacity()) columns[i] = grow(columns[i], size * 4, required)
+        }
+        size += count
+        return first
+    }
+
+    operator fun get(row: Int, column: Int): Int = columns[column].getInt(row * 4)
+
+    operator fun set(row: Int, column: Int, value: Int) {
+        columns[column].putInt(row * 4, value)
+    }
+}
+
+/**
+ * An append-only heap of UTF-16 text stored off-heap.
+ *
+ * Text is addressed by its offset and length in chars; [slice] returns a view of the stored chars, so
+ * reading text does not copy it until the view is converted to a String.
+ */
+internal class CharHeap(initialChars: Int = 64 * 1024) {
+
+    private var buffer = ByteBuffer.allocateDirect(initialChars * 2).order(ByteOrder.nativeOrder())
+    private var chars: CharBuffer = buffer.asCharBuffer()
+
+    /** The number of chars stored. */
+    var size = 0
+        private set
+
+    /** The number of bytes allocated outside the heap. */
+    val offHeapBytes: Long
+        get() = buffer.capacity().toLong()
+
+    /**
+     * Appends text and returns the offset of its first char.
+     */
+    fun append(text: CharSequence): Int {
+        val offset = size
+        val required = (size + text.length).toLong() * 2
+        if (required > buffer.capacity()) {
+            if (required > MAX_BUFFER_BYTES) throw IllegalStateException("Off-heap text exceeds $MAX_BUFFER_BYTES bytes")
+            buffer = grow(buffer, size * 2, required.toInt())
+            chars = buffer.asCharBuffer()
+        }
+        for (i in text.indices) chars.put(offset + i, text[i])
+        size += text.length
+        return offset
+    }
+
+    /**
+     * Returns a read-only view of the text at the given offset.
+     */
+    fun slice(offset: Int, length: Int): CharSequence = chars.asReadOnlyBuffer().position(offset).limit(offset + length).slice()
+}
+
+/**
+ * An append-only heap of embedding values stored off-heap, either as floats or as quantized bytes.
+ */
+internal class VectorHeap(initialBytes: Int = 64 * 1024) {
+
+    private var buffer = ByteBuffer.allocateDirect(initialBytes).order(ByteOrder.nativeOrder())
+
+    /** The number of bytes stored. */
+    var size = 0
+        private set
+
+    /** The number of bytes allocated outside the heap. */
+    val offHeapBytes: Long
+        get() = buffer.capacity().toLong()
+
+    private fun reserve(bytes: Int): Int {
+        // Floats are kept aligned to four bytes
+        val offset = (size + 3) and 3.inv()
+        val required = offset.toLong() + bytes
+        if (required > buffer.capacity()) {
+            if (required > MAX_BUFFER_BYTES) throw IllegalStateException("Off-heap vectors exceed $MAX_BUFFER_BYTES bytes")
+            buffer = grow(buffer, size, required.toInt())
+        }
+        size = offset + bytes
+        return offset
+    }
+
+    /** Appends floats and returns the byte offset of the first one. */
+    fun appendFloats(count: Int, value: (Int) -> Float): Int {
+        val offset = reserve(count * 4)
+        for (i in 0 until count) buffer.putFloat(offset + i * 4, value(i))
+        return offset
+    }
+
+    /** Appends bytes and returns the offset of the first one. */
+    fun appendBytes(count: Int, value: (Int) -> Byte): Int {
+        val offset = reserve(count)
+        for (i in 0 until count) buffer.put(offset + i, value(i))
+        return offset
+    }
+
+    fun getFloat(offset: Int, index: Int): Float = buffer.getFloat(offset + index * 4)
+
+    fun getByte(offset: Int, index: Int): Byte = buffer.get(offset + index)
+}
+
+/**
+ * A dictionary assigning dense int ids to the distinct symbols of the IR, such as names and types.
+ *
+ * Symbols are few compared to the rows referring to them, so the dictionary itself stays on the heap.
+ * Id `-1` stands for `null`.
+ */
+internal class StringDictionary {
+
+    private val ids = HashMap<String, Int>()
+    private val symbols = ArrayList<String>()
+
+    /** The number of distinct symbols. */
+    val size: Int
+        get() = symbols.size
+
+    fun idOf(symbol: String?): Int {
+        if (symbol == null) return -1
+        return ids.getOrPut(symbol) {
+            symbols.add(symbol)
+            symbols.size - 1
+        }
+    }
+
+    fun symbolOf(id: Int): String? = if (id < 0) null else symbols[id]
+}
@@ -0,0 +1,180 @@
+package org.protogalaxy.fractalfathom.cli.modelInference
+
+import kotlinx.coroutines.channels.Channel
+
+/**
+ * Bounds and targets of the adaptive batching of embedding requests.
+ *
+ * @property minBatchTokens The smallest token budget of a batch.
+ * @property maxBatchTokens The largest token budget of a batch.
+ * @property initialBatchTokens The token budget of the first batches.
+ * @property maxBatchSize The largest number of entities in a batch, however short their snippets are.
+ * @property minConcurrency The smallest number of requests kept in flight.
+ * @property maxConcurrency The largest number of requests kept in flight.
+ * @property initialConcurrency The number of requests in flight at the start of a run.
+ * @property targetLatencyMillis The latency of a request the controller steers towards. Faster requests grow
+ * the batches and the concurrency, slower ones shrink them.
+ * @property batchTokensStep The number of tokens added to the budget after every fast request.
+ * @property maxAttempts How often a batch is sent before its failure aborts the run. A failed batch is split in
+ * halves before it is sent again.
+ */
+data class AdaptiveBatching(
+    val minBatchTokens: Int = 256,
+    val maxBatchTokens: Int = 32_768,
+    val initialBatchTokens: Int = 2_048,
+    val maxBatchSize: Int = 256,
+    val minConcurrency: Int = 1,
+    val maxConcurrency: Int = 16,
+    val initialConcurrency: Int = 2,
+    val targetLatencyMillis: Long = 1_000,
+    val batchTokensStep: Int = 256,
+    val maxAttempts: Int = 3
+) {
+
+    init {
+        require(minBatchTokens in 1..maxBatchTokens) { "minBatchTokens must be between 1 and maxBatchTokens" }
+        require(initialBatchTokens in minBatchTokens..maxBatchTokens) { "initialBatchTokens must be within the token bounds" }
+        require(maxBatchSize > 0) { "maxBatchSize must be positive" }
+        require(minConcurrency in 1..maxConcurrency) { "minConcurrency must be between 1 and maxConcurrency" }
+        require(initialConcurrency in minConcurrency..maxConcurrency) { "initialConcurrency must be within the concurrency bounds" }
+        require(targetLatencyMillis > 0) { "targetLatencyMillis must be positive" }
+        require(maxAttempts > 0) { "maxAttempts must be positive" }
+    }
+}
+
+/**
+ * Decides how large the batches of embedding requests are and how many of them are in flight.
+ *
+ * Without [AdaptiveBatching], batches have a fixed number of entities and a fixed number of requests is in
+ * flight. Otherwise both follow the additive-increase/multiplicative-decrease (AIMD) scheme of TCP congestion
+ * control, driven by the measured latency of every request:
+ *
+ * - a request faster than the target latency adds a step to the token budget of the batches, and a window of
+ *   such requests (one per request in flight) adds one request to the concurrency;
+ * - a slower request scales the token budget down by the ratio of target and measured latency, at most by half,
+ *   and removes a quarter of the concurrency;
+ * - a failed request halves both.
+ *
+ * Batches are cut by the estimated number of tokens of their snippets rather than by entities, so that the
+ * latency of a request does not depend on whether it holds fields or whole classes. The server pads the
+ * snippets of a batch to the longest one, so the tokens of a batch are counted as its number of entities times
+ * the tokens of its longest snippet. Decreases are applied at most once per window, since the requests in flight
+ * when the server slows down all report the same overload.
+ *
+ * @param batchSize The number of entities of a batch without adaptive batching.
+ * @param maxConcurrentRequests The number of requests in flight without adaptive batching.
+ * @param adaptive The bounds of the adaptive batching, or `null` to keep the batches fixed.
+ */
+class BatchController(
+    private val batchSize: Int,
+    private val maxConcurrentRequests: Int,
+    val adaptive: AdaptiveBatching? = null
+) {
+
+    // Permits for requests; a lower concurrency is applied by not returning permits
+    private val permits = Channel<Unit>(Channel.UNLIMITED)
+    private var permitDebt = 0
+
+    private var successesInWindow = 0
+    private var requestsSinceDecrease = 0
+
+    /**
+     * The current token budget of a batch, only used with adaptive batching.
+     */
+    var batchTokens: Int = adaptive?.initialBatchTokens ?: 0
+        @Synchronized get
+        private set
+
+    /**
+     * The current number of requests kept in flight.
+     */
+    var concurrency: Int = adaptive?.initialConcurrency ?: maxConcurrentRequests
+        @Synchronized get
+        private set
+
+    init {
+        repeat(concurrency) { permits.trySend(Unit) }
+    }
+
+    /**
+     * Returns whether a batch is full and has to be sent before another entity is added.
+     *
+     * @param entityCount The number of entities of the batch.
+     * @param tokenCount The estimated number of tokens of their snippets, padded to the longest one.
+     */
+    fun isFull(entityCount: Int, tokenCount: Int): Boolean {
+        val bounds = adaptive ?: return entityCount >= batchSize
+        return entityCount >= bounds.maxBatchSize || tokenCount >= batchTokens
+    }
+
+    /**
+     * Suspends until another request may be sent.
+     */
+    suspend fun acquire() {
+        permits.receive()
+    }
+
+    /**
+     * Returns the permit of a finished request and adapts the batches to its outcome.
+     *
+     * @param latencyNanos How long the request took.
+     * @param tokenCount The estimated number of tokens sent in the request, padded to the longest snippet.
+     * @param failed Whether the request failed.
+     */
+    @Synchronized
+    fun release(latencyNanos: Long, tokenCount: Int, failed: Boolean = false) {
+        if (permitDebt > 0) permitDebt-- else permits.trySend(Unit)
+        val bounds = adaptive ?: return
+        requestsSinceDecrease++
+
+        val latencyMillis = latencyNanos / 1_000_000
+        when {
+            failed -> decrease(bounds, 0.5, 0.5)
+            latencyMillis > bounds.targetLatencyMillis -> {
+                // Scale the budget to what would have met the target, relative to the tokens actually sent
+                val ratio = bounds.targetLatencyMillis.toDouble() / latencyMillis * tokenCount / batchTokens
+                decrease(bounds, ratio.coerceIn(0.5, 1.0), 0.75)
+            }
+            else -> {
+                batchTokens = minOf(bounds.maxBatchTokens, batchTokens + bounds.batchTokensStep)
+                if (++successesInWindow >= concurrency && concurrency < bounds.maxConcurrency) {
+                    successesInWindow = 0
+                    setConcurrency(concurrency + 1)
+                }
+            }
+        }
+    }
+
+    private fun decrease(bounds: AdaptiveBatching, batchFactor: Double, concurrencyFactor: Double) {
+        successesInWindow = 0
+        if (requestsSinceDecrease < concurrency) return
+        requestsSinceDecrease = 0
+        batchTokens = maxOf(bounds.minBatchTokens, (batchTokens * batchFactor).toInt())
+        setConcurrency(maxOf(bounds.minConcurrency, (concurrency * concurrencyFactor).toInt()))
+    }
+
+    private fun setConcurrency(value: Int) {
+        var delta = value - concurrency
+        concurrency = value
+        // Settle debt before adding permits; take back unused permits before owing them
+        while (delta > 0 && permitDebt > 0) {
+            permitDebt--
+            delta--
+        }
+        repeat(delta.coerceAtLeast(0)) { permits.trySend(Unit) }
+        while (delta < 0 && permits.tryReceive().isSuccess) delta++
+        if (delta < 0) permitDebt -= delta
+    }
+
+    companion object {
+        /**
+         * The number of tokens the model server reads of a snippet; longer snippets are truncated.
+         */
+        const val MAX_SNIPPET_TOKENS = 512
+
+        /**
+         * Estimates the number of model tokens of a snippet, about four characters per token for code.
+         */
+        fun estimateTokens(snippet: String): Int = minOf(MAX_SNIPPET_TOKENS, (snippet.length + 3) / 4 + 2)
+    }
+}
@@ -0,0 +1,368 @@
+package org.protogalaxy.fractalfathom.cli.modelInference
+
+import java.io.File
+import java.io.IOException
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+
+/**
+ * A persistent on-disk cache of the embeddings returned by the model server.
+ *
+ * An embedding is keyed by a 128-bit hash ([SnippetKey]) of the snippet sent to the server, after it has been
+ * merged with its context, and of the model id, so a snippet that did not change since the last run is never sent
+ * again. The cache consists of two memory-mapped files:
+ *
+ * - `embeddings.f32` holds the vectors as little-endian float32 values, one fixed-size slot per entry;
+ * - `embeddings.idx` holds a header and an open-addressing hash table from the key of a snippet to its slot,
+ *   with the time the entry was last used.
+ *
+ * Looking up a snippet hashes its chars and probes the mapped table without allocating; only copying a hit
+ * into a new array allocates. When the vectors would exceed `maxBytes`, the least recently used quarter of the
+ * entries is evicted.
+ *
+ * All methods are synchronized, so a cache can be shared by the workers sending requests.
+ *
+ * @param cacheDir The directory holding the cache files. It is created on first write.
+ * @param modelId The id of the model computing the embeddings, mixed into every key.
+ * @param maxBytes The largest size of the vector file, at most [MAX_BYTES]; the index takes about half as much again.
+ */
+class EmbeddingCache(
+    private val cacheDir: File,
+    modelId: String,
+    private val maxBytes: Long = DEFAULT_MAX_BYTES
+) {
+
+    private val seed = SnippetKey.high(modelId, MODEL_SEED)
+
+    private var index: MappedByteBuffer? = null
+    private var vectors: MappedByteBuffer? = null
+
+    /** The number of values of a cached embedding, or 0 while the cache is empty. */
+    var dimension = 0
+        @Synchronized get
+        private set
+
+    private var capacity = 0        // Slots of the hash table, a power of two
+    private var maxEntries = 0
+    private var count = 0
+    private var clock = 0L
+
+    private var hitCount = 0
+    private var missCount = 0
+    private var evictionCount = 0
+
+    /** The number of lookups answered from the cache since this instance was created. */
+    val hits: Int @Synchronized get() = hitCount
+
+    /** The number of lookups of snippets that were not cached since this instance was created. */
+    val misses: Int @Synchronized get() = missCount
+
+    /** The number of entries evicted since this instance was created. */
+    val evictions: Int @Synchronized get() = evictionCount
+
+    /** The number of cached embeddings. */
+    val size: Int @Synchronized get() = count
+
+    init {
+        require(maxBytes in 1..MAX_BYTES) { "maxBytes must be between 1 and $MAX_BYTES" }
+        open()
+    }
+
+    /**
+     * Looks up the embedding of a snippet and records the outcome as a hit or a miss.
+     *
+     * @param snippet The snippet sent to the model server.
+     * @return A copy of the cached embedding, or `null` if the snippet is not cached.
+     */
+    @Synchronized
+    fun get(snippet: CharSequence): FloatArray? {
+        val slot = find(snippet)
+        if (slot < 0) return null
+        return FloatArray(dimension).also { copyVector(slot, it) }
+    }
+
+    /**
+     * Looks up the embedding of a snippet without allocating and records the outcome as a hit or a miss.
+     *
+     * @param snippet The snippet sent to the model server.
+     * @param into The array receiving the embedding, with at least [dimension] values.
+     * @return Whether the snippet is cached.
+     */
+    @Synchronized
+    fun read(snippet: CharSequence, into: FloatArray): Boolean {
+        val slot = find(snippet)
+        if (slot < 0) return false
+        copyVector(slot, into)
+        return true
+    }
+
+    /**
+     * Stores the embedding of a snippet. Embeddings of another dimension than the cached ones are ignored.
+     *
+     * @param snippet The snippet sent to the model server.
+     * @param embedding The embedding returned for it.
+     */
+    @Synchronized
+    fun put(snippet: CharSequence, embedding: FloatArray) {
+        if (embedding.isEmpty()) return
+        try {
+            if (dimension == 0) {
+                create(embedding.size)
+                index!!.putInt(H_MAGIC, MAGIC)
+            }
+            if (embedding.size != dimension) return
+
+            val key1 = SnippetKey.high(snippet, seed)
+            val key2 = SnippetKey.low(snippet, seed)    // Never zero, which marks empty slots
+            var index = this.index!!
+            var slot = probe(index, key1, key2)
+            if (index.getLong(slotOffset(slot) + KEY_2) != 0L) return   // Already cached
+            if (count == maxEntries) {
+                // Eviction rewrites the files
+                evict()
+                index = this.index!!
+                slot = probe(index, key1, key2)
+            }
+
+            val entry = count++
+            val vectors = vectors!!
+            val base = entry.toLong() * dimension * Float.SIZE_BYTES
+            for (i in 0 until dimension) vectors.putFloat((base + i * Float.SIZE_BYTES).toInt(), embedding[i])
+            val offset = slotOffset(slot)
+            index.putLong(offset + KEY_1, key1)
+            index.putInt(offset + ENTRY, entry)
+            index.putLong(offset + LAST_USED, ++clock)
+            index.putLong(offset + KEY_2, key2)
+            index.putInt(H_COUNT, count)
+            index.putLong(H_CLOCK, clock)
+        } catch (e: IOException) {
+            println("Error writing embedding cache in directory: ${cacheDir.path}")
+            e.printStackTrace()
+        }
+    }
+
+    /**
+     * Writes the mapped files back to disk. Changes reach the files without it as well, once the operating
+     * system writes back the mapped pages.
+     */
+    @Synchronized
+    fun flush() {
+        index?.force()
+        vectors?.force()
+    }
+
+    // Returns the slot holding the snippet, updating its last use, or -1 on a miss
+    private fun find(snippet: CharSequence): Int {
+        val index = index
+        if (index == null) {
+            missCount++
+            return -1
+        }
+        val key1 = SnippetKey.high(snippet, seed)
+        val key2 = SnippetKey.low(snippet, seed)
+        val slot = probe(index, key1, key2)
+        val offset = slotOffset(slot)
+        if (index.getLong(offset + KEY_2) == 0L) {
+            missCount++
+            return -1
+        }
+        hitCount++
+        index.putLong(offset + LAST_USED, ++clock)
+        index.putLong(H_CLOCK, clock)
+        return slot
+    }
+
+    // Linear probing; returns the slot holding the key or the empty slot where it belongs
+    private fun probe(index: MappedByteBuffer, key1: Long, key2: Long): Int {
+        val mask = capacity - 1
+        var slot = (key1 xor (key1 ushr 32)).toInt() and mask
+        while (true) {
+            val offset = slotOffset(slot)
+            val storedKey2 = index.getLong(offset + KEY_2)
+            if (storedKey2 == 0L || (storedKey2 == key2 && index.getLong(offset + KEY_1) == key1)) return slot
+            slot = (slot + 1) and mask
+        }
+    }
+
+    private fun copyVector(slot: Int, into: FloatArray) {
+        val vectors = vectors!!
+        val base = index!!.getInt(slotOffset(slot) + ENTRY).toLong() * dimension * Float.SIZE_BYTES
+        for (i in 0 until dimension) into[i] = vectors.getFloat((base + i * Float.SIZE_BYTES).toInt())
+    }
+
+    // Maps the files of a previous run, if they were written for the same model and format
+    private fun open() {
+        val indexFile = File(cacheDir, INDEX_FILE)
+        val vectorFile = File(cacheDir, VECTOR_FILE)
+        if (!indexFile.isFile || !vectorFile.isFile) return
+        try {
+            val index = map(indexFile, indexFile.length())
+            if (index.capacity() < HEADER_BYTES || index.getInt(H_MAGIC) != MAGIC || index.getInt(H_VERSION) != VERSION ||
+                index.getLong(H_MODEL) != seed
+            ) {
+                return
+            }
+            dimension = index.getInt(H_DIMENSION)
+            capacity = index.getInt(H_CAPACITY)
+            maxEntries = index.getInt(H_MAX_ENTRIES)
+            count = index.getInt(H_COUNT)
+            clock = index.getLong(H_CLOCK)
+            // The files are reused by smaller tables, so they may be longer than needed
+            if (index.capacity().toLong() < HEADER_BYTES + capacity.toLong() * SLOT_BYTES ||
+                vectorFile.length() < maxEntries.toLong() * dimension * Float.SIZE_BYTES
+            ) {
+                dimension = 0
+                return
+            }
+            this.index = index
+            vectors = map(vectorFile, maxEntries.toLong() * dimension * Float.SIZE_BYTES)
+
+            // A different size limit takes effect by rebuilding the files
+            if (maxEntriesFor(dimension) != maxEntries) rebuild(count)
+        } catch (e: IOException) {
+            // An unreadable cache is treated like a missing one and overwritten later
+            index = null
+            vectors = null
+            dimension = 0
+        }
+    }
+
+    // Clears the files for embeddings of the given dimension. The files are reused rather than deleted, since a
+    // mapped file cannot be deleted on Windows and the old mappings are only released by the garbage collector;
+    // the index is therefore zeroed, and it only becomes valid once the caller writes the magic number.
+    private fun create(dimension: Int) {
+        this.dimension = dimension
+        maxEntries = maxEntriesFor(dimension)
+        capacity = Integer.highestOneBit(maxEntries * 2 - 1) shl 1
+        count = 0
+        clock = 0
+
+        cacheDir.mkdirs()
+        val indexFile = File(cacheDir, INDEX_FILE)
+        val vectorFile = File(cacheDir, VECTOR_FILE)
+        index = null
+        vectors = null
+        val indexBytes = HEADER_BYTES + capacity * SLOT_BYTES
+        val reused = indexFile.length() > 0
+        val index = map(indexFile, indexBytes.toLong())
+        // Stale slots would point into the rewritten vectors; vector slots are always written before they are read
+        if (reused) for (offset in 0 until indexBytes step Long.SIZE_BYTES) index.putLong(offset, 0L)
+        index.putInt(H_VERSION, VERSION)
+        index.putLong(H_MODEL, seed)
+        index.putInt(H_DIMENSION, dimension)
+        index.putInt(H_CAPACITY, capacity)
+        index.putInt(H_MAX_ENTRIES, maxEntries)
+        index.putInt(H_COUNT, 0)
+        index.putLong(H_CLOCK, 0)
+        vectors = map(vectorFile, maxEntries.toLong() * dimension * Float.SIZE_BYTES)
+        this.index = index
+    }
+
+    // Evicts the least recently used quarter of the entries
+    private fun evict() {
+        val retained = maxEntries - maxOf(1, maxEntries / 4)
+        evictionCount += count - retained
+        rebuild(retained)
+    }
+
+    // Rewrites the files for the current size limit, keeping at most the `retained` most recently used entries.
+    // The kept vectors are moved to the front of the mapped vector file, so they are never copied onto the heap.
+    private fun rebuild(retained: Int) {
+        val index = index!!
+        val vectors = vectors!!
+        val keys1 = LongArray(count)
+        val keys2 = LongArray(count)
+        val lastUsed = LongArray(count)
+        val rowOfEntry = IntArray(count)    // Entries are numbered densely from 0
+        var n = 0
+        for (slot in 0 until capacity) {
+            val offset = slotOffset(slot)
+            if (index.getLong(offset + KEY_2) == 0L) continue
+            keys1[n] = index.getLong(offset + KEY_1)
+            keys2[n] = index.getLong(offset + KEY_2)
+            lastUsed[n] = index.getLong(offset + LAST_USED)
+            rowOfEntry[index.getInt(offset + ENTRY)] = n
+            n++
+        }
+        val keep = minOf(retained, maxEntriesFor(dimension), n)
+        // Every use takes a new clock value, so exactly `keep` entries were used at or after the threshold
+        val threshold = if (keep == 0) Long.MAX_VALUE else lastUsed.copyOf(n).also { it.sort() }[n - keep]
+
+        // In the order of their entries, every kept vector moves down or stays, so no vector is overwritten before
+        // it has been moved
+        val vectorBytes = dimension * Float.SIZE_BYTES
+        val keptRows = IntArray(keep)
+        var kept = 0
+        for (entry in 0 until n) {
+            val row = rowOfEntry[entry]
+            if (lastUsed[row] < threshold || kept == keep) continue
+            if (entry != kept) vectors.put(kept * vectorBytes, vectors, entry * vectorBytes, vectorBytes)
+            keptRows[kept++] = row
+        }
+
+        val savedClock = clock
+        create(dimension)
+        clock = savedClock
+        val newIndex = this.index!!
+        for (row in keptRows) {
+            val offset = slotOffset(probe(newIndex, keys1[row], keys2[row]))
+            newIndex.putLong(offset + KEY_1, keys1[row])
+            newIndex.putLong(offset + KEY_2, keys2[row])
+            newIndex.putLong(offset + LAST_USED, lastUsed[row])
+            newIndex.putInt(offset + ENTRY, count++)
+        }
+        newIndex.putInt(H_COUNT, count)
+        newIndex.putLong(H_CLOCK, clock)
+        newIndex.putInt(H_MAGIC, MAGIC)
+    }
+
+    // The hash table is kept at most half full and its file below 2 GB
+    private fun maxEntriesFor(dimension: Int): Int {
+        return (maxBytes / (dimension.toLong() * Float.SIZE_BYTES)).coerceIn(1L, MAX_TABLE_SLOTS / 2L).toInt()
+    }
+
+    private fun slotOffset(slot: Int): Int = HEADER_BYTES + slot * SLOT_BYTES
+
+    private fun map(file: File, size: Long): MappedByteBuffer {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE).use { channel ->
+            channel.map(FileChannel.MapMode.READ_WRITE, 0, size).apply { order(ByteOrder.LITTLE_ENDIAN) }
+        }
+    }
+
+    companion object {
+        /** The default size limit of the vector file, 256 MB. */
+        const val DEFAULT_MAX_BYTES = 256L * 1024 * 1024
+
+        /** The largest size limit of the vector file, which is mapped as a single buffer. */
+        const val MAX_BYTES = Int.MAX_VALUE.toLong()
+
+        private const val INDEX_FILE = "embeddings.idx"
+        private const val VECTOR_FILE = "embeddings.f32"
+
+        private const val MAGIC = 0x46464543    // "FFEC"
+        private const val VERSION = 1
+
+        // Header of the index file
+        private const val H_MAGIC = 0
+        private const val H_VERSION = 4
+        private const val H_MODEL = 8
+        private const val H_DIMENSION = 16
+        private const val H_CAPACITY = 20
+        private const val H_MAX_ENTRIES = 24
+        private const val H_COUNT = 28
+        private const val H_CLOCK = 32
+        private const val HEADER_BYTES = 64
+
+        // Slots of the hash table
+        private const val KEY_1 = 0
+        private const val KEY_2 = 8
+        private const val LAST_USED = 16
+        private const val ENTRY = 24
+        private const val SLOT_BYTES = 32
+        private const val MAX_TABLE_SLOTS = 1 shl 25
+
+        private const val MODEL_SEED = 0x2545F4914F6CDD1DL
+    }
+}
@@ -0,0 +1,45 @@
+package org.protogalaxy.fractalfathom.cli.modelInference
+
+/**
+ * Tuning options for [GraphCodeBERTUtils].
+ *
+ * @property endpointURL The URL of the embedding endpoint of the model server.
+ * @property batchSize The number of entities sent in a single request without adaptive batching. Batches are
+ * filled across class boundaries, so only the last batch of a run may be smaller.
+ * @property maxConcurrentRequests The number of requests kept in flight at the same time without adaptive
+ * batching.
+ * @property adaptiveBatching The bounds within which the batch size and the number of requests in flight adapt
+ * to the latency of the server, or `null` to use `batchSize` and `maxConcurrentRequests` as they are.
+ * @property modelId The id of the model computing the embeddings. Cached embeddings are only reused for the same
+ * id, so it has to change whenever the server computes embeddings differently.
+ * @property cacheMaxBytes The size limit of the vectors in the [EmbeddingCache].
+ * @property bucketByLength Whether batches are formed of snippets of similar length, so the server pads them
+ * less, instead of in declaration order.
+ */
+data class EmbeddingConfig(
+    val endpointURL: String = DEFAULT_ENDPOINT_URL,
+    val batchSize: Int = 10,
+    val maxConcurrentRequests: Int = 4,
+    val adaptiveBatching: AdaptiveBatching? = AdaptiveBatching(),
+    val modelId: String = DEFAULT_MODEL_ID,
+    val cacheMaxBytes: Long = EmbeddingCache.DEFAULT_MAX_BYTES,
+    val bucketByLength: Boolean = true
+) {
+
+    init {
+        require(batchSize > 0) { "batchSize must be positive" }
+        require(maxConcurrentRequests > 0) { "maxConcurrentRequests must be positive" }
+    }
+
+    companion object {
+        /**
+         * The embedding endpoint of the model server started from `server.py`.
+         */
+        const val DEFAULT_ENDPOINT_URL = "http://localhost:5000/generate_embeddings"
+
+        /**
+         * The model of `server.py`, whose embeddings are cut to 32 values.
+         */
+        const val DEFAULT_MODEL_ID = "microsoft/graphcodebert-base/32"
+    }
+}
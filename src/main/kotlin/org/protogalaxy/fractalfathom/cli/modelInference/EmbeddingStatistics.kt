@@ -0,0 +1,30 @@
+package org.protogalaxy.fractalfathom.cli.modelInference
+
+/**
+ * Counts of a single run of the embedding pipeline of [GraphCodeBERTUtils].
+ *
+ * @property entityCount The number of classes, fields and methods embedded.
+ * @property uniqueSnippetCount The number of distinct snippets among them.
+ * @property cachedSnippetCount The number of distinct snippets found in the [EmbeddingCache].
+ * @property requestCount The number of successful requests to the model server.
+ */
+data class EmbeddingStatistics(
+    val entityCount: Int,
+    val uniqueSnippetCount: Int,
+    val cachedSnippetCount: Int,
+    val requestCount: Int
+) {
+
+    /**
+     * The number of distinct snippets sent to the model server.
+     */
+    val sentSnippetCount: Int
+        get() = uniqueSnippetCount - cachedSnippetCount
+
+    /**
+     * The share of entities whose snippet equals that of an earlier entity and was therefore not embedded again,
+     * between 0 and 1.
+     */
+    val dedupRatio: Double
+        get() = if (entityCount == 0) 0.0 else 1.0 - uniqueSnippetCount.toDouble() / entityCount
+}
@@ -1,6 +1,7 @@
 package org.protogalaxy.fractalfathom.cli.modelInference
 
 import kotlinx.coroutines.*
+import kotlinx.coroutines.channels.Channel
 import okhttp3.*
 import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
 import com.fasterxml.jackson.module.kotlin.readValue
@@ -10,115 +11,329 @@ import org.protogalaxy.fractalfathom.cli.analysis.annotation.AnnotationEntity
 import org.protogalaxy.fractalfathom.cli.analysis.annotation.FeatureEntity
 import org.protogalaxy.fractalfathom.cli.analysis.annotation.MappingEntity
 import org.protogalaxy.fractalfathom.cli.analysis.ir.Embedding
+import org.protogalaxy.fractalfathom.cli.analysis.ir.EmbeddingStorage
 import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
 import org.protogalaxy.fractalfathom.cli.analysis.ir.IRFieldEntity
 import org.protogalaxy.fractalfathom.cli.analysis.ir.IRMethodEntity
+import org.protogalaxy.fractalfathom.cli.analysis.store.ColumnarIRStore
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * A utility class to enhance IR data with embeddings generated via the GraphCodeBERT API.
+ *
+ * The classes, fields and methods of all classes are flattened into a single stream of entities, which is
+ * cut into full batches of snippets of similar length regardless of class boundaries. Several requests are kept
+ * in flight, and the embeddings are reassembled into their classes as soon as all entities of a class are done.
+ * The size of the batches and the number of requests in flight adapt to the measured latency of the server, see
+ * [BatchController]. Entities with equal snippets are embedded once, and when an [EmbeddingCache] is given, only
+ * the snippets that are not cached are sent.
+ *
+ * @param embeddingStorage How the values of the generated embeddings are stored.
+ * @param config The endpoint and the batching of the requests.
+ * @param embeddingCache An optional cache of the embeddings of previous runs.
  */
-class GraphCodeBERTUtils {
+class GraphCodeBERTUtils(
+    private val embeddingStorage: EmbeddingStorage = EmbeddingStorage.FLOAT,
+    private val config: EmbeddingConfig = EmbeddingConfig(),
+    private val embeddingCache: EmbeddingCache? = null
+) {
 
     private val client = OkHttpClient() // HTTP client for API calls
     private val mapper = jacksonObjectMapper() // JSON serializer/deserializer
-    private val endpointURL = "http://localhost:5000/generate_embeddings" // API endpoint URL
-    private val batchSize = 10 // Number of entities processed per batch
+
+    /**
+     * The counts of the last run of [enhanceIRDataWithEmbeddings] or [enhanceStoreWithEmbeddings].
+     */
+    var lastStatistics: EmbeddingStatistics? = null
+        private set
+
+    /**
+     * An entity whose embedding is requested: the class itself (slot 0), one of its fields or one of its methods.
+     */
+    private class EntityRequest(val pending: PendingClass, val slot: Int, val codeSnippet: String) {
+        val key = SnippetKey.of(codeSnippet)
+        val tokens = BatchController.estimateTokens(codeSnippet)
+    }
+
+    /**
+     * A class whose entities are being embedded, completed when the last of its embeddings arrives.
+     */
+    private class PendingClass(val index: Int, val irClass: IRClassEntity) {
+        val vectors = arrayOfNulls<FloatArray>(1 + irClass.fields.size + irClass.methods.size)
+        val remaining = AtomicInteger(vectors.size)
+    }
+
+    /**
+     * The requests of a distinct snippet. Only the first one is embedded; the others wait for its embedding,
+     * until the embedding is known and `waiting` is `null`.
+     */
+    private class SnippetGroup {
+        var waiting: MutableList<EntityRequest>? = ArrayList(0)
+        var embedding: FloatArray? = null
+    }
+
+    /**
+     * A batch being filled with the requests of a length bucket.
+     */
+    private class OpenBatch {
+        var requests = ArrayList<EntityRequest>()
+            private set
+        private var longestTokens = 0
+
+        // The tokens of the batch once the server has padded every snippet to the longest one
+        val paddedTokens: Int
+            get() = requests.size * longestTokens
+
+        fun add(request: EntityRequest) {
+            requests.add(request)
+            longestTokens = maxOf(longestTokens, request.tokens)
+        }
+
+        fun take(): List<EntityRequest> {
+            val batch = requests
+            requests = ArrayList()
+            longestTokens = 0
+            return batch
+        }
+    }
+
+    /**
+     * The state of a single run of the pipeline.
+     */
+    private class PipelineRun(val controller: BatchController) {
+        val completedChannel = Channel<PendingClass>(capacity = Channel.UNLIMITED)
+        private val snippetGroups = HashMap<SnippetKey, SnippetGroup>()
+        var entityCount = 0
+        var cachedSnippetCount = 0
+        val requestCount = AtomicInteger()
+
+        /**
+         * Registers a request and returns whether its snippet has to be embedded, because it is the first request
+         * with this snippet. Any other request waits for the first one, or is completed right away.
+         */
+        fun isFirstOfSnippet(request: EntityRequest): Boolean {
+            val embedding: FloatArray?
+            synchronized(snippetGroups) {
+                entityCount++
+                val group = snippetGroups[request.key]
+                if (group == null) {
+                    snippetGroups[request.key] = SnippetGroup()
+                    return true
+                }
+                val waiting = group.waiting
+                if (waiting != null) {
+                    waiting.add(request)
+                    return false
+                }
+                embedding = group.embedding
+            }
+            complete(request, embedding)
+            return false
+        }
+
+        /**
+         * Completes the first request of a snippet and all requests waiting for it.
+         */
+        fun completeSnippet(request: EntityRequest, embedding: FloatArray?) {
+            val waiting = synchronized(snippetGroups) {
+                val group = snippetGroups.getValue(request.key)
+                group.embedding = embedding
+                group.waiting.also { group.waiting = null }
+            }
+            complete(request, embedding)
+            waiting?.forEach { complete(it, embedding) }
+        }
+
+        // Stores the embedding of an entity and passes its class on once the class is complete
+        private fun complete(request: EntityRequest, embedding: FloatArray?) {
+            request.pending.vectors[request.slot] = embedding
+            if (request.pending.remaining.decrementAndGet() == 0) completedChannel.trySend(request.pending)
+        }
+
+        fun statistics(): EmbeddingStatistics = synchronized(snippetGroups) {
+            EmbeddingStatistics(entityCount, snippetGroups.size, cachedSnippetCount, requestCount.get())
+        }
+    }
 
     /**
      * Enhance IR data by generating embeddings for classes, fields, and methods.
      *
      * @param irClasses List of IRClassEntity to enhance.
-     * @return List of IRClassEntity with embedded data.
+     * @return List of IRClassEntity with embedded data, in the order of `irClasses`.
      */
     fun enhanceIRDataWithEmbeddings(irClasses: List<IRClassEntity>): List<IRClassEntity> = runBlocking {
-        irClasses.map { irClass ->
-            // Prepare a list of entities (class, fields, methods) with their associated code snippets
-            val entityList = mutableListOf<Pair<String, String>>()
-
-            // Add class-level entities
-            val classId = "class_${irClass.name}"
-            val classText = irClass.toTextFormat()
-            val classContext = generateClassContext(irClass)
-            entityList.add(classId to mergeSnippetWithContext(classText, classContext))
-
-            // Add field-level entities
-            irClass.fields.forEach { field ->
-                val fieldId = "field_${irClass.name}_${field.name}"
-                val fieldText = "${field.name}: ${field.type}"
-                val fieldContext = generateFieldContext(field)
-                entityList.add(fieldId to mergeSnippetWithContext(fieldText, fieldContext))
-            }
+        val enhancedClasses = arrayOfNulls<IRClassEntity>(irClasses.size)
+        embedClasses(irClasses.asSequence()) { index, enhancedClass -> enhancedClasses[index] = enhancedClass }
+        enhancedClasses.map { it!! }
+    }
 
-            // Add method-level entities
-            irClass.methods.forEach { method ->
-                val methodId = "method_${irClass.name}_${method.name}"
-                val methodText = method.toTextFormat()
-                val methodContext = generateMethodContext(method)
-                entityList.add(methodId to mergeSnippetWithContext(methodText, methodContext))
-            }
+    /**
+     * Generate embeddings for the classes, fields, and methods of a columnar IR store and store them in it.
+     *
+     * The classes are materialized one at a time while the stream of entities is produced, and only the
+     * classes with entities in flight are held in memory.
+     *
+     * @param store The store holding the IR data.
+     */
+    fun enhanceStoreWithEmbeddings(store: ColumnarIRStore) = runBlocking {
+        embedClasses(store.asSequence()) { index, enhancedClass -> store.setEmbeddings(index, enhancedClass) }
+    }
 
-            // Call the GraphCodeBERT API in batches to generate embeddings
-            val embeddingsMap = callGraphCodeBERTAPIInBatches(entityList)
+    /**
+     * Runs the embedding pipeline over a sequence of classes.
+     *
+     * A producer cuts the entities of all classes into batches and sends each batch in its own request as soon as
+     * the [BatchController] allows another request in flight, so the next batch is cut with the latest batch size.
+     * With [EmbeddingConfig.bucketByLength], the entities are sorted into buckets by the estimated tokens of their
+     * snippets, and every bucket fills its own batch, so the server pads short snippets to about their own length
+     * rather than to the longest snippet nearby in declaration order. Each distinct snippet is only embedded once
+     * per run, and its embedding is shared by all entities with this snippet. Every completed class is passed to
+     * `onClassEmbedded` on the calling coroutine, in completion order. Since the producer waits for the requests,
+     * only the classes with entities in flight, and the embeddings of the distinct snippets, are held in memory.
+     *
+     * The producer runs on the dispatcher of the caller, like `onClassEmbedded`, since the classes may be read
+     * from a [ColumnarIRStore] that `onClassEmbedded` writes to; only the requests run on other threads.
+     *
+     * @param irClasses The classes to embed.
+     * @param onClassEmbedded Called with the position of a class in `irClasses` and the class with its embeddings.
+     */
+    private suspend fun embedClasses(
+        irClasses: Sequence<IRClassEntity>,
+        onClassEmbedded: (index: Int, enhancedClass: IRClassEntity) -> Unit
+    ) = coroutineScope {
+        val run = PipelineRun(BatchController(config.batchSize, config.maxConcurrentRequests, config.adaptiveBatching))
 
-            // Update fields with embeddings
-            val enhancedFields = irClass.fields.map { field ->
-                val fieldId = "field_${irClass.name}_${field.name}"
-                val embeddingValues = embeddingsMap[fieldId] ?: emptyList()
-                field.copy(embedding = Embedding(embeddingValues))
+        val producer = launch {
+            // Sends a full batch as soon as another request may be in flight
+            suspend fun send(batch: List<EntityRequest>) {
+                run.controller.acquire()
+                launch(Dispatchers.IO) { embedBatch(batch, run) }
             }
 
-            // Update methods with embeddings
-            val enhancedMethods = irClass.methods.map { method ->
-                val methodId = "method_${irClass.name}_${method.name}"
-                val embeddingValues = embeddingsMap[methodId] ?: emptyList()
-                method.copy(embedding = Embedding(embeddingValues))
+            val openBatches = Array(if (config.bucketByLength) LENGTH_BUCKET_BOUNDS.size else 1) { OpenBatch() }
+            irClasses.forEachIndexed { index, irClass ->
+                entityRequests(PendingClass(index, irClass)).forEach { request ->
+                    if (!run.isFirstOfSnippet(request)) return@forEach
+                    val cached = embeddingCache?.get(request.codeSnippet)
+                    if (cached != null) {
+                        run.cachedSnippetCount++
+                        run.completeSnippet(request, cached)
+                        return@forEach
+                    }
+                    val batch = openBatches[if (config.bucketByLength) lengthBucket(request.tokens) else 0]
+                    batch.add(request)
+                    if (run.controller.isFull(batch.requests.size, batch.paddedTokens)) send(batch.take())
+                }
             }
+            openBatches.forEach { batch -> if (batch.requests.isNotEmpty()) send(batch.take()) }
+        }
+        launch {
+            // The producer completes with the last of its requests
+            producer.join()
+            run.completedChannel.close()
+        }
 
-            // Update class with embeddings
-            val classEmbeddingValues = embeddingsMap[classId] ?: emptyList()
-            irClass.copy(
-                fields = enhancedFields,
-                methods = enhancedMethods,
-                embedding = Embedding(classEmbeddingValues)
-            )
+        for (pending in run.completedChannel) {
+            onClassEmbedded(pending.index, applyEmbeddings(pending))
         }
+        embeddingCache?.flush()
+        lastStatistics = run.statistics()
     }
 
     /**
-     * Perform concurrent and batched calls to the GraphCodeBERT API to generate embeddings.
-     *
-     * @param entities List of entities with IDs and code snippets.
-     * @return Map of entity IDs to their embedding vectors.
+     * Sends a batch for which a permit of the controller has been acquired, and completes the entities waiting
+     * for its snippets. With adaptive batching, a failed batch is split in halves and sent again.
      */
-    private suspend fun callGraphCodeBERTAPIInBatches(entities: List<Pair<String, String>>): Map<String, List<Double>> {
-        val entityBatches = entities.chunked(batchSize) // Split entities into batches
+    private suspend fun embedBatch(batch: List<EntityRequest>, run: PipelineRun, attempt: Int = 1) {
+        val tokenCount = batch.size * batch.maxOf { it.tokens }
+        val startTime = System.nanoTime()
+        val embeddings = try {
+            callGraphCodeBERTAPIBatch(batch.map { it.codeSnippet })
+        } catch (e: Exception) {
+            run.controller.release(System.nanoTime() - startTime, tokenCount, failed = true)
+            val maxAttempts = run.controller.adaptive?.maxAttempts ?: 1
+            if (attempt >= maxAttempts) throw e
 
-        return coroutineScope {
-            val deferredResults = entityBatches.map { batch ->
-                async {
-                    callGraphCodeBERTAPIBatch(batch)
-                }
+            delay(RETRY_DELAY_MILLIS * attempt)
+            batch.chunked((batch.size + 1) / 2).forEach { half ->
+                run.controller.acquire()
+                embedBatch(half, run, attempt + 1)
             }
+            return
+        }
+        run.controller.release(System.nanoTime() - startTime, tokenCount)
+        run.requestCount.incrementAndGet()
 
-            // Wait for all API calls to complete and merge their results
-            deferredResults.awaitAll()
-                .flatMap { it.entries }
-                .associate { it.key to it.value }
+        batch.forEachIndexed { position, request ->
+            val embedding = embeddings[position]
+            embedding?.let { embeddingCache?.put(request.codeSnippet, it) }
+            run.completeSnippet(request, embedding)
         }
     }
 
+    // The entities of a class with their associated code snippets
+    private fun entityRequests(pending: PendingClass): List<EntityRequest> {
+        return entitySnippets(pending.irClass).mapIndexed { slot, snippet -> EntityRequest(pending, slot, snippet) }
+    }
+
+    /**
+     * Returns the snippets sent to the model server for a class, its fields and its methods, in this order.
+     */
+    internal fun entitySnippets(irClass: IRClassEntity): List<String> {
+        val snippets = ArrayList<String>(1 + irClass.fields.size + irClass.methods.size)
+
+        // Add class-level entities
+        val classText = irClass.toTextFormat()
+        val classContext = generateClassContext(irClass)
+        snippets.add(mergeSnippetWithContext(classText, classContext))
+
+        // Add field-level entities
+        irClass.fields.forEach { field ->
+            val fieldText = "${field.name}: ${field.type}"
+            val fieldContext = generateFieldContext(field)
+            snippets.add(mergeSnippetWithContext(fieldText, fieldContext))
+        }
+
+        // Add method-level entities
+        irClass.methods.forEach { method ->
+            val methodText = method.toTextFormat()
+            val methodContext = generateMethodContext(method)
+            snippets.add(mergeSnippetWithContext(methodText, methodContext))
+        }
+        return snippets
+    }
+
+    // Update the class, its fields and its methods with their embeddings
+    private fun applyEmbeddings(pending: PendingClass): IRClassEntity {
+        val irClass = pending.irClass
+        val firstMethodSlot = 1 + irClass.fields.size
+        return irClass.copy(
+            fields = irClass.fields.mapIndexed { index, field -> field.copy(embedding = createEmbedding(pending.vectors[1 + index])) },
+            methods = irClass.methods.mapIndexed { index, method -> method.copy(embedding = createEmbedding(pending.vectors[firstMethodSlot + index])) },
+            embedding = createEmbedding(pending.vectors[0])
+        )
+    }
+
+    // Entities missing from the response get an empty embedding
+    private fun createEmbedding(values: FloatArray?): Embedding {
+        return Embedding(values ?: FloatArray(0)).withStorage(embeddingStorage)
+    }
+
     /**
      * Make a single batch API call to generate embeddings.
      *
-     * @param batch A batch of entities with IDs and code snippets.
-     * @return Map of entity IDs to their embedding vectors.
+     * The entities are identified on the wire by their position in the batch, since a batch holds entities of
+     * many classes, whose signatures need not be unique across modules and source roots.
+     *
+     * @param batch The code snippets of a batch of entities.
+     * @return The embedding vectors in the order of the snippets, `null` for entities missing from the response.
      */
-    private fun callGraphCodeBERTAPIBatch(batch: List<Pair<String, String>>): Map<String, List<Double>> {
+    private fun callGraphCodeBERTAPIBatch(batch: List<String>): List<FloatArray?> {
         val jsonData = mapper.writeValueAsString(
             mapOf(
-                "ir_entities" to batch.map { (id, code) ->
+                "ir_entities" to batch.mapIndexed { position, code ->
                     mapOf(
-                        "id" to id,
+                        "id" to position.toString(),
                         "code_snippet" to code
                     )
                 }
@@ -127,7 +342,7 @@ class GraphCodeBERTUtils {
         val requestBody = jsonData.toRequestBody("application/json".toMediaTypeOrNull())
 
         val request = Request.Builder()
-            .url(endpointURL)
+            .url(config.endpointURL)
             .post(requestBody)
             .build()
 
@@ -135,9 +350,11 @@ class GraphCodeBERTUtils {
             if (!response.isSuccessful) throw Exception("Unexpected code $response")
 
             val responseJson = response.body?.string() ?: throw Exception("Empty response body")
-            val responseMap: Map<String, Map<String, List<Double>>> = mapper.readValue(responseJson)
+            // The vectors are read directly into primitive arrays
+            val responseMap: Map<String, Map<String, FloatArray>> = mapper.readValue(responseJson)
 
-            return responseMap["embeddings"] ?: throw Exception("Invalid response format")
+            val embeddings = responseMap["embeddings"] ?: throw Exception("Invalid response format")
+            return List(batch.size) { position -> embeddings[position.toString()] }
         }
     }
 
@@ -219,7 +436,22 @@ class GraphCodeBERTUtils {
             Annotations: ${annotations.joinToString(", ") { it.name }}
             Features: $featureText
             Mappings: $mappingText
-            CalledMethods: ${calledMethods.joinToString(", ") { it.methodName }}
+            CalledMethods: ${calledMethods.joinToString(", ") { call -> call.declaringType?.let { "$it.${call.methodName}" } ?: call.methodName }}
         """.trimIndent()
     }
-}
\ No newline at end of file
+
+    companion object {
+        // The pause before a failed batch is sent again, multiplied by the number of the attempt
+        private const val RETRY_DELAY_MILLIS = 100L
+
+        // The largest estimated tokens of the snippets of each length bucket, growing by about the square root of
+        // two, so padding takes at most about a third of the tokens of a batch
+        private val LENGTH_BUCKET_BOUNDS = intArrayOf(16, 23, 32, 45, 64, 91, 128, 181, 256, 362, BatchController.MAX_SNIPPET_TOKENS)
+
+        // The length bucket of a snippet with the given estimated tokens
+        private fun lengthBucket(tokens: Int): Int {
+            val bucket = LENGTH_BUCKET_BOUNDS.binarySearch(tokens)
+            return if (bucket >= 0) bucket else minOf(-bucket - 1, LENGTH_BUCKET_BOUNDS.size - 1)
+        }
+    }
+}
@@ -6,11 +6,15 @@ import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
 import com.fasterxml.jackson.module.kotlin.readValue
 import okhttp3.MediaType.Companion.toMediaTypeOrNull
 import okhttp3.RequestBody.Companion.toRequestBody
+import org.protogalaxy.fractalfathom.cli.analysis.ElementSignature
 import org.protogalaxy.fractalfathom.cli.analysis.annotation.FeatureEntity
 import org.protogalaxy.fractalfathom.cli.analysis.annotation.MappingEntity
+import org.protogalaxy.fractalfathom.cli.analysis.callgraph.CallGraphIndex
+import org.protogalaxy.fractalfathom.cli.analysis.ir.ComplexityMetrics
 import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
 import org.protogalaxy.fractalfathom.cli.analysis.ir.IRFieldEntity
-import org.protogalaxy.fractalfathom.cli.analysis.ir.IRMethodEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticCallEntity
+import org.protogalaxy.fractalfathom.cli.analysis.store.ColumnarIRStore
 import java.io.File
 import java.util.concurrent.TimeUnit
 
@@ -39,10 +43,25 @@ class LLMUtils {
      * Generates PlantUML code for the given list of IRClassEntity objects.
      *
      * @param irClasses List of IRClassEntity containing code structure data.
+     * @param classBudget The maximum number of classes described in the prompt, or `null` for all classes.
      * @return A String containing the generated PlantUML code.
      */
-    fun generatePlantUML(irClasses: List<IRClassEntity>): String = runBlocking {
-        val prompt = constructPrompt(irClasses)
+    fun generatePlantUML(irClasses: List<IRClassEntity>, classBudget: Int? = null): String {
+        return generatePlantUML(constructPrompt(irClasses, classBudget))
+    }
+
+    /**
+     * Generates PlantUML code for the classes of a columnar IR store.
+     *
+     * @param store The store holding the code structure data.
+     * @param classBudget The maximum number of classes described in the prompt, or `null` for all classes.
+     * @return A String containing the generated PlantUML code.
+     */
+    fun generatePlantUML(store: ColumnarIRStore, classBudget: Int? = null): String {
+        return generatePlantUML(constructPrompt(store, classBudget))
+    }
+
+    private fun generatePlantUML(prompt: String): String = runBlocking {
         val promptFile = File("C:/Users/Solitude/Desktop/prompt_output.txt")
         promptFile.writeText(prompt)
         val plantUMLCode = callOpenAIAPI(prompt)
@@ -84,9 +103,33 @@ class LLMUtils {
      * Constructs a detailed prompt for GPT-4 based on the provided IR data.
      *
      * @param irClasses List of IRClassEntity objects to include in the prompt.
+     * @param classBudget The maximum number of classes described in the prompt, or `null` for all classes.
+     * When the project has more classes, the most complex ones are kept (see [selectClassesForPrompt]).
+     * The callers of every method are looked up in the call graph of all classes, so callers in classes left
+     * out by the budget are still listed.
+     * @return A String containing the prompt formatted for GPT-4.
+     */
+    fun constructPrompt(irClasses: List<IRClassEntity>, classBudget: Int? = null): String {
+        return constructPrompt(selectClassesForPrompt(irClasses, classBudget).asSequence(), CallGraphIndex.fromIR(irClasses))
+    }
+
+    /**
+     * Constructs the prompt for the classes of a columnar IR store.
+     *
+     * The classes are selected from the complexity columns of the store and materialized one at a time
+     * while the prompt is written, so the object graph of all classes never exists at once.
+     *
+     * @param store The store holding the code structure data.
+     * @param classBudget The maximum number of classes described in the prompt, or `null` for all classes.
      * @return A String containing the prompt formatted for GPT-4.
      */
-    fun constructPrompt(irClasses: List<IRClassEntity>): String {
+    fun constructPrompt(store: ColumnarIRStore, classBudget: Int? = null): String {
+        val classes = store.classes()
+        val selected = selectIndicesForPrompt(classes.size, classBudget) { classes[it].complexityMetrics }
+        return constructPrompt(selected.asSequence().map { classes[it].toEntity() }, CallGraphIndex.fromStore(store))
+    }
+
+    private fun constructPrompt(irClasses: Sequence<IRClassEntity>, callGraph: CallGraphIndex): String {
         val promptBuilder = StringBuilder()
         promptBuilder.append("""
             Using the following syntax and code structure data, generate a PlantUML class diagram organized by software functionality. 
@@ -97,7 +140,7 @@ class LLMUtils {
         promptBuilder.append("The syntax of the PlantUML class diagram are as follow:\n")
         appendSyntaxDescription(promptBuilder)
         promptBuilder.append("\nHere is the code structure data:\n")
-        irClasses.forEach { irClass -> appendClassData(promptBuilder, irClass) }
+        irClasses.forEach { irClass -> appendClassData(promptBuilder, irClass, callGraph) }
         appendAdditionalRequirements(promptBuilder)
 
         return promptBuilder.toString()
@@ -232,14 +275,17 @@ class LLMUtils {
         """.trimIndent())
     }
 
-    private fun appendClassData(builder: StringBuilder, irClass: IRClassEntity) {
+    private fun appendClassData(builder: StringBuilder, irClass: IRClassEntity, callGraph: CallGraphIndex) {
         builder.append("=== Class: ${irClass.name} (Type: ${irClass.type}) ===\n")
         irClass.embedding?.let { builder.append("Embeddings:\n  - ${it.values.joinToString(", ")}\n") }
         appendFeatures(builder, irClass.features, 0)
         appendMappings(builder, irClass.mappings, 0)
         appendRelations(builder, irClass.relations.map { "${it.relationType}: ${it.targetClass}" }, 0)
+        irClass.complexityMetrics?.let {
+            builder.append("Complexity: cyclomatic ${it.cyclomaticComplexity}, nesting ${it.nestingDepth}, branches ${it.branchCount}\n")
+        }
         appendFields(builder, irClass.fields, 0)
-        appendMethods(builder, irClass.methods, 0)
+        appendMethods(builder, irClass, callGraph, 0)
     }
 
     private fun appendFeatures(builder: StringBuilder, features: List<FeatureEntity>, indentLevel: Int) {
@@ -290,8 +336,9 @@ class LLMUtils {
     /**
      * Helper function to append method details to the prompt.
      */
-    private fun appendMethods(builder: StringBuilder, methods: List<IRMethodEntity>?, indentLevel: Int) {
-        methods?.takeIf { it.isNotEmpty() }?.let {
+    private fun appendMethods(builder: StringBuilder, irClass: IRClassEntity, callGraph: CallGraphIndex, indentLevel: Int) {
+        val methods = irClass.methods
+        methods.takeIf { it.isNotEmpty() }?.let {
             val currentIndent = " ".repeat(BASE_INDENT * indentLevel)
             builder.append("${currentIndent}Methods (${methods.size}):\n")
             methods.forEach { method ->
@@ -303,7 +350,68 @@ class LLMUtils {
                     })\n"
                 )
                 appendMappings(builder, method.mappings, indentLevel + BASE_INDENT)
+                appendCalls(builder, method.calledMethods, indentLevel)
+                appendCallers(builder, callGraph.callers(ElementSignature.of(irClass, method)), indentLevel)
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Helper function to append the distinct methods called by a method to the prompt.
+     */
+    private fun appendCalls(builder: StringBuilder, calls: List<StaticCallEntity>, indentLevel: Int) {
+        val calledMethods = calls.map { call -> call.declaringType?.let { "$it.${call.methodName}" } ?: call.methodName }.distinct()
+        if (calledMethods.isNotEmpty()) {
+            val currentIndent = " ".repeat(BASE_INDENT * indentLevel)
+            builder.append("$currentIndent    Calls: ${calledMethods.joinToString(", ")}\n")
+        }
+    }
+
+    /**
+     * Helper function to append the project methods calling a method to the prompt.
+     */
+    private fun appendCallers(builder: StringBuilder, callers: List<String>, indentLevel: Int) {
+        if (callers.isNotEmpty()) {
+            val currentIndent = " ".repeat(BASE_INDENT * indentLevel)
+            builder.append("$currentIndent    Called by: ${callers.joinToString(", ")}\n")
+        }
+    }
+
+    companion object {
+        /**
+         * Selects the classes described in the prompt when the prompt has a class budget.
+         *
+         * Classes are ranked by cyclomatic complexity, then by branch count and nesting depth, and the
+         * highest ranked ones are kept in their original order.
+         *
+         * @param irClasses The analyzed classes.
+         * @param classBudget The maximum number of classes to keep, or `null` to keep all classes.
+         * @return The selected classes.
+         */
+        fun selectClassesForPrompt(irClasses: List<IRClassEntity>, classBudget: Int?): List<IRClassEntity> {
+            if (classBudget == null || irClasses.size <= classBudget) return irClasses
+            return selectIndicesForPrompt(irClasses.size, classBudget) { irClasses[it].complexityMetrics }.map { irClasses[it] }
+        }
+
+        /**
+         * Selects the indices of the classes described in the prompt, ranked like in [selectClassesForPrompt].
+         *
+         * @param classCount The number of analyzed classes.
+         * @param classBudget The maximum number of classes to keep, or `null` to keep all classes.
+         * @param metricsOf Returns the complexity metrics of the class with the given index, or `null` if they
+         * were not computed. Such classes rank like classes without any branches.
+         * @return The selected indices in ascending order.
+         */
+        fun selectIndicesForPrompt(classCount: Int, classBudget: Int?, metricsOf: (Int) -> ComplexityMetrics?): List<Int> {
+            if (classBudget == null || classCount <= classBudget) return (0 until classCount).toList()
+            val metrics = List(classCount) { metricsOf(it) ?: NO_METRICS }
+            return metrics.indices.sortedWith(
+                compareByDescending<Int> { metrics[it].cyclomaticComplexity }
+                    .thenByDescending { metrics[it].branchCount }
+                    .thenByDescending { metrics[it].nestingDepth }
+            ).take(classBudget.coerceAtLeast(0)).sorted()
+        }
+
+        private val NO_METRICS = ComplexityMetrics(0, 0, 0)
+    }
+}
@@ -0,0 +1,47 @@
+package org.protogalaxy.fractalfathom.cli.modelInference
+
+/**
+ * A 128-bit hash identifying the text of a snippet, so equal snippets can be found without keeping or comparing
+ * their text. The two halves are independent 64-bit hashes; the low one is never zero.
+ *
+ * @property high The first hash of the text.
+ * @property low The second hash of the text.
+ */
+internal data class SnippetKey(val high: Long, val low: Long) {
+
+    companion object {
+        private const val MULTIPLIER_1 = -0x61c8864680b583ebL     // 0x9E3779B97F4A7C15
+        private const val MULTIPLIER_2 = -0x3d4d51c2d82b14b1L     // 0xC2B2AE3D27D4EB4F
+
+        /**
+         * Returns the key of a text.
+         *
+         * @param text The text of the snippet.
+         * @param seed A value mixed into both hashes, e.g. to tell the snippets of different models apart.
+         */
+        fun of(text: CharSequence, seed: Long = 0): SnippetKey = SnippetKey(high(text, seed), low(text, seed))
+
+        /**
+         * Returns the high half of the key of a text without allocating.
+         */
+        fun high(text: CharSequence, seed: Long = 0): Long = hash(text, seed, MULTIPLIER_1)
+
+        /**
+         * Returns the low half of the key of a text without allocating.
+         */
+        fun low(text: CharSequence, seed: Long = 0): Long = hash(text, seed.inv(), MULTIPLIER_2) or 1
+
+        // A multiply-rotate round per char and the finalizer of MurmurHash3
+        private fun hash(text: CharSequence, seed: Long, multiplier: Long): Long {
+            var h = seed xor (text.length.toLong() * multiplier)
+            for (i in text.indices) {
+                h = java.lang.Long.rotateLeft((h xor text[i].code.toLong()) * multiplier, 29)
+            }
+            h = h xor (h ushr 33)
+            h *= -0xae502812aa7333L     // 0xFF51AFD7ED558CCD
+            h = h xor (h ushr 33)
+            h *= -0x3b314601e57a13adL   // 0xC4CEB9FE1A85EC53
+            return h xor (h ushr 33)
+        }
+    }
+}
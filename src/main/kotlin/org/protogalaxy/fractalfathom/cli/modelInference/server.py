@@ -33,34 +33,39 @@ def generate_embeddings():
     ir_entities = data['ir_entities']  # Expected format: {'ir_entities': [{'id': 'entity_id', 'code_snippet': '...'}, ...]}
     embeddings = {}
 
-    for entity in ir_entities:
-        entity_id = entity['id']
-        code_snippet = entity['code_snippet']  # Already merged with context on the Kotlin side
-        embedding = get_embedding(code_snippet)
-        embeddings[entity_id] = reduce_embedding(embedding)
+    # The snippets arrive in batches of similar length, so they are embedded together with little padding
+    code_snippets = [entity['code_snippet'] for entity in ir_entities]  # Already merged with context on the Kotlin side
+    for entity, embedding in zip(ir_entities, get_embeddings(code_snippets)):
+        embeddings[entity['id']] = reduce_embedding(embedding)
 
     return jsonify({'embeddings': embeddings})
 
 
-def get_embedding(code_snippet, embedding_size=32):
+def get_embeddings(code_snippets, embedding_size=32):
     """
-    Generate an embedding vector for a single code snippet.
+    Generate embedding vectors for a batch of code snippets in a single forward pass.
+
+    The snippets are padded to the longest one of the batch; the padding is masked out of the mean pooling, so
+    every embedding equals the one of its snippet embedded alone.
 
     Parameters:
-        - code_snippet (str): The code snippet to embed.
-        - embedding_size (int): Desired size of the embedding vector.
+        - code_snippets (List[str]): The code snippets to embed.
+        - embedding_size (int): Desired size of the embedding vectors.
 
     Returns:
-        - List[float]: The reduced embedding vector.
+        - List[List[float]]: The reduced embedding vectors, in the order of the snippets.
     """
-    inputs = tokenizer(code_snippet, return_tensors='pt', truncation=True, max_length=512)
-    outputs = model(**inputs)
+    if not code_snippets:
+        return []
+    inputs = tokenizer(code_snippets, return_tensors='pt', padding=True, truncation=True, max_length=512)
+    with torch.no_grad():
+        outputs = model(**inputs)
     last_hidden_states = outputs.last_hidden_state
-    # Mean pooling
-    embedding = torch.mean(last_hidden_states, dim=1).squeeze().tolist()
+    # Mean pooling over the tokens of each snippet
+    mask = inputs['attention_mask'].unsqueeze(-1).to(last_hidden_states.dtype)
+    pooled = (last_hidden_states * mask).sum(dim=1) / mask.sum(dim=1)
     # Reduce the embedding dimension to the desired size
-    reduced_embedding = embedding[:embedding_size]
-    return reduced_embedding
+    return [embedding[:embedding_size] for embedding in pooled.tolist()]
 
 
 def reduce_embedding(embedding, target_dim=32):
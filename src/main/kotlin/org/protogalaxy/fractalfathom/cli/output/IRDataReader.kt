@@ -0,0 +1,73 @@
+package org.protogalaxy.fractalfathom.cli.output
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectReader
+import org.protogalaxy.fractalfathom.cli.analysis.DocumentFileTable
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import java.io.File
+
+/**
+ * Reads IR data written by [IRDataWriter].
+ *
+ * JSON, Smile and CBOR documents are streamed with a `JsonParser`: the `files` table written before the classes
+ * is read first, and the classes are then bound one at a time, without building a tree of the whole document.
+ * Documents of earlier versions, with the table after the classes, and plain JSON arrays of classes are read as
+ * well.
+ *
+ * @param format The format of the read file.
+ */
+class IRDataReader(private val format: IRFormat) {
+
+    private val mapper = format.createMapper()
+    private val classReader = mapper.readerFor(IRClassEntity::class.java)
+
+    /**
+     * Reads all classes of a file.
+     *
+     * @param file The file to read.
+     * @return The classes in the order they were written.
+     */
+    fun read(file: File): List<IRClassEntity> {
+        return when (format) {
+            IRFormat.JSON, IRFormat.SMILE, IRFormat.CBOR -> mapper.factory.createParser(file).use { readDocument(it) }
+            IRFormat.NDJSON -> file.useLines { lines ->
+                lines.filter { it.isNotBlank() }.map { mapper.readValue(it, IRClassEntity::class.java) }.toList()
+            }
+        }
+    }
+
+    private fun readDocument(parser: JsonParser): List<IRClassEntity> {
+        val classes = ArrayList<IRClassEntity>()
+        if (parser.nextToken() == JsonToken.START_ARRAY) {
+            readClasses(parser, classReader, classes)
+            return classes
+        }
+
+        var documentReader: ObjectReader? = null
+        var classesBeforeTable: JsonNode? = null
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            val field = parser.currentName()
+            parser.nextToken()
+            when {
+                field == IRDataWriter.FILES_FIELD -> {
+                    val filePaths = ArrayList<String>()
+                    while (parser.nextToken() != JsonToken.END_ARRAY) filePaths.add(parser.text)
+                    documentReader = classReader.withAttribute(DocumentFileTable::class.java, DocumentFileTable.fromPaths(filePaths))
+                }
+                field == IRDataWriter.CLASSES_FIELD && documentReader != null -> readClasses(parser, documentReader, classes)
+                // Earlier versions wrote the table after the classes, which are then kept until it is read
+                field == IRDataWriter.CLASSES_FIELD -> classesBeforeTable = parser.readValueAsTree()
+                else -> parser.skipChildren()
+            }
+        }
+        classesBeforeTable?.forEach { classes.add((documentReader ?: classReader).readValue(it)) }
+        return classes
+    }
+
+    // Binds the elements of the array at the current token one at a time
+    private fun readClasses(parser: JsonParser, reader: ObjectReader, classes: MutableList<IRClassEntity>) {
+        while (parser.nextToken() != JsonToken.END_ARRAY) classes.add(reader.readValue(parser))
+    }
+}
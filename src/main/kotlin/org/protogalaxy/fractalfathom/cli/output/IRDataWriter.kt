@@ -0,0 +1,125 @@
+package org.protogalaxy.fractalfathom.cli.output
+
+import com.fasterxml.jackson.core.JsonGenerator
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.asFlow
+import org.protogalaxy.fractalfathom.cli.analysis.DocumentFileTable
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.analysis.store.ColumnarIRStore
+import java.io.File
+
+/**
+ * Writes IR data to a file through a Jackson `JsonGenerator`.
+ *
+ * Classes are serialized one at a time as they are emitted, so the whole IR never has to be rendered
+ * into a single String. With [IRFormat.NDJSON] every class is written as one line and flushed
+ * immediately, which lets downstream tools consume the file while the analysis is still running.
+ *
+ * A [IRFormat.JSON] file is written as a document of the form `{"files": [...], "classes": [...]}`: every
+ * source code location is written as `[fileIndex, startLine, endLine, startColumn, endColumn]`, where the
+ * index refers to the `files` table, so each path is written only once. The table is written first, so a
+ * reader can resolve the locations while streaming the classes; since it is only complete once all classes
+ * have been serialized, the classes are spooled to a temporary file next to the target in the meantime. NDJSON
+ * lines keep the verbose locations, so every line stays self-contained. [IRFormat.SMILE] and
+ * [IRFormat.CBOR] encode the same document as binary, which is smaller and faster to read back.
+ * Use [IRDataReader] to read any of them.
+ *
+ * @param format The format of the written file.
+ */
+class IRDataWriter(private val format: IRFormat) {
+
+    private val mapper = format.createMapper().apply {
+        // The generator is shared by all classes, so it must stay open after each value
+        disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+    }
+
+    /**
+     * Writes the classes emitted by a flow to a file, creating parent directories as needed.
+     *
+     * @param irData The flow of classes to write.
+     * @param file The target file.
+     * @return The number of classes written.
+     */
+    suspend fun write(irData: Flow<IRClassEntity>, file: File): Int {
+        file.parentFile?.mkdirs()
+        if (format != IRFormat.NDJSON) return writeDocument(irData, file)
+
+        var count = 0
+        file.outputStream().buffered().use { outputStream ->
+            mapper.factory.createGenerator(outputStream).use { generator ->
+                // Lines are terminated explicitly, so no separator is needed between root values
+                generator.setRootValueSeparator(null)
+                irData.collect { irClass ->
+                    mapper.writeValue(generator, irClass)
+                    generator.writeRaw('\n')
+                    generator.flush()
+                    count++
+                }
+            }
+        }
+        return count
+    }
+
+    // Writes the file table followed by the classes, which are spooled until the table is complete
+    private suspend fun writeDocument(irData: Flow<IRClassEntity>, file: File): Int {
+        val fileTable = DocumentFileTable()
+        val writer = mapper.writer().withAttribute(DocumentFileTable::class.java, fileTable)
+        val spool = File.createTempFile("${file.name}.", ".tmp", file.absoluteFile.parentFile)
+        try {
+            var count = 0
+            spool.outputStream().buffered().use { outputStream ->
+                mapper.factory.createGenerator(outputStream).use { generator ->
+                    irData.collect { irClass ->
+                        writer.writeValue(generator, irClass)
+                        count++
+                    }
+                }
+            }
+
+            file.outputStream().buffered().use { outputStream ->
+                mapper.factory.createGenerator(outputStream).use { generator ->
+                    if (!format.isBinary) generator.useDefaultPrettyPrinter()
+                    generator.writeStartObject()
+                    generator.writeFieldName(FILES_FIELD)
+                    writer.writeValue(generator, fileTable.filePaths)
+                    generator.writeArrayFieldStart(CLASSES_FIELD)
+                    // The spooled classes are copied token by token, without binding them again
+                    mapper.factory.createParser(spool).use { parser ->
+                        while (parser.nextToken() != null) generator.copyCurrentStructure(parser)
+                    }
+                    generator.writeEndArray()
+                    generator.writeEndObject()
+                }
+            }
+            return count
+        } finally {
+            if (!spool.delete()) spool.deleteOnExit()
+        }
+    }
+
+    /**
+     * Writes a list of classes to a file, creating parent directories as needed.
+     *
+     * @param irData The classes to write.
+     * @param file The target file.
+     * @return The number of classes written.
+     */
+    suspend fun write(irData: List<IRClassEntity>, file: File): Int = write(irData.asFlow(), file)
+
+    /**
+     * Writes the classes of a columnar IR store to a file, materializing one class at a time.
+     *
+     * @param store The store holding the classes to write.
+     * @param file The target file.
+     * @return The number of classes written.
+     */
+    suspend fun write(store: ColumnarIRStore, file: File): Int = write(store.asSequence().asFlow(), file)
+
+    companion object {
+        /** The field of a JSON document holding the classes. */
+        const val CLASSES_FIELD = "classes"
+
+        /** The field of a JSON document holding the file table of the source code locations. */
+        const val FILES_FIELD = "files"
+    }
+}
@@ -0,0 +1,61 @@
+package org.protogalaxy.fractalfathom.cli.output
+
+import com.fasterxml.jackson.core.JsonFactory
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import com.fasterxml.jackson.module.kotlin.registerKotlinModule
+
+/**
+ * Enum representing the file format of the IR data output.
+ *
+ * @property fileExtension The extension of files written in this format.
+ */
+enum class IRFormat(val fileExtension: String) {
+    JSON("json"),       // A single pretty-printed JSON document with a file table
+    NDJSON("ndjson"),   // One compact JSON object per class and line
+    SMILE("smile"),     // The JSON document encoded as binary Smile
+    CBOR("cbor");       // The JSON document encoded as binary CBOR
+
+    /**
+     * Whether the format is binary and can therefore not be pretty-printed.
+     */
+    val isBinary: Boolean
+        get() = this == SMILE || this == CBOR
+
+    /**
+     * Creates an `ObjectMapper` that reads and writes the IR model in this format.
+     *
+     * All formats share the same Jackson data model, so every format supports the same classes and
+     * annotations; only the encoding of the tokens differs.
+     */
+    fun createMapper(): ObjectMapper {
+        val factory = when (this) {
+            JSON, NDJSON -> JsonFactory()
+            // Shared string values let repeated names and types be written as back references
+            SMILE -> SmileFactory().enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            CBOR -> CBORFactory()
+        }
+        return ObjectMapper(factory).registerKotlinModule().apply {
+            registerModule(JavaTimeModule())
+            disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        }
+    }
+
+    companion object {
+        /**
+         * Resolves a format from its command line name, e.g. `ndjson`.
+         *
+         * @param name The case-insensitive name of the format.
+         * @return The matching format.
+         * @throws IllegalArgumentException if no format has the given name.
+         */
+        fun fromOption(name: String): IRFormat {
+            return entries.firstOrNull { it.name.equals(name, ignoreCase = true) }
+                ?: throw IllegalArgumentException("Unknown IR format '$name', expected one of ${entries.joinToString { it.fileExtension }}")
+        }
+    }
+}
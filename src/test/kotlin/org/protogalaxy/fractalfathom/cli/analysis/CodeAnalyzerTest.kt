@@ -4,8 +4,12 @@ import com.fasterxml.jackson.databind.SerializationFeature
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
 import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
 import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.*
 import org.junit.jupiter.api.Test
 import org.junit.platform.commons.logging.LoggerFactory
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticStatementEntity
+import java.io.File
 
 class CodeAnalyzerTest {
 
@@ -22,4 +26,125 @@ class CodeAnalyzerTest {
 
         logger.info { "IR Data:\n ${mapper.writerWithDefaultPrettyPrinter().writeValueAsString(irData)}" }
     }
-}
\ No newline at end of file
+
+    @Test
+    fun batchParsingMatchesPerFileParsingTest() = runBlocking {
+        val projectPath = "src/test/kotlin/org/protogalaxy/fractalfathom/cli"
+
+        val perFileStart = System.nanoTime()
+        val perFileIrData = CodeAnalyzer(projectPath, AnalyzerConfig(batchParsing = false)).analyzeProject()
+        val perFileMillis = (System.nanoTime() - perFileStart) / 1_000_000
+
+        val batchStart = System.nanoTime()
+        val batchIrData = CodeAnalyzer(projectPath, AnalyzerConfig(batchParsing = true)).analyzeProject()
+        val batchMillis = (System.nanoTime() - batchStart) / 1_000_000
+
+        logger.info { "Per-file parsing: ${perFileMillis}ms, batch parsing: ${batchMillis}ms" }
+
+        assertTrue(perFileIrData.isNotEmpty(), "Expected classes in the test resources")
+        assertEquals(perFileIrData.map { it.summary() }, batchIrData.map { it.summary() }, "Batch parsing should produce the same classes")
+    }
+
+    @Test
+    fun boundedWorkerPoolPreservesFileOrderTest() = runBlocking {
+        val projectPath = "src/test/kotlin/org/protogalaxy/fractalfathom/cli"
+
+        val singleWorkerIrData = CodeAnalyzer(projectPath, AnalyzerConfig(maxBatchSize = 1, workerCount = 1)).analyzeProject()
+        val multiWorkerIrData = CodeAnalyzer(projectPath, AnalyzerConfig(maxBatchSize = 2, workerCount = 3)).analyzeProject()
+
+        assertEquals(
+            singleWorkerIrData.map { it.summary() },
+            multiWorkerIrData.map { it.summary() },
+            "The number of workers should not change the result or its order"
+        )
+    }
+
+    @Test
+    fun sourceStatementTextTest() = runBlocking {
+        val projectPath = "src/test/kotlin/org/protogalaxy/fractalfathom/cli"
+
+        val prettyStart = System.nanoTime()
+        val prettyIrData = CodeAnalyzer(projectPath, AnalyzerConfig(statementTextMode = StatementTextMode.PRETTY_PRINT)).analyzeProject()
+        val prettyMillis = (System.nanoTime() - prettyStart) / 1_000_000
+
+        val sourceStart = System.nanoTime()
+        val sourceIrData = CodeAnalyzer(projectPath, AnalyzerConfig(statementTextMode = StatementTextMode.SOURCE)).analyzeProject()
+        val sourceMillis = (System.nanoTime() - sourceStart) / 1_000_000
+
+        logger.info { "Pretty-printed statements: ${prettyMillis}ms, source statements: ${sourceMillis}ms" }
+
+        val prettyStatements = prettyIrData.flatMap { it.statements() }
+        val sourceStatements = sourceIrData.flatMap { it.statements() }
+        assertTrue(sourceStatements.isNotEmpty(), "Expected statements in the test resources")
+        assertEquals(prettyStatements.map { it.type }, sourceStatements.map { it.type }, "Both modes should find the same statements")
+
+        // The text of every statement is a verbatim excerpt of its file
+        val fileContents = HashMap<String, String>()
+        sourceStatements.filter { it.sourceCodeLocation?.filePath?.isNotEmpty() == true }.forEach { statement ->
+            assertTrue(
+                fileContents.getOrPut(statement.sourceCodeLocation!!.filePath) { File(statement.sourceCodeLocation!!.filePath).readText() }
+                    .contains(statement.expression!!),
+                "Statement text should be taken from the source file: ${statement.expression}"
+            )
+        }
+
+        // The lazy text is materialized when serialized and survives a round trip
+        val json = mapper.writeValueAsString(sourceIrData)
+        val readIrData: List<IRClassEntity> = mapper.readValue(json, mapper.typeFactory.constructCollectionType(List::class.java, IRClassEntity::class.java))
+        assertEquals(sourceStatements, readIrData.flatMap { it.statements() }, "Statements should survive serialization")
+    }
+
+    @Test
+    fun detailLevelsTest() = runBlocking {
+        val projectPath = "src/test/kotlin/org/protogalaxy/fractalfathom/cli"
+
+        val irDataByLevel = DetailLevel.entries.associateWith { detailLevel ->
+            val start = System.nanoTime()
+            val irData = CodeAnalyzer(projectPath, AnalyzerConfig(detailLevel = detailLevel)).analyzeProject()
+            logger.info { "Detail level ${detailLevel.option}: ${(System.nanoTime() - start) / 1_000_000}ms" }
+            irData
+        }
+        val full = irDataByLevel.getValue(DetailLevel.FULL)
+        val members = irDataByLevel.getValue(DetailLevel.MEMBERS)
+        val structure = irDataByLevel.getValue(DetailLevel.STRUCTURE)
+
+        // Every level finds the same declarations, features and mappings
+        listOf(members, structure).forEach { irData ->
+            assertEquals(full.map { it.summary().dropLast(2) }, irData.map { it.summary().dropLast(2) })
+        }
+        assertTrue(full.any { irClass -> irClass.methods.any { it.lowLevelAST != null } }, "Expected method bodies in the test resources")
+
+        assertTrue(members.all { irClass -> irClass.methods.all { it.lowLevelAST == null } }, "Members should not lower statements")
+        assertEquals(full.map { irClass -> irClass.methods.map { it.calledMethods } }, members.map { irClass -> irClass.methods.map { it.calledMethods } })
+        assertEquals(full.map { it.complexityMetrics }, members.map { it.complexityMetrics })
+        assertTrue(members.flatMap { it.methods }.flatMap { it.parameters }.all { it.sourceCodeLocation == null })
+
+        structure.flatMap { it.methods }.forEach { method ->
+            assertTrue(method.lowLevelAST == null && method.calledMethods.isEmpty() && method.complexityMetrics == null, "Structure should not scan bodies")
+            assertNull(method.sourceCodeLocation)
+        }
+        assertTrue(structure.all { it.complexityMetrics == null }, "Structure should not report complexity it did not measure")
+        assertTrue(structure.flatMap { it.annotations }.isEmpty(), "Structure should only keep FractalFathom annotations")
+    }
+
+    private fun IRClassEntity.statements(): List<StaticStatementEntity> {
+        fun flatten(statement: StaticStatementEntity): List<StaticStatementEntity> =
+            listOf(statement) + (statement.subStatements ?: emptyList()).flatMap { flatten(it) }
+        return methods.flatMap { method -> method.lowLevelAST?.statements ?: emptyList() }.flatMap { flatten(it) }
+    }
+
+    // Projection of the deterministic parts of an IRClassEntity, excluding generated UUIDs and timestamps
+    private fun IRClassEntity.summary(): List<Any?> = listOf(
+        packageName,
+        name,
+        filePath,
+        superClass,
+        interfaces,
+        features.map { it.name },
+        mappings.map { it.toConcept },
+        fields.map { "${it.type} ${it.name}" },
+        methods.map { method -> "${method.returnType} ${method.name}(${method.parameters.joinToString { it.type }})" },
+        methods.map { it.lowLevelAST?.statements?.map { statement -> statement.expression } },
+        sourceCodeLocation
+    )
+}
@@ -0,0 +1,84 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.protogalaxy.fractalfathom.cli.analysis.parsers.AnnotationParser
+import org.protogalaxy.fractalfathom.cli.analysis.parsers.IRBuilder
+import spoon.Launcher
+import spoon.reflect.declaration.CtClass
+import java.io.File
+
+class ElementSignatureTest : BaseTest() {
+
+    @TempDir
+    lateinit var sourceDir: File
+
+    @Test
+    fun testAnnotationTargetsAreSignatures() {
+        val irClass = IRBuilder().buildClass(ctClass, "UserService.java")
+
+        assertEquals("org.protogalaxy.fractalfathom.cli.resources.UserService", ElementSignature.of(irClass))
+        irClass.annotations.forEach { assertEquals(ElementSignature.of(irClass), it.targetElement, "Class annotations should target the class") }
+        irClass.fields.flatMap { it.annotations }.forEach { assertTrue(it.targetElement.startsWith(ElementSignature.of(irClass) + "#")) }
+
+        val createUser = ctClass.methods.first { it.simpleName == "createUser" }
+        assertEquals(
+            "org.protogalaxy.fractalfathom.cli.resources.UserService#createUser(java.lang.String,java.lang.String,java.lang.String)",
+            AnnotationParser().parseAnnotation(createUser.annotations.single()).targetElement
+        )
+    }
+
+    @Test
+    fun testSpoonAndIRSignaturesAgree() {
+        val irClass = IRBuilder().buildClass(ctClass, "UserService.java")
+
+        val spoonSignatures = ctClass.methods.map { ElementSignature.of(it) }.toSet()
+        val irSignatures = irClass.methods.map { ElementSignature.of(irClass, it) }.toSet()
+        assertEquals(spoonSignatures, irSignatures, "Methods should have the same signature in Spoon and in the IR")
+        assertEquals(ctClass.fields.map { ElementSignature.of(it) }, irClass.fields.map { ElementSignature.of(irClass, it) })
+    }
+
+    @Test
+    fun testCallsAndCalleesHaveTheSameSignature() {
+        val source = """
+            class Repository {
+                void save(String[] names, int count) {}
+                void saveAll(String[] names) { save(names, names.length); }
+            }
+        """.trimIndent()
+        val irClass = IRBuilder().buildClass(buildClass("Repository.java", source), "Repository.java")
+
+        val save = irClass.methods.first { it.name == "save" }
+        val call = irClass.methods.first { it.name == "saveAll" }.calledMethods.single()
+        assertEquals(ElementSignature.of(irClass, save), ElementSignature.of(call), "A call should have the signature of the called method")
+    }
+
+    @Test
+    fun testOverloadsHaveDistinctSignatures() {
+        val source = """
+            class Repository<T> {
+                void save(T entity) {}
+                void save(java.util.List<T> entities) {}
+                void save(String[] names, int count) {}
+            }
+        """.trimIndent()
+        val ctClass = buildClass("Repository.java", source)
+        val irClass = IRBuilder().buildClass(ctClass, "Repository.java")
+
+        val signatures = irClass.methods.map { ElementSignature.of(irClass, it) }
+        assertEquals(
+            setOf("Repository#save(T)", "Repository#save(java.util.List)", "Repository#save(java.lang.String[],int)"),
+            signatures.toSet()
+        )
+        assertEquals(signatures.toSet(), ctClass.methods.map { ElementSignature.of(it) }.toSet())
+    }
+
+    private fun buildClass(fileName: String, source: String): CtClass<*> {
+        val file = File(sourceDir, fileName).apply { writeText(source) }
+        val launcher = Launcher()
+        launcher.addInputResource(file.path)
+        launcher.buildModel()
+        return launcher.model.allTypes.single() as CtClass<*>
+    }
+}
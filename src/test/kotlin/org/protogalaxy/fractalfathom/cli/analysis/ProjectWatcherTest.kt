@@ -0,0 +1,91 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.Timeout
+import org.junit.jupiter.api.io.TempDir
+import java.io.File
+import java.nio.file.Paths
+import java.util.concurrent.TimeUnit
+
+class ProjectWatcherTest {
+
+    @TempDir
+    lateinit var projectDir: File
+
+    @Test
+    @Timeout(30, unit = TimeUnit.SECONDS)
+    fun testReportsModifiedAndDeletedJavaFiles() {
+        val modifiedFile = File(projectDir, "Modified.java").apply { writeText("class Modified {}") }
+        val deletedFile = File(projectDir, "Deleted.java").apply { writeText("class Deleted {}") }
+
+        ProjectWatcher(projectDir.path).use { watcher ->
+            modifiedFile.writeText("class Modified { int value; }")
+            deletedFile.delete()
+            File(projectDir, "notes.txt").writeText("ignored")
+
+            val changedPaths = collectChanges(watcher, 2)
+
+            assertTrue(modifiedFile.absolutePath in changedPaths, "Modified file should be reported")
+            assertTrue(deletedFile.absolutePath in changedPaths, "Deleted file should be reported")
+            assertFalse(changedPaths.any { it.endsWith("notes.txt") }, "Non-Java files should be ignored")
+        }
+    }
+
+    @Test
+    @Timeout(30, unit = TimeUnit.SECONDS)
+    fun testWatchesCreatedDirectories() {
+        ProjectWatcher(projectDir.path).use { watcher ->
+            val packageDir = File(projectDir, "pkg").apply { mkdirs() }
+            assertTrue(packageDir.absolutePath in watcher.awaitChanges(), "Created directory should be reported")
+
+            val createdFile = File(packageDir, "Created.java").apply { writeText("class Created {}") }
+            assertTrue(createdFile.absolutePath in collectChanges(watcher, 1), "Files in created directories should be reported")
+        }
+    }
+
+    @Test
+    @Timeout(30, unit = TimeUnit.SECONDS)
+    fun testSkipsPrunedDirectories() {
+        File(projectDir, ".gitignore").writeText("ignored/\n")
+        val prunedDirs = listOf("build", ".git", "node_modules", "ignored").map { File(projectDir, it).apply { mkdirs() } }
+        val sourceDir = File(projectDir, "src").apply { mkdirs() }
+
+        ProjectWatcher(projectDir.path).use { watcher ->
+            prunedDirs.forEach { File(it, "Pruned.java").writeText("class Pruned {}") }
+            File(projectDir, "target").mkdirs()
+            val sourceFile = File(sourceDir, "App.java").apply { writeText("class App {}") }
+
+            val changedPaths = collectChanges(watcher, 1)
+            assertTrue(sourceFile.absolutePath in changedPaths, "Source files should be reported")
+            assertFalse(changedPaths.any { it.endsWith("Pruned.java") }, "Files in pruned directories should not be reported: $changedPaths")
+            assertFalse(changedPaths.any { it.endsWith("target") }, "Created build output directories should not be reported")
+        }
+    }
+
+    @Test
+    @Timeout(60, unit = TimeUnit.SECONDS)
+    fun testReportsTheNormalizedRootOnOverflow() {
+        // A relative project path ending in `.`, like the one passed for the current directory
+        val relativePath = Paths.get("").toAbsolutePath().relativize(projectDir.toPath().toAbsolutePath()).resolve(".").toString()
+
+        ProjectWatcher(relativePath).use { watcher ->
+            // More events than a watch key queues, so the watch service reports an overflow
+            repeat(2_000) { File(projectDir, "Generated$it.java").writeText("class Generated$it {}") }
+
+            var overflowPaths = emptyList<String>()
+            while (overflowPaths.isEmpty()) {
+                overflowPaths = watcher.awaitChanges().filterNot { it.endsWith(".java") }
+            }
+            assertEquals(listOf(projectDir.toPath().toAbsolutePath().normalize().toString()), overflowPaths)
+        }
+    }
+
+    private fun collectChanges(watcher: ProjectWatcher, expectedCount: Int): Set<String> {
+        val changedPaths = mutableSetOf<String>()
+        while (changedPaths.count { it.endsWith(".java") } < expectedCount) {
+            changedPaths.addAll(watcher.awaitChanges())
+        }
+        return changedPaths
+    }
+}
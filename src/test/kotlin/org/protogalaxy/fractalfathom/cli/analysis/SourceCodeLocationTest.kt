@@ -0,0 +1,62 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class SourceCodeLocationTest {
+
+    private val mapper = jacksonObjectMapper()
+
+    private fun assertPositions(location: SourceCodeLocation, startLine: Int, endLine: Int, startColumn: Int, endColumn: Int) {
+        assertEquals(listOf(startLine, endLine, startColumn, endColumn),
+            listOf(location.startLine, location.endLine, location.startColumn, location.endColumn),
+            "Positions should be kept")
+    }
+
+    @Test
+    fun testKeepsPositionsInAndBeyondThePackedRange() {
+        listOf(
+            listOf(-1, -1, -1, -1),
+            listOf(0, 0, 0, 0),
+            listOf(12, 48, 5, 6),
+            listOf(1_048_574, 1_048_574, 4_094, 4_094),
+            listOf(1_048_575, 2_000_000, 4_095, 100_000),
+            listOf(3, 4, -2, 7)
+        ).forEach { (startLine, endLine, startColumn, endColumn) ->
+            val location = SourceCodeLocation("src/Example.java", startLine, endLine, startColumn, endColumn)
+            assertPositions(location, startLine, endLine, startColumn, endColumn)
+            assertEquals("src/Example.java", location.filePath, "File path should be resolved from the file table")
+        }
+    }
+
+    @Test
+    fun testComparesByValue() {
+        val location = SourceCodeLocation("src/Example.java", 3, 4, 5, 6)
+
+        assertEquals(location, SourceCodeLocation("src/Example.java", 3, 4, 5, 6))
+        assertEquals(location.hashCode(), SourceCodeLocation("src/Example.java", 3, 4, 5, 6).hashCode())
+        assertNotEquals(location, SourceCodeLocation("src/Other.java", 3, 4, 5, 6))
+        assertEquals(SourceCodeLocation("src/Example.java", 3, 4, 5, 5_000), SourceCodeLocation("src/Example.java", 3, 4, 5, 5_000))
+        assertEquals(SourceFileTable.idOf("src/Example.java"), location.fileId, "Paths should be registered once")
+    }
+
+    @Test
+    fun testSerializesVerboseAndCompactForms() {
+        val location = SourceCodeLocation("src/Example.java", 3, 4, 5, 6)
+
+        val verbose = mapper.writeValueAsString(location)
+        assertEquals("""{"filePath":"src/Example.java","startLine":3,"endLine":4,"startColumn":5,"endColumn":6}""", verbose)
+        assertEquals(location, mapper.readValue(verbose, SourceCodeLocation::class.java))
+
+        val writeTable = DocumentFileTable()
+        writeTable.indexOf(SourceFileTable.idOf("src/First.java"))
+        val compact = mapper.writer().withAttribute(DocumentFileTable::class.java, writeTable).writeValueAsString(location)
+        assertEquals("[1,3,4,5,6]", compact)
+        assertEquals(listOf("src/First.java", "src/Example.java"), writeTable.filePaths)
+
+        val readTable = DocumentFileTable.fromPaths(writeTable.filePaths)
+        val reader = mapper.readerFor(SourceCodeLocation::class.java).withAttribute(DocumentFileTable::class.java, readTable)
+        assertEquals(location, reader.readValue<SourceCodeLocation>(compact))
+    }
+}
@@ -0,0 +1,103 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.io.File
+
+class SourceDiscoveryTest {
+
+    @TempDir
+    lateinit var projectDir: File
+
+    @BeforeEach
+    fun createProject() {
+        listOf(
+            "Root.java",
+            "src/main/java/org/example/App.java",
+            "src/main/java/org/example/build/Builder.java",
+            "src/main/java/org/example/generated/Stub.java",
+            "src/main/java/org/example/generated/Keep.java",
+            "src/test/java/org/example/AppTest.java",
+            "build/generated/sources/Generated.java",
+            "target/classes/Compiled.java",
+            "node_modules/pkg/Vendored.java",
+            "docs/README.md"
+        ).forEach { path ->
+            File(projectDir, path).apply {
+                parentFile.mkdirs()
+                writeText("class ${nameWithoutExtension} {}")
+            }
+        }
+        File(projectDir, "src/main/java/.gitignore").writeText("# generated code\n**/generated/*\n!Keep.java\n")
+    }
+
+    private fun discoveredPaths(discovery: SourceDiscovery): Set<String> {
+        return discovery.discover().map { File(it).relativeTo(projectDir).invariantSeparatorsPath }.toSet()
+    }
+
+    @Test
+    fun testSkipsBuildOutputAndIgnoredFiles() {
+        val paths = discoveredPaths(SourceDiscovery(projectDir.path))
+
+        assertEquals(
+            setOf(
+                "Root.java",
+                "src/main/java/org/example/App.java",
+                "src/main/java/org/example/build/Builder.java",
+                "src/main/java/org/example/generated/Keep.java",
+                "src/test/java/org/example/AppTest.java"
+            ),
+            paths,
+            "Build output, vendored and ignored files should be skipped"
+        )
+    }
+
+    @Test
+    fun testAppliesIncludeAndExcludeGlobs() {
+        val paths = discoveredPaths(
+            SourceDiscovery(
+                projectDir.path,
+                includeGlobs = listOf("src/main/**/*.java"),
+                excludeGlobs = listOf("**/build")
+            )
+        )
+
+        assertEquals(
+            setOf("src/main/java/org/example/App.java", "src/main/java/org/example/generated/Keep.java"),
+            paths,
+            "Only included files outside excluded directories should be reported"
+        )
+    }
+
+    @Test
+    fun testCanDisableDefaults() {
+        val paths = discoveredPaths(SourceDiscovery(projectDir.path, respectGitignore = false, skipBuildOutput = false))
+
+        assertEquals(9, paths.size, "Every Java file should be reported without defaults")
+    }
+
+    @Test
+    fun testListsTheDirectoriesItDescendsInto() {
+        File(projectDir, ".gitignore").writeText("docs/\n")
+        val discovery = SourceDiscovery(projectDir.path)
+        val directories = discovery.discoverDirectories().map { File(it).relativeTo(projectDir).invariantSeparatorsPath }.toSet()
+
+        assertTrue("" in directories && "src/main/java/org/example/build" in directories)
+        assertFalse(directories.any { it.startsWith("build") || it.startsWith("target") || it.startsWith("node_modules") })
+        assertFalse("docs" in directories, "Gitignored directories should be pruned")
+        assertEquals(emptyList<String>(), discovery.discoverDirectories(File(projectDir, "target").path), "A pruned start should be skipped")
+    }
+
+    @Test
+    fun testChecksSingleFiles() {
+        val discovery = SourceDiscovery(projectDir.path)
+
+        assertTrue(discovery.isSourceFile(File(projectDir, "src/main/java/org/example/App.java").path))
+        assertTrue(discovery.isSourceFile(File(projectDir, "src/main/java/org/example/generated/Keep.java").path))
+        assertFalse(discovery.isSourceFile(File(projectDir, "src/main/java/org/example/generated/Stub.java").path))
+        assertFalse(discovery.isSourceFile(File(projectDir, "target/classes/Compiled.java").path))
+        assertFalse(discovery.isSourceFile(File(projectDir, "docs/README.md").path))
+    }
+}
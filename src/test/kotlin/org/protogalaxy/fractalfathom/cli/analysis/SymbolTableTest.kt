@@ -0,0 +1,117 @@
+package org.protogalaxy.fractalfathom.cli.analysis
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.junit.platform.commons.logging.LoggerFactory
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import java.io.File
+import java.lang.reflect.Modifier
+import java.util.IdentityHashMap
+
+class SymbolTableTest {
+
+    @TempDir
+    lateinit var projectDir: File
+
+    private val logger = LoggerFactory.getLogger(SymbolTableTest::class.java)
+
+    @Test
+    fun testInternedClassesAreEqualAndShareSymbols() = runBlocking {
+        writeCorpus(fileCount = 20)
+
+        val plainIrData = CodeAnalyzer(projectDir.path, AnalyzerConfig(internSymbols = false)).analyzeProject()
+        val internedIrData = CodeAnalyzer(projectDir.path, AnalyzerConfig(internSymbols = true)).analyzeProject()
+
+        assertEquals(plainIrData.size, internedIrData.size)
+        plainIrData.zip(internedIrData).forEach { (plain, interned) ->
+            assertEquals(plain.copy(features = emptyList(), mappings = emptyList()), interned.copy(features = emptyList(), mappings = emptyList()))
+        }
+
+        val stringTypes = internedIrData.flatMap { irClass -> irClass.fields.map { it.type } }.filter { it == "java.lang.String" }
+        assertTrue(stringTypes.size > 1, "Expected String fields in the corpus")
+        assertTrue(stringTypes.all { it === stringTypes.first() }, "Equal type names should be the same instance")
+    }
+
+    @Test
+    fun testInterningReducesRetainedStringBytes() = runBlocking {
+        writeCorpus(fileCount = 400)
+
+        val plainIrData = CodeAnalyzer(projectDir.path, AnalyzerConfig(internSymbols = false)).analyzeProject()
+        val plainBytes = retainedStringBytes(plainIrData)
+
+        val codeAnalyzer = CodeAnalyzer(projectDir.path, AnalyzerConfig(internSymbols = true))
+        val internedIrData = codeAnalyzer.analyzeProject()
+        val internedBytes = retainedStringBytes(internedIrData)
+
+        logger.info {
+            "Retained String bytes of ${internedIrData.size} classes: ${plainBytes / 1024}KB plain, " +
+                    "${internedBytes / 1024}KB interned with ${codeAnalyzer.symbolTable.size} symbols"
+        }
+        assertTrue(internedBytes < plainBytes * 0.8, "Interning should reduce the retained String bytes")
+    }
+
+    // A corpus whose classes repeat type names, package names and identifiers like a real code base
+    private fun writeCorpus(fileCount: Int) {
+        repeat(fileCount) { index ->
+            val packageName = "org.example.module${index % 10}"
+            val file = File(projectDir, "src/${packageName.replace('.', '/')}/Service$index.java")
+            file.parentFile.mkdirs()
+            file.writeText(
+                """
+                package $packageName;
+
+                import java.util.List;
+                import java.util.Map;
+
+                public class Service$index {
+                    private final String name = "service";
+                    private final List<String> items = new java.util.ArrayList<>();
+                    private Map<String, Integer> counters;
+
+                    public String getName() {
+                        return name;
+                    }
+
+                    public void addItem(String item, int count) {
+                        items.add(item);
+                        counters.put(item, count);
+                    }
+
+                    public boolean containsItem(String item) {
+                        return items.contains(item);
+                    }
+                }
+                """.trimIndent()
+            )
+        }
+    }
+
+    // Sums the estimated heap size of every distinct String instance reachable from the IR
+    private fun retainedStringBytes(irData: List<IRClassEntity>): Long {
+        val visited = IdentityHashMap<Any, Boolean>()
+        var bytes = 0L
+
+        fun visit(value: Any?) {
+            if (value == null || visited.put(value, true) != null) return
+            when {
+                value is String -> bytes += 24 + (16 + value.length + 7) / 8 * 8
+                value is Collection<*> -> value.forEach { visit(it) }
+                value is Map<*, *> -> value.forEach { (key, entry) -> visit(key); visit(entry) }
+                value.javaClass.name.startsWith("org.protogalaxy") && !value.javaClass.isEnum -> {
+                    var type: Class<*>? = value.javaClass
+                    while (type != null && type != Any::class.java) {
+                        type.declaredFields.filter { !Modifier.isStatic(it.modifiers) }.forEach { field ->
+                            field.isAccessible = true
+                            visit(field.get(value))
+                        }
+                        type = type.superclass
+                    }
+                }
+            }
+        }
+        visit(irData)
+        return bytes
+    }
+}
@@ -0,0 +1,79 @@
+package org.protogalaxy.fractalfathom.cli.analysis.annotation
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.protogalaxy.fractalfathom.cli.analysis.parsers.AnnotationProcessor
+import java.util.UUID
+
+class FeatureRegistryTest {
+
+    @Test
+    fun testSameFeatureIsSharedAcrossOccurrences() {
+        val registry = FeatureRegistry()
+
+        val first = registry.feature("UserService", "Handles user-related operations", FeatureType.FUNCTIONAL)
+        val second = registry.feature("UserService", "Another description", FeatureType.FUNCTIONAL)
+        val otherType = registry.feature("UserService", type = FeatureType.NON_FUNCTIONAL)
+
+        assertSame(first, second, "Occurrences of the same feature should share one instance")
+        assertEquals("Handles user-related operations", second.description, "The first description should win")
+        assertNotEquals(first.uuid, otherType.uuid, "Features of different types should be distinct")
+        assertEquals(2, registry.featureCount)
+
+        assertSame(registry.mapping("User Management", MappingType.MODULE), registry.mapping("User Management", MappingType.MODULE))
+        assertEquals(1, registry.mappingCount)
+    }
+
+    @Test
+    fun testUuidsAreDeterministic() {
+        val feature = FeatureRegistry().feature("UserService", type = FeatureType.FUNCTIONAL)
+        val sameFeature = FeatureRegistry().feature("UserService", type = FeatureType.FUNCTIONAL)
+
+        assertEquals(feature.uuid, sameFeature.uuid, "Registries of different runs should assign the same UUID")
+        assertEquals(5, feature.uuid.version(), "Feature UUIDs should be name-based")
+        assertEquals(2, feature.uuid.variant(), "Feature UUIDs should use the RFC 4122 variant")
+
+        // uuid5(NAMESPACE_DNS, "python.org") of Python's uuid module
+        val dnsNamespace = UUID.fromString("6ba7b810-9dad-11d1-80b4-00c04fd430c8")
+        assertEquals(UUID.fromString("886313e1-3b8a-5372-9b90-0c9aee199e5d"), FeatureRegistry.nameBasedUuid(dnsNamespace, "python.org"))
+    }
+
+    @Test
+    fun testConcurrentRegistrationYieldsOneInstance() = runBlocking {
+        val registry = FeatureRegistry()
+
+        val features = (0 until 64).map {
+            async(Dispatchers.Default) {
+                (0 until 100).map { index -> registry.feature("Feature${index % 10}", type = FeatureType.FUNCTIONAL) }
+            }
+        }.awaitAll().flatten()
+
+        assertEquals(10, registry.featureCount)
+        features.groupBy { it.name }.values.forEach { occurrences ->
+            assertTrue(occurrences.all { it === occurrences.first() }, "All threads should see the same instance")
+        }
+    }
+
+    @Test
+    fun testAnnotationProcessorUsesRegistry() {
+        val processor = AnnotationProcessor(FeatureRegistry())
+        val annotations = listOf(
+            AnnotationEntity(
+                name = "org.protogalaxy.fractalfathom.FractalFathomFeature",
+                attributes = mapOf("name" to "UserService", "type" to "FUNCTIONAL"),
+                targetElement = "org.example.UserService",
+                targetType = AnnotationTargetType.CLASS,
+                phase = AnnotationPhase.STATIC_ANALYSIS
+            )
+        )
+
+        val (firstFeatures, _, _) = processor.processAnnotations(annotations)
+        val (secondFeatures, _, _) = processor.processAnnotations(annotations)
+
+        assertSame(firstFeatures.single(), secondFeatures.single(), "Annotated elements should share the feature")
+    }
+}
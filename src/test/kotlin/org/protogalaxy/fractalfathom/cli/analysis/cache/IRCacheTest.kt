@@ -0,0 +1,109 @@
+package org.protogalaxy.fractalfathom.cli.analysis.cache
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.protogalaxy.fractalfathom.cli.analysis.CodeAnalyzer
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import java.io.File
+
+class IRCacheTest {
+
+    @TempDir
+    lateinit var tempDir: File
+
+    private fun copyResources(): File {
+        val projectDir = File(tempDir, "project")
+        File("src/test/kotlin/org/protogalaxy/fractalfathom/cli/resources").copyRecursively(projectDir)
+        return projectDir
+    }
+
+    @Test
+    fun testUnchangedFilesAreServedFromCache() = runBlocking {
+        val projectDir = copyResources()
+        val cacheDir = File(tempDir, "cache")
+        val fileCount = projectDir.listFiles()!!.count { it.extension == "java" }
+
+        val firstCache = IRCache(cacheDir)
+        val firstRun = CodeAnalyzer(projectDir.path, irCache = firstCache).analyzeProject()
+        assertEquals(0, firstCache.hits, "The first run should not hit the cache")
+        assertEquals(fileCount, firstCache.misses, "Every file should miss on the first run")
+
+        val secondCache = IRCache(cacheDir)
+        val secondRun = CodeAnalyzer(projectDir.path, irCache = secondCache).analyzeProject()
+        assertEquals(fileCount, secondCache.hits, "Every file should hit on the second run")
+        assertEquals(0, secondCache.misses, "No file should miss on the second run")
+        assertEquals(firstRun.map { it.name }, secondRun.map { it.name }, "Cached IR should match the parsed IR")
+        assertEquals(
+            firstRun.flatMap { it.methods }.map { it.copy(features = emptyList(), mappings = emptyList()) },
+            secondRun.flatMap { it.methods }.map { it.copy(features = emptyList(), mappings = emptyList()) },
+            "Cached methods should match"
+        )
+        assertEquals(
+            firstRun.flatMap { it.mappings }.map { it.uuid },
+            secondRun.flatMap { it.mappings }.map { it.uuid },
+            "Cached mappings should keep their identity"
+        )
+    }
+
+    @Test
+    fun testChangedAndDeletedFilesAreInvalidated() = runBlocking {
+        val projectDir = copyResources()
+        val cacheDir = File(tempDir, "cache")
+        val fileCount = projectDir.listFiles()!!.count { it.extension == "java" }
+
+        CodeAnalyzer(projectDir.path, irCache = IRCache(cacheDir)).analyzeProject()
+
+        File(projectDir, "User.java").appendText("\n// changed\n")
+        File(projectDir, "RoleRepository.java").delete()
+
+        val cache = IRCache(cacheDir)
+        val irData = CodeAnalyzer(projectDir.path, irCache = cache).analyzeProject()
+
+        assertEquals(1, cache.misses, "Only the changed file should be parsed again")
+        assertEquals(fileCount - 2, cache.hits, "All other remaining files should hit")
+        assertNull(irData.find { it.name == "RoleRepository" }, "Deleted files should not be reported")
+        assertEquals(fileCount - 1, cacheDir.listFiles()!!.size, "The entry of the deleted file should be dropped")
+    }
+
+    @Test
+    fun testChangedFilesAreResolvedAgainstCachedFiles() = runBlocking {
+        val projectDir = File(tempDir, "project")
+        val packageDir = File(projectDir, "org/example").apply { mkdirs() }
+        File(packageDir, "Base.java").writeText(
+            "package org.example; public class Base { protected Helper helper() { return new Helper(); } protected void greet(String name) {} }"
+        )
+        File(packageDir, "Helper.java").writeText("package org.example; public class Helper { public int assist(String task) { return 0; } }")
+        val child = File(packageDir, "Child.java").apply {
+            writeText("package org.example; public class Child extends Base { void run() { greet(\"a\"); helper().assist(\"b\"); } }")
+        }
+        val cacheDir = File(tempDir, "cache")
+        val coldRun = CodeAnalyzer(projectDir.path, irCache = IRCache(cacheDir)).analyzeProject()
+
+        // Only the changed file is parsed again, the classes it uses come from the cache
+        child.appendText("\n// changed\n")
+        val cache = IRCache(cacheDir)
+        val warmRun = CodeAnalyzer(projectDir.path, irCache = cache).analyzeProject()
+
+        assertEquals(1, cache.misses, "Only the changed file should be parsed again")
+        assertEquals(coldRun.map { it.name }, warmRun.map { it.name }, "Files added for resolution should not be reported twice")
+        val calls = { irData: List<IRClassEntity> ->
+            irData.single { it.name == "Child" }.methods.flatMap { it.calledMethods }.map { "${it.declaringType}#${it.signature}" }
+        }
+        assertEquals(listOf("org.example.Base#greet(java.lang.String)", "org.example.Base#helper()", "org.example.Helper#assist(java.lang.String)"), calls(coldRun).sorted())
+        assertEquals(calls(coldRun), calls(warmRun), "Calls into cached files should be resolved like on a cold run")
+    }
+
+    @Test
+    fun testAnalyzerVersionInvalidatesEntries() {
+        val projectDir = copyResources()
+        val filePath = File(projectDir, "User.java").path
+
+        assertNotEquals(
+            IRCache(File(tempDir, "cache"), "1").contentHash(filePath),
+            IRCache(File(tempDir, "cache"), "2").contentHash(filePath),
+            "The content hash should depend on the analyzer version"
+        )
+    }
+}
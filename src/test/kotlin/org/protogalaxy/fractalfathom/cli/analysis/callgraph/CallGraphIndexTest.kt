@@ -0,0 +1,99 @@
+package org.protogalaxy.fractalfathom.cli.analysis.callgraph
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.platform.commons.logging.LoggerFactory
+import org.protogalaxy.fractalfathom.cli.analysis.CodeAnalyzer
+import org.protogalaxy.fractalfathom.cli.analysis.store.ColumnarIRStore
+import kotlin.random.Random
+
+class CallGraphIndexTest {
+
+    private val logger = LoggerFactory.getLogger(CallGraphIndexTest::class.java)
+
+    @Test
+    fun testQueriesProjectCallGraph() = runBlocking {
+        val irData = CodeAnalyzer("src/test/kotlin/org/protogalaxy/fractalfathom/cli/resources").analyzeProject()
+        val callGraph = CallGraphIndex.fromIR(irData)
+
+        val packageName = "org.protogalaxy.fractalfathom.cli.resources"
+        val createUser = "$packageName.UserService#createUser(java.lang.String,java.lang.String,java.lang.String)"
+        val assignRole = "$packageName.RoleService#assignRole(java.lang.String,java.lang.String)"
+        val repositoryAssignRole = "$packageName.RoleRepository#assignRole(java.lang.String,java.lang.String)"
+
+        assertTrue(callGraph.callees(createUser).contains(assignRole), "createUser should call assignRole")
+        assertTrue(callGraph.callers(assignRole).contains(createUser), "assignRole should be called by createUser")
+        assertTrue(callGraph.reachable(createUser).contains(repositoryAssignRole), "The repository should be reachable from createUser")
+    }
+
+    @Test
+    fun testBuildsTheSameCallGraphFromTheStore() = runBlocking {
+        val irData = CodeAnalyzer("src/test/kotlin/org/protogalaxy/fractalfathom/cli/resources").analyzeProject()
+        val store = ColumnarIRStore()
+        irData.forEach { store.add(it) }
+
+        val fromIR = CallGraphIndex.fromIR(irData)
+        val fromStore = CallGraphIndex.fromStore(store)
+
+        assertEquals(fromIR.methodCount, fromStore.methodCount, "Both call graphs should index the same methods")
+        assertEquals(fromIR.callCount, fromStore.callCount, "Both call graphs should hold the same calls")
+        (0 until fromIR.methodCount).forEach { id ->
+            val methodKey = fromIR.methodKeyOf(id)
+            assertEquals(fromIR.callers(methodKey), fromStore.callers(methodKey), "Callers of $methodKey")
+            assertEquals(fromIR.callees(methodKey), fromStore.callees(methodKey), "Callees of $methodKey")
+        }
+    }
+
+    @Test
+    fun testBuildsCompressedRows() {
+        val builder = CallGraphIndex.Builder()
+        builder.addCall("a", "b")
+        builder.addCall("a", "c")
+        builder.addCall("a", "b")
+        builder.addCall("b", "c")
+        builder.addCall("c", "a")
+        builder.addMethod("d")
+        val callGraph = builder.build()
+
+        val (a, b, c, d) = listOf("a", "b", "c", "d").map { callGraph.idOf(it) }
+        assertEquals(4, callGraph.methodCount, "Every method should be indexed once")
+        assertEquals(4, callGraph.callCount, "Duplicate calls should be stored once")
+        assertArrayEquals(intArrayOf(b, c), callGraph.calleesOf(a))
+        assertArrayEquals(intArrayOf(a, b), callGraph.callersOf(c))
+        assertEquals(setOf(a, b, c), callGraph.reachableFrom(a).stream().toArray().toSet(), "A cycle should reach its start")
+        assertTrue(callGraph.reachableFrom(d).isEmpty, "A method without calls should reach nothing")
+        assertTrue(callGraph.reachingTo(d).isEmpty, "A method without callers should be reached by nothing")
+        assertEquals(-1, callGraph.idOf("e"))
+    }
+
+    @Test
+    fun testQueriesLargeCallGraph() {
+        val methodCount = 200_000
+        val callCount = 1_000_000
+        val random = Random(42)
+
+        val builder = CallGraphIndex.Builder()
+        repeat(methodCount) { builder.addMethod("m$it") }
+        repeat(callCount) { builder.addCall(random.nextInt(methodCount), random.nextInt(methodCount)) }
+
+        val buildStart = System.nanoTime()
+        val callGraph = builder.build()
+        val buildMillis = (System.nanoTime() - buildStart) / 1_000_000
+
+        val queries = 10_000
+        var found = 0L
+        val queryStart = System.nanoTime()
+        repeat(queries) { query ->
+            callGraph.forEachCaller(query) { found++ }
+            callGraph.forEachCallee(query) { found++ }
+        }
+        val queryNanos = (System.nanoTime() - queryStart) / queries
+
+        logger.info { "Built ${callGraph.callCount} calls in ${buildMillis}ms, caller and callee queries take ${queryNanos}ns" }
+
+        assertEquals(methodCount, callGraph.methodCount)
+        assertTrue(found > 0, "Random calls should be found")
+        assertTrue(callGraph.reachableFrom(0).cardinality() > methodCount / 2, "A random graph of this density should be mostly connected")
+    }
+}
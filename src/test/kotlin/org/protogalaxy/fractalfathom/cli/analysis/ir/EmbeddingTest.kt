@@ -0,0 +1,58 @@
+package org.protogalaxy.fractalfathom.cli.analysis.ir
+
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.protogalaxy.fractalfathom.cli.output.IRFormat
+import kotlin.math.abs
+import kotlin.random.Random
+
+class EmbeddingTest {
+
+    private val mapper = jacksonObjectMapper()
+
+    private val values = FloatArray(768) { Random(it).nextFloat() * 2 - 1 }
+
+    @Test
+    fun testKeepsValuesOfLists() {
+        val embedding = Embedding(listOf(1.0, -2.5, 3.25))
+
+        assertEquals(listOf(1.0f, -2.5f, 3.25f), embedding.values, "Values should be kept as floats")
+        assertEquals(3, embedding.dimension)
+        assertEquals(EmbeddingStorage.FLOAT, embedding.storage)
+    }
+
+    @Test
+    fun testQuantizationErrorIsBoundedByHalfTheScale() {
+        val quantized = Embedding(values.copyOf()).quantize()
+
+        assertEquals(EmbeddingStorage.INT8, quantized.storage)
+        assertEquals(values.size, quantized.dimension)
+        values.forEachIndexed { index, value ->
+            assertTrue(abs(value - quantized[index]) <= quantized.scale / 2 + 1e-6f, "Value $index should be within half a step")
+        }
+        assertEquals(EmbeddingStorage.FLOAT, quantized.withStorage(EmbeddingStorage.FLOAT).storage)
+
+        val zero = Embedding(FloatArray(4)).quantize()
+        assertEquals(listOf(0f, 0f, 0f, 0f), zero.values, "A zero vector should stay zero")
+    }
+
+    @Test
+    fun testSerializesBothStorageModes() {
+        val embedding = Embedding(values.copyOf())
+        val quantized = embedding.quantize()
+
+        val json = mapper.writeValueAsString(embedding)
+        assertTrue(json.startsWith("{\"values\":["), "Float embeddings should keep the previous JSON shape")
+        assertEquals(embedding, mapper.readValue(json, Embedding::class.java))
+        assertEquals(Embedding(listOf(1.0, 2.0)), mapper.readValue("""{"values":[1.0,2.0]}""", Embedding::class.java))
+
+        val quantizedJson = mapper.writeValueAsString(quantized)
+        assertTrue(quantizedJson.length < json.length / 3, "Quantized embeddings should be much smaller in JSON")
+        assertEquals(quantized, mapper.readValue(quantizedJson, Embedding::class.java))
+
+        val smileMapper = IRFormat.SMILE.createMapper()
+        assertEquals(quantized, smileMapper.readValue(smileMapper.writeValueAsBytes(quantized), Embedding::class.java))
+        assertEquals(embedding, smileMapper.readValue(smileMapper.writeValueAsBytes(embedding), Embedding::class.java))
+    }
+}
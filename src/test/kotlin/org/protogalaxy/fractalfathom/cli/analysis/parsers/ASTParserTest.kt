@@ -0,0 +1,71 @@
+package org.protogalaxy.fractalfathom.cli.analysis.parsers
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticStatementEntity
+import spoon.Launcher
+import spoon.reflect.declaration.CtClass
+import java.io.File
+
+class ASTParserTest {
+
+    @TempDir
+    lateinit var sourceDir: File
+
+    @Test
+    fun testLowersNestedBlocks() {
+        val ctClass = parseClass(method("nested", nestedBlocks(depth = 5)))
+
+        val ast = ASTParser().parseAST(ctClass.methods.single())!!
+
+        assertFalse(ast.truncated, "A small body should not be truncated")
+        assertEquals(6, depthOf(ast.statements), "Every nested block should be lowered")
+        assertEquals(ast, IRBuilder().buildClass(ctClass, "Generated.java").methods.single().lowLevelAST)
+    }
+
+    @Test
+    fun testStatementBudgetTruncatesLargeBodies() {
+        val ctClass = parseClass(method("large", (0 until 500).joinToString("\n") { "x += $it;" }))
+        val budget = StatementBudget(maxStatements = 100)
+
+        val ast = ASTParser(budget = budget).parseAST(ctClass.methods.single())!!
+
+        assertTrue(ast.truncated, "A body exceeding the budget should be marked as truncated")
+        assertEquals(100, ast.statements.size)
+        assertEquals("x += 98", ast.statements.last().expression, "The declaration of x should count towards the budget")
+        assertEquals(ast, IRBuilder(statementBudget = budget).buildClass(ctClass, "Generated.java").methods.single().lowLevelAST)
+    }
+
+    @Test
+    fun testDepthBudgetDropsDeepBlocks() {
+        val ctClass = parseClass(method("deep", nestedBlocks(depth = 200)))
+        val budget = StatementBudget(maxDepth = 16)
+
+        val ast = ASTParser(budget = budget).parseAST(ctClass.methods.single())!!
+
+        assertTrue(ast.truncated, "A body nested deeper than the budget should be marked as truncated")
+        assertEquals(16, depthOf(ast.statements))
+        assertEquals(ast, IRBuilder(statementBudget = budget).buildClass(ctClass, "Generated.java").methods.single().lowLevelAST)
+    }
+
+    // Blocks nested `depth` levels deep, each declaring a variable
+    private fun nestedBlocks(depth: Int): String {
+        return (0 until depth).joinToString("") { "{ int v$it = $it; " } + "}".repeat(depth)
+    }
+
+    private fun method(name: String, body: String): String = "void $name() { int x = 0; $body }"
+
+    private fun parseClass(member: String): CtClass<*> {
+        val file = File(sourceDir, "Generated.java").apply { writeText("class Generated {\n$member\n}\n") }
+        val launcher = Launcher()
+        launcher.addInputResource(file.path)
+        launcher.buildModel()
+        return launcher.model.allTypes.single() as CtClass<*>
+    }
+
+    // The depth of the most deeply nested statement, the top-level statements being at depth 1
+    private fun depthOf(statements: List<StaticStatementEntity>?): Int {
+        return statements.orEmpty().maxOfOrNull { 1 + depthOf(it.subStatements) } ?: 0
+    }
+}
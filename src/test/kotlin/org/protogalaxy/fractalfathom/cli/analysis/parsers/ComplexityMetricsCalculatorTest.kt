@@ -0,0 +1,72 @@
+package org.protogalaxy.fractalfathom.cli.analysis.parsers
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.protogalaxy.fractalfathom.cli.analysis.BaseTest
+import org.protogalaxy.fractalfathom.cli.analysis.ir.ComplexityMetrics
+import spoon.Launcher
+
+class ComplexityMetricsCalculatorTest : BaseTest() {
+
+    @Test
+    fun testCalculateMethodComplexity() {
+        val ctClass = Launcher.parseClass(
+            """
+            class Sample {
+                int classify(int[] values, boolean strict) {
+                    int result = 0;
+                    for (int value : values) {
+                        if (value > 0 && strict) {
+                            result++;
+                        } else if (value < 0) {
+                            result--;
+                        } else {
+                            switch (value) {
+                                case 0: result += 10; break;
+                                default: result = strict ? 1 : 2;
+                            }
+                        }
+                    }
+                    try {
+                        result /= values.length;
+                    } catch (ArithmeticException e) {
+                        result = -1;
+                    }
+                    return result;
+                }
+            }
+            """.trimIndent()
+        )
+
+        val metrics = ComplexityMetricsCalculator().calculateComplexity(ctClass.getMethodsByName("classify").single())
+
+        assertAll("Method Complexity",
+            { assertEquals(8, metrics.cyclomaticComplexity, "Every decision point should add one path") },
+            { assertEquals(3, metrics.nestingDepth, "An else-if should stay on the level of its if") },
+            { assertEquals(8, metrics.branchCount, "Every alternative of a conditional construct should be a branch") }
+        )
+    }
+
+    @Test
+    fun testCalculateClassComplexity() {
+        val metrics = ComplexityMetricsCalculator().calculateComplexity(ctClass)
+
+        assertEquals(ComplexityMetrics(cyclomaticComplexity = 16, nestingDepth = 1, branchCount = 8), metrics,
+            "Class metrics should aggregate the metrics of createUser, deleteUser and updateUserEmail")
+    }
+
+    @Test
+    fun testFusedPassMatchesCalculator() {
+        val classEntity = IRBuilder().buildClass(ctClass, "UserService.java")
+        val calculator = ComplexityMetricsCalculator()
+
+        classEntity.methods.forEach { method ->
+            assertEquals(
+                calculator.calculateComplexity(ctClass.getMethodsByName(method.name).single()),
+                method.complexityMetrics,
+                "The fused pass should compute the same metrics for ${method.name}"
+            )
+        }
+        assertEquals(calculator.calculateComplexity(ctClass), classEntity.complexityMetrics)
+    }
+}
@@ -0,0 +1,103 @@
+package org.protogalaxy.fractalfathom.cli.analysis.parsers
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.node.ObjectNode
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.platform.commons.logging.LoggerFactory
+import org.protogalaxy.fractalfathom.cli.analysis.DetailLevel
+import spoon.Launcher
+import spoon.reflect.declaration.CtClass
+import java.lang.management.ManagementFactory
+
+class IRBuilderTest {
+
+    private val mapper = jacksonObjectMapper().apply { registerModule(JavaTimeModule()) }
+    private val logger = LoggerFactory.getLogger(IRBuilderTest::class.java)
+
+    private lateinit var ctClasses: List<CtClass<*>>
+    private lateinit var sourceBuffers: SourceBuffers
+
+    @BeforeEach
+    fun setUp() {
+        val launcher = Launcher()
+        launcher.environment.noClasspath = true
+        launcher.addInputResource("src/test/kotlin/org/protogalaxy/fractalfathom/cli")
+        launcher.buildModel()
+        ctClasses = launcher.model.allTypes.filterIsInstance<CtClass<*>>()
+        sourceBuffers = SourceBuffers(launcher.environment.encoding)
+    }
+
+    @Test
+    fun testBuildsSameIRAsParsers() {
+        assertTrue(ctClasses.isNotEmpty(), "Expected classes in the test resources")
+
+        listOf(null, sourceBuffers).forEach { buffers ->
+            val classParser = ClassParser(buffers)
+            val irBuilder = IRBuilder(buffers)
+            ctClasses.forEach { ctClass ->
+                val filePath = ctClass.position.file.path
+                assertEquals(
+                    normalized(classParser.parseClass(ctClass, filePath)),
+                    normalized(irBuilder.buildClass(ctClass, filePath)),
+                    "The fused builder should produce the same IR for ${ctClass.qualifiedName}"
+                )
+            }
+        }
+    }
+
+    @Test
+    fun testAllocatesLessPerClass() {
+        val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val iterations = 20
+
+        fun allocatedBytesPerClass(parse: (CtClass<*>) -> Unit): Long {
+            repeat(3) { ctClasses.forEach(parse) }   // Warm-up
+            val before = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().threadId())
+            repeat(iterations) { ctClasses.forEach(parse) }
+            val after = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().threadId())
+            return (after - before) / (iterations * ctClasses.size)
+        }
+
+        val irBuilder = IRBuilder(sourceBuffers)
+        val parserBytes = allocatedBytesPerClass { ClassParser(sourceBuffers).parseClass(it, it.position.file.path) }
+        val builderBytes = allocatedBytesPerClass { irBuilder.buildClass(it, it.position.file.path) }
+
+        logger.info { "Allocated bytes per class: parsers $parserBytes, fused builder $builderBytes" }
+        assertTrue(builderBytes < parserBytes, "The fused builder should allocate less per class")
+    }
+
+    @Test
+    fun testLowerDetailAllocatesLess() {
+        val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val iterations = 20
+
+        // Statements are pretty-printed, like by default
+        val bytesByLevel = DetailLevel.entries.associateWith { detailLevel ->
+            val irBuilder = IRBuilder(detailLevel = detailLevel)
+            repeat(3) { ctClasses.forEach { irBuilder.buildClass(it, it.position.file.path) } }   // Warm-up
+            val before = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().threadId())
+            repeat(iterations) { ctClasses.forEach { irBuilder.buildClass(it, it.position.file.path) } }
+            val after = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().threadId())
+            (after - before) / (iterations * ctClasses.size)
+        }
+
+        logger.info { "Allocated bytes per class: ${bytesByLevel.entries.joinToString { "${it.key.option} ${it.value}" }}" }
+        assertTrue(bytesByLevel.getValue(DetailLevel.MEMBERS) < bytesByLevel.getValue(DetailLevel.FULL), "Members should allocate less than full")
+        assertTrue(bytesByLevel.getValue(DetailLevel.STRUCTURE) < bytesByLevel.getValue(DetailLevel.MEMBERS), "Structure should allocate less than members")
+    }
+
+    // The IR as a JSON tree without generated UUIDs and timestamps
+    private fun normalized(value: Any): JsonNode {
+        val tree = mapper.valueToTree<JsonNode>(value)
+        fun strip(node: JsonNode) {
+            if (node is ObjectNode) node.remove(listOf("uuid", "creationTime", "lastUpdatedTime"))
+            node.forEach { strip(it) }
+        }
+        strip(tree)
+        return tree
+    }
+}
@@ -32,4 +32,23 @@ class MethodParserTest : BaseTest() {
             { assertEquals(MappingType.COMPONENT, mappingAnnotation?.type, "Mapping type attribute should match") }
         )
     }
+
+    @Test
+    fun testParseCalledMethods() {
+        val methodParser = MethodParser()
+        val createUserMethod = methodParser.parseMethod(ctClass.methods.first { it.simpleName == "createUser" })
+
+        val assignRoleCall = createUserMethod.calledMethods.find { it.methodName == "assignRole" }
+        assertNotNull(assignRoleCall, "createUser should call assignRole")
+
+        assertAll("Call Properties",
+            { assertEquals("org.protogalaxy.fractalfathom.cli.resources.RoleService", assignRoleCall?.declaringType, "Declaring type should be resolved") },
+            { assertEquals("assignRole(java.lang.String,java.lang.String)", assignRoleCall?.signature, "Signature should be resolved") },
+            { assertEquals(listOf("username", "role"), assignRoleCall?.arguments, "Arguments should match") },
+            { assertEquals(53, assignRoleCall?.sourceCodeLocation?.startLine, "Call line should match") }
+        )
+
+        assertTrue(createUserMethod.calledMethods.any { it.methodName == "<init>" && it.declaringType?.endsWith("User") == true },
+            "The constructor call of the new user should be recorded")
+    }
 }
@@ -0,0 +1,178 @@
+package org.protogalaxy.fractalfathom.cli.analysis.prescan
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.junit.platform.commons.logging.LoggerFactory
+import org.protogalaxy.fractalfathom.cli.analysis.AnalyzerConfig
+import org.protogalaxy.fractalfathom.cli.analysis.CodeAnalyzer
+import java.io.File
+import java.nio.ByteBuffer
+
+class ProjectPrescanTest {
+
+    @TempDir
+    lateinit var projectDir: File
+
+    private val logger = LoggerFactory.getLogger(ProjectPrescanTest::class.java)
+
+    @Test
+    fun testFindsMarkersAtEveryOffset() {
+        val marker = "@FractalFathomMapping(toConcept = \"X\")"
+        (0 until 24).forEach { padding ->
+            val bytes = ("x".repeat(padding) + marker + "y".repeat(padding % 5)).toByteArray()
+            assertTrue(MarkerScanner.containsMarker(ByteBuffer.wrap(bytes)), "Marker after $padding bytes should be found")
+        }
+        assertTrue(MarkerScanner.containsMarker(ByteBuffer.wrap("FractalFathomFeature".toByteArray())))
+        assertFalse(MarkerScanner.containsMarker(ByteBuffer.wrap("FractalFathom FractalFathomType FFFFFFFFFFFFFFFF".toByteArray())))
+        assertFalse(MarkerScanner.containsMarker(ByteBuffer.wrap("FractalFathomFeatur".toByteArray())))
+    }
+
+    @Test
+    fun testScansDeclarationHeaders() {
+        val structure = StructureScanner().scan(
+            """
+            package org.example.orders;
+
+            import java.util.List;
+            import org.example.base.*;
+            import static java.util.Objects.requireNonNull;
+
+            /* class Commented { } */
+            @Service(name = "orders", tags = {"a", "b"})
+            public final class OrderService<T extends Comparable<T>> extends AbstractService<T> implements Handler, java.io.Serializable {
+                private final String text = "class InString { }";
+                private final char brace = '}';
+                void run() { if (true) { List<Order> orders = null; } }
+            }
+
+            interface Handler extends Runnable {}
+
+            record Point(int x, int y) implements Shape {}
+
+            enum Color { RED, GREEN; Color() {} }
+            """.trimIndent()
+        )
+
+        assertEquals("org.example.orders", structure.packageName)
+        assertEquals(mapOf("List" to "java.util.List"), structure.imports)
+        assertEquals(listOf("org.example.base"), structure.wildcardImports)
+        assertEquals(listOf("OrderService", "Handler", "Point", "Color"), structure.types.map { it.name })
+
+        val orderService = structure.types.first()
+        assertEquals(DeclarationKind.CLASS, orderService.kind)
+        assertEquals(listOf("public", "final"), orderService.modifiers)
+        assertEquals("AbstractService", orderService.superClass)
+        assertEquals(listOf("Handler", "java.io.Serializable"), orderService.interfaces)
+        assertEquals(8 to 13, orderService.startLine to orderService.endLine)
+
+        assertEquals(listOf("Runnable"), structure.types[1].interfaces)
+        assertEquals(DeclarationKind.RECORD to listOf("Shape"), structure.types[2].kind to structure.types[2].interfaces)
+        assertEquals(DeclarationKind.ENUM, structure.types[3].kind)
+        assertTrue("Order" in structure.referencedNames, "Names in method bodies should be referenced")
+        assertFalse("Commented" in structure.referencedNames || "InString" in structure.referencedNames, "Comments and strings should be skipped")
+    }
+
+    @Test
+    fun testAnalyzesMarkedFilesAndNeighbors() = runBlocking {
+        writeFile("org/example/Annotated.java", "package org.example; @FractalFathomFeature(name = \"A\") public class Annotated { Helper helper; }")
+        writeFile("org/example/Helper.java", "package org.example; public class Helper {}")
+        writeFile("org/example/Caller.java", "package org.example; public class Caller { Annotated annotated; }")
+        writeFile("org/example/Unrelated.java", "package org.example; public class Unrelated extends Helper implements java.io.Serializable { int x; }")
+
+        val codeAnalyzer = CodeAnalyzer(projectDir.path, AnalyzerConfig(markerPrescan = true))
+        val irData = codeAnalyzer.analyzeProject().associateBy { it.name }
+        val prescan = codeAnalyzer.lastPrescan!!
+
+        assertEquals(1, prescan.markedFileCount)
+        assertEquals(2, prescan.neighborFileCount, "The referenced and the referencing class should be analyzed in full")
+        assertEquals(1, prescan.structuralFileCount)
+
+        assertEquals(1, irData.getValue("Annotated").fields.size, "Marked files should be analyzed in full")
+        val unrelated = irData.getValue("Unrelated")
+        assertTrue(unrelated.fields.isEmpty(), "Other files should only get the structural IR")
+        assertEquals("org.example.Helper", unrelated.superClass, "Names of project types should be resolved")
+        assertEquals(listOf("java.io.Serializable"), unrelated.interfaces)
+        assertNull(unrelated.complexityMetrics, "The structural IR should not measure complexity")
+    }
+
+    @Test
+    fun testFindsTheFilesReachedByTypeName() = runBlocking {
+        val child = writeFile("org/example/Child.java", "package org.example; public class Child extends Base {}")
+        val base = writeFile("org/example/Base.java", "package org.example; public class Base { Helper helper() { return null; } }")
+        val helper = writeFile("org/example/Helper.java", "package org.example; public class Helper {}")
+        val unrelated = writeFile("org/example/Unrelated.java", "package org.example; public class Unrelated { Child child; }")
+        val prescan = ProjectPrescan.scan(listOf(child, base, helper, unrelated).map { it.path })
+
+        assertEquals(setOf(base.path, helper.path), prescan.reachableFiles(listOf(child.path)), "Types of reached files should be followed")
+        assertEquals(setOf(child.path, base.path, helper.path), prescan.reachableFiles(listOf(unrelated.path)))
+        assertTrue(prescan.reachableFiles(listOf(helper.path)).isEmpty(), "Files mentioning no project type should reach nothing")
+    }
+
+    @Test
+    fun testStructuralIRMatchesFullAnalysis() = runBlocking {
+        val projectPath = "src/test/kotlin/org/protogalaxy/fractalfathom/cli/resources"
+        val fullIrData = CodeAnalyzer(projectPath).analyzeProject()
+        val filePaths = fullIrData.map { it.filePath }.distinct()
+        val prescan = ProjectPrescan.scan(filePaths)
+
+        val structuralIrData = filePaths.flatMap { prescan.structuralClasses(it) }
+        assertEquals(
+            fullIrData.map { listOf(it.packageName, it.name, it.filePath, it.superClass, it.interfaces, it.sourceCodeLocation?.endLine) },
+            structuralIrData.map { listOf(it.packageName, it.name, it.filePath, it.superClass, it.interfaces, it.sourceCodeLocation?.endLine) }
+        )
+    }
+
+    @Test
+    fun testPrescanSavesAnalysisTime() = runBlocking {
+        val fileCount = 1000
+        repeat(fileCount) { index ->
+            // One file in fifty uses a FractalFathom annotation
+            val annotation = if (index % 50 == 0) "@FractalFathomFeature(name = \"Service$index\")\n" else ""
+            writeFile(
+                "org/example/module${index % 10}/Service$index.java",
+                """
+                package org.example.module${index % 10};
+
+                import java.util.List;
+
+                ${annotation}public class Service$index {
+                    private final List<String> items = new java.util.ArrayList<>();
+
+                    public void addItem(String item) {
+                        if (item != null && !items.contains(item)) {
+                            items.add(item.trim());
+                        }
+                    }
+                }
+                """.trimIndent()
+            )
+        }
+
+        val fullStart = System.nanoTime()
+        val fullIrData = CodeAnalyzer(projectDir.path).analyzeProject()
+        val fullMillis = (System.nanoTime() - fullStart) / 1_000_000
+
+        val codeAnalyzer = CodeAnalyzer(projectDir.path, AnalyzerConfig(markerPrescan = true))
+        val prescanStart = System.nanoTime()
+        val prescanIrData = codeAnalyzer.analyzeProject()
+        val prescanMillis = (System.nanoTime() - prescanStart) / 1_000_000
+
+        val prescan = codeAnalyzer.lastPrescan!!
+        logger.info {
+            "Analysis of $fileCount files: ${fullMillis}ms in full, ${prescanMillis}ms with the pre-scan " +
+                    "(${prescan.markedFileCount} annotated, ${prescan.neighborFileCount} neighbors, ${prescan.structuralFileCount} structural)"
+        }
+        assertEquals(fullIrData.map { it.name }, prescanIrData.map { it.name }, "Both modes should find the same classes")
+        assertEquals(fileCount / 50, prescan.markedFileCount)
+        assertTrue(prescanMillis < fullMillis, "The pre-scan should save analysis time")
+    }
+
+    private fun writeFile(relativePath: String, content: String): File {
+        val file = File(projectDir, relativePath)
+        file.parentFile.mkdirs()
+        file.writeText(content)
+        return file
+    }
+}
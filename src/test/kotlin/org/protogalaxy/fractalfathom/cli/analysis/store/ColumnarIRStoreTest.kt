@@ -0,0 +1,168 @@
+package org.protogalaxy.fractalfathom.cli.analysis.store
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.junit.platform.commons.logging.LoggerFactory
+import org.protogalaxy.fractalfathom.cli.analysis.AnalyzerConfig
+import org.protogalaxy.fractalfathom.cli.analysis.CodeAnalyzer
+import org.protogalaxy.fractalfathom.cli.analysis.DetailLevel
+import org.protogalaxy.fractalfathom.cli.analysis.StatementTextMode
+import org.protogalaxy.fractalfathom.cli.analysis.ir.Embedding
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.analysis.staticCodeAnalysis.StaticStatementEntity
+import org.protogalaxy.fractalfathom.cli.modelInference.LLMUtils
+import org.protogalaxy.fractalfathom.cli.output.IRDataWriter
+import org.protogalaxy.fractalfathom.cli.output.IRFormat
+import java.io.File
+
+class ColumnarIRStoreTest {
+
+    @TempDir
+    lateinit var tempDir: File
+
+    private val logger = LoggerFactory.getLogger(ColumnarIRStoreTest::class.java)
+    private val projectPath = "src/test/kotlin/org/protogalaxy/fractalfathom/cli/resources"
+
+    @Test
+    fun testMaterializedClassesEqualTheAddedOnes() = runBlocking {
+        StatementTextMode.entries.forEach { mode ->
+            val irData = CodeAnalyzer(projectPath, AnalyzerConfig(statementTextMode = mode)).analyzeProject()
+            val store = ColumnarIRStore()
+            irData.forEach { store.add(it) }
+
+            assertEquals(irData.size, store.classCount)
+            assertEquals(irData, store.asSequence().toList(), "Materialized classes should equal the added ones in $mode mode")
+        }
+    }
+
+    @Test
+    fun testKeepsMissingComplexityMetrics() = runBlocking {
+        val irData = CodeAnalyzer(projectPath, AnalyzerConfig(detailLevel = DetailLevel.STRUCTURE)).analyzeProject()
+        val store = ColumnarIRStore()
+        irData.forEach { store.add(it) }
+
+        assertTrue(store.classes().all { it.complexityMetrics == null }, "Classes without metrics should not get zero metrics")
+        assertEquals(irData, store.asSequence().toList())
+    }
+
+    @Test
+    fun testViewsDecodeColumnsWithoutMaterializing() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+        val store = ColumnarIRStore()
+        val classCount = store.addAll(CodeAnalyzer(projectPath).analyzeProjectFlow())
+        assertEquals(irData.size, classCount)
+
+        val irClass = irData.first { it.name == "UserService" }
+        val view = store.classes().first { it.name == "UserService" }
+        assertEquals(irClass.methods.map { it.name }, view.methods.map { it.name })
+        assertEquals(irClass.complexityMetrics, view.complexityMetrics)
+        irClass.methods.zip(view.methods).forEach { (method, methodView) ->
+            assertEquals(
+                method.lowLevelAST?.statements?.map { it.expression },
+                methodView.statements?.map { it.expression?.toString() },
+                "Statement text of ${method.name} should be decoded from the text heap"
+            )
+        }
+        assertEquals(
+            LLMUtils.selectClassesForPrompt(irData, 3).map { it.name },
+            LLMUtils.selectIndicesForPrompt(store.classCount, 3) { store.classView(it).complexityMetrics }.map { store.classView(it).name },
+            "The store should select the same classes for the prompt"
+        )
+    }
+
+    @Test
+    fun testKeepsEmbeddingsInBothStorageModes() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+        val store = ColumnarIRStore()
+        irData.forEach { store.add(it) }
+
+        val embedded = irData.mapIndexed { index, irClass -> withEmbeddings(irClass, quantized = index % 2 == 0) }
+        embedded.forEachIndexed { index, irClass -> store.setEmbeddings(index, irClass) }
+
+        assertEquals(embedded, store.asSequence().toList(), "Embeddings should be stored for classes, fields and methods")
+    }
+
+    @Test
+    fun testWritesTheSameOutputAsTheList() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+        val store = ColumnarIRStore()
+        irData.forEach { store.add(it) }
+
+        val listFile = File(tempDir, "list.json")
+        val storeFile = File(tempDir, "store.json")
+        IRDataWriter(IRFormat.JSON).write(irData, listFile)
+        IRDataWriter(IRFormat.JSON).write(store, storeFile)
+
+        assertEquals(listFile.readText(), storeFile.readText(), "The store should be written like the list")
+    }
+
+    @Test
+    fun testStoresLargeProject() = runBlocking {
+        writeCorpus(fileCount = 400)
+        val config = AnalyzerConfig(statementTextMode = StatementTextMode.PRETTY_PRINT)
+
+        val irData = CodeAnalyzer(tempDir.path, config).analyzeProject()
+        val statementCount = irData.sumOf { irClass -> irClass.methods.sumOf { countStatements(it.lowLevelAST?.statements) } }
+
+        val store = ColumnarIRStore()
+        store.addAll(CodeAnalyzer(tempDir.path, config).analyzeProjectFlow())
+
+        logger.info {
+            "${store.classCount} classes, ${store.statementCount} statements: " +
+                    "${store.offHeapBytes / 1024}KB off-heap and ${store.symbolCount} symbols on the heap"
+        }
+        assertEquals(statementCount, store.statementCount, "Every statement should have a row")
+    }
+
+    private fun withEmbeddings(irClass: IRClassEntity, quantized: Boolean): IRClassEntity {
+        fun embedding(seed: Int): Embedding {
+            val embedding = Embedding(FloatArray(8) { (seed * 31 + it) % 17 - 8f })
+            return if (quantized) embedding.quantize() else embedding
+        }
+        return irClass.copy(
+            embedding = embedding(irClass.name.hashCode()),
+            fields = irClass.fields.map { it.copy(embedding = embedding(it.name.hashCode())) },
+            methods = irClass.methods.map { it.copy(embedding = embedding(it.name.hashCode())) }
+        )
+    }
+
+    private fun countStatements(statements: List<StaticStatementEntity>?): Int {
+        return statements?.sumOf { 1 + countStatements(it.subStatements) } ?: 0
+    }
+
+    private fun writeCorpus(fileCount: Int) {
+        repeat(fileCount) { index ->
+            val file = File(tempDir, "src/org/example/Service$index.java")
+            file.parentFile.mkdirs()
+            file.writeText(
+                """
+                package org.example;
+
+                import java.util.List;
+
+                public class Service$index {
+                    private final List<String> items = new java.util.ArrayList<>();
+
+                    public int process(List<String> input, int limit) {
+                        int count = 0;
+                        for (String item : input) {
+                            if (item == null || item.isEmpty()) {
+                                continue;
+                            }
+                            if (count < limit) {
+                                items.add(item.trim());
+                                count++;
+                            } else {
+                                break;
+                            }
+                        }
+                        return count;
+                    }
+                }
+                """.trimIndent()
+            )
+        }
+    }
+}
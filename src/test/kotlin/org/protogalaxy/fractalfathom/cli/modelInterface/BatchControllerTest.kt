@@ -0,0 +1,103 @@
+package org.protogalaxy.fractalfathom.cli.modelInterface
+
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeoutOrNull
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.protogalaxy.fractalfathom.cli.modelInference.AdaptiveBatching
+import org.protogalaxy.fractalfathom.cli.modelInference.BatchController
+
+class BatchControllerTest {
+
+    private val bounds = AdaptiveBatching(
+        minBatchTokens = 256, maxBatchTokens = 4_096, initialBatchTokens = 1_024,
+        minConcurrency = 1, maxConcurrency = 4, initialConcurrency = 2,
+        targetLatencyMillis = 100, batchTokensStep = 256
+    )
+
+    @Test
+    fun testFixedBatchesIgnoreLatency() {
+        val controller = BatchController(batchSize = 10, maxConcurrentRequests = 3)
+        assertFalse(controller.isFull(9, 100_000))
+        assertTrue(controller.isFull(10, 0))
+
+        repeat(10) { controller.release(10_000_000_000, 1_000, failed = it % 2 == 0) }
+        assertEquals(3, controller.concurrency)
+    }
+
+    @Test
+    fun testFastRequestsGrowAdditivelyUpToTheBounds() {
+        val controller = BatchController(10, 4, bounds)
+        assertTrue(controller.isFull(1, 1_024))
+        assertFalse(controller.isFull(1, 1_023))
+
+        controller.release(millis(50), 1_024)
+        assertEquals(1_280, controller.batchTokens, "A fast request should add one step")
+        controller.release(millis(50), 1_024)
+        assertEquals(3, controller.concurrency, "A window of fast requests should add one request in flight")
+
+        repeat(100) { controller.release(millis(50), 1_024) }
+        assertEquals(4_096, controller.batchTokens)
+        assertEquals(4, controller.concurrency)
+        assertTrue(controller.isFull(bounds.maxBatchSize, 0), "The entity count stays bounded for short snippets")
+    }
+
+    @Test
+    fun testSlowRequestsShrinkMultiplicativelyOncePerWindow() {
+        val controller = BatchController(10, 4, bounds)
+        repeat(100) { controller.release(millis(50), 4_096) }
+
+        controller.release(millis(125), 4_096)
+        assertEquals((4_096 * 0.8).toInt(), controller.batchTokens, "The budget should scale to the target latency")
+        assertEquals(3, controller.concurrency)
+
+        // The other requests of the window report the same overload
+        controller.release(millis(400), 4_096)
+        controller.release(millis(400), 4_096)
+        assertEquals((4_096 * 0.8).toInt(), controller.batchTokens)
+
+        controller.release(millis(400), 4_096)
+        assertEquals((4_096 * 0.8 * 0.5).toInt(), controller.batchTokens, "A decrease should be at most a half")
+        assertEquals(2, controller.concurrency)
+    }
+
+    @Test
+    fun testFailuresHalveDownToTheBounds() {
+        val controller = BatchController(10, 4, bounds)
+        repeat(20) { controller.release(millis(1), 1_024, failed = true) }
+        assertEquals(256, controller.batchTokens)
+        assertEquals(1, controller.concurrency)
+    }
+
+    @Test
+    fun testPermitsFollowTheConcurrency() = runBlocking {
+        val controller = BatchController(10, 4, bounds)
+        controller.acquire()
+        controller.acquire()
+        assertNull(withTimeoutOrNull(50) { controller.acquire() }, "Only two requests should be allowed at first")
+
+        // Two fast requests open a third slot
+        controller.release(millis(10), 100)
+        controller.release(millis(10), 100)
+        assertEquals(3, controller.concurrency)
+        repeat(3) { assertNotNull(withTimeoutOrNull(50) { controller.acquire() }) }
+        assertNull(withTimeoutOrNull(50) { controller.acquire() })
+
+        // A failure halves the slots; the permit it returns is taken back and the rest is owed
+        controller.release(millis(10), 100, failed = true)
+        assertEquals(1, controller.concurrency)
+        controller.release(millis(200), 100)
+        assertNull(withTimeoutOrNull(50) { controller.acquire() }, "The released permits should settle the debt")
+        controller.release(millis(10), 100)
+        assertNotNull(withTimeoutOrNull(50) { controller.acquire() })
+    }
+
+    @Test
+    fun testEstimatesTokensWithinTheModelLimit() {
+        assertEquals(2, BatchController.estimateTokens(""))
+        assertEquals(27, BatchController.estimateTokens("x".repeat(100)))
+        assertEquals(BatchController.MAX_SNIPPET_TOKENS, BatchController.estimateTokens("x".repeat(10_000)))
+    }
+
+    private fun millis(value: Long): Long = value * 1_000_000
+}
@@ -0,0 +1,129 @@
+package org.protogalaxy.fractalfathom.cli.modelInterface
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.junit.platform.commons.logging.LoggerFactory
+import org.protogalaxy.fractalfathom.cli.modelInference.EmbeddingCache
+import java.io.File
+import java.lang.management.ManagementFactory
+
+class EmbeddingCacheTest {
+
+    @TempDir
+    lateinit var tempDir: File
+
+    private val logger = LoggerFactory.getLogger(EmbeddingCacheTest::class.java)
+    private val modelId = "test-model"
+
+    @Test
+    fun testKeepsEmbeddingsAcrossRuns() {
+        val cache = EmbeddingCache(tempDir, modelId)
+        assertNull(cache.get("Field: id: java.lang.Long"))
+        cache.put("Field: id: java.lang.Long", vector(1))
+        cache.put("Field: name: java.lang.String", vector(2))
+        cache.flush()
+        assertArrayEquals(vector(1), cache.get("Field: id: java.lang.Long"))
+
+        val reopened = EmbeddingCache(tempDir, modelId)
+        assertEquals(2, reopened.size)
+        assertArrayEquals(vector(2), reopened.get("Field: name: java.lang.String"), "Embeddings should be read back from the files")
+        assertNull(reopened.get("Field: name: java.lang.Object"))
+        assertEquals(1, reopened.hits)
+        assertEquals(1, reopened.misses)
+
+        assertNull(EmbeddingCache(tempDir, "other-model").get("Field: name: java.lang.String"), "Another model should not reuse the embeddings")
+    }
+
+    @Test
+    fun testEvictsTheLeastRecentlyUsedEntries() {
+        // Room for 100 vectors of 32 floats
+        val cache = EmbeddingCache(tempDir, modelId, maxBytes = 100L * 32 * 4)
+        repeat(100) { cache.put("snippet $it", vector(it)) }
+        repeat(10) { assertNotNull(cache.get("snippet $it")) }
+
+        cache.put("snippet 100", vector(100))
+        assertEquals(25, cache.evictions)
+        assertEquals(76, cache.size)
+        (0 until 10).forEach { assertArrayEquals(vector(it), cache.get("snippet $it"), "Recently used snippet $it should be kept") }
+        (10 until 35).forEach { assertNull(cache.get("snippet $it"), "Snippet $it should be evicted") }
+        (35..100).forEach { assertArrayEquals(vector(it), cache.get("snippet $it")) }
+
+        // A smaller limit keeps the most recently used entries
+        cache.flush()
+        val smaller = EmbeddingCache(tempDir, modelId, maxBytes = 20L * 32 * 4)
+        assertEquals(20, smaller.size)
+        (81..100).forEach { assertArrayEquals(vector(it), smaller.get("snippet $it")) }
+    }
+
+    @Test
+    fun testRebuildsTheFilesInPlace() {
+        // The first cache keeps its files mapped, like a cache of an earlier run that was not yet collected
+        val first = EmbeddingCache(tempDir, modelId, maxBytes = 100L * 32 * 4)
+        repeat(100) { first.put("snippet $it", vector(it)) }
+        first.flush()
+        val indexFile = File(tempDir, "embeddings.idx")
+        val indexBytes = indexFile.length()
+
+        // Shrinking and growing the limit rewrite the mapped files without deleting them
+        val smaller = EmbeddingCache(tempDir, modelId, maxBytes = 20L * 32 * 4)
+        assertEquals(20, smaller.size)
+        smaller.flush()
+        assertEquals(indexBytes, indexFile.length(), "The index file should be reused")
+        val larger = EmbeddingCache(tempDir, modelId, maxBytes = 100L * 32 * 4)
+        assertEquals(20, larger.size)
+        (0 until 80).forEach { assertNull(larger.get("snippet $it"), "Stale slots of snippet $it should be cleared") }
+        (80 until 100).forEach { assertArrayEquals(vector(it), larger.get("snippet $it")) }
+
+        larger.put("snippet 100", vector(100))
+        larger.flush()
+        val reopened = EmbeddingCache(tempDir, modelId, maxBytes = 100L * 32 * 4)
+        assertEquals(21, reopened.size)
+        (80..100).forEach { assertArrayEquals(vector(it), reopened.get("snippet $it")) }
+    }
+
+    @Test
+    fun testLooksUpWithoutAllocating() {
+        val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val cache = EmbeddingCache(tempDir, modelId)
+        val snippets = List(1_000) { "Method: get$it\nReturnType: java.lang.String\nParameters: " }
+        snippets.forEachIndexed { index, snippet -> if (index % 2 == 0) cache.put(snippet, vector(index)) }
+        val into = FloatArray(32)
+
+        repeat(20) { for (i in snippets.indices) cache.read(snippets[i], into) }   // Warm-up
+        val before = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().threadId())
+        var hits = 0
+        repeat(100) { for (i in snippets.indices) if (cache.read(snippets[i], into)) hits++ }
+        val after = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().threadId())
+
+        logger.info { "Allocated ${after - before} bytes for ${100 * snippets.size} lookups" }
+        assertEquals(50_000, hits)
+        assertTrue(after - before < 1024, "Lookups should not allocate, allocated ${after - before} bytes")
+    }
+
+    @Test
+    fun testEvictsWithoutCopyingTheVectorsOntoTheHeap() {
+        val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val dimension = 768
+        val vectorBytes = 1_000L * dimension * Float.SIZE_BYTES
+        val cache = EmbeddingCache(tempDir, modelId, maxBytes = vectorBytes)
+        val embedding = FloatArray(dimension) { it.toFloat() }
+        repeat(1_001) { cache.put("warm-up $it", embedding) }   // Warm-up, including one eviction
+        var snippetCount = 0
+        while (cache.size < 1_000) cache.put("snippet ${snippetCount++}", embedding)
+        repeat(100) { cache.get("snippet $it") }
+
+        val evictions = cache.evictions
+        val before = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().threadId())
+        cache.put("snippet $snippetCount", embedding)
+        val after = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().threadId())
+
+        logger.info { "Allocated ${after - before} bytes to evict from $vectorBytes bytes of vectors" }
+        assertEquals(250, cache.evictions - evictions)
+        assertTrue(after - before < vectorBytes / 8, "Eviction should not copy the vectors, allocated ${after - before} bytes")
+        (0 until 100).forEach { assertArrayEquals(embedding, cache.get("snippet $it"), "Recently used snippet $it should be kept") }
+        assertArrayEquals(embedding, cache.get("snippet $snippetCount"))
+    }
+
+    private fun vector(seed: Int): FloatArray = FloatArray(32) { seed + it / 100f }
+}
@@ -0,0 +1,102 @@
+package org.protogalaxy.fractalfathom.cli.modelInterface
+
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import com.fasterxml.jackson.module.kotlin.readValue
+import com.sun.net.httpserver.HttpServer
+import java.net.InetSocketAddress
+import java.time.Duration
+import java.util.Collections
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A local stand-in for the embedding endpoint of `server.py`, recording the requests it receives.
+ *
+ * The embedding of an entity is `[hash of the snippet, length of the snippet]`, see [expectedEmbedding].
+ *
+ * @param delayMillis How long the server takes to answer a request, regardless of its size.
+ * @param nanosPerChar How much longer a request takes for every character of its snippets.
+ * @param padded Whether the snippets of a request are padded to the longest one, like in the batched inference of
+ * `server.py`, so every snippet costs as much as the longest one. Snippets are truncated to 512 tokens of about
+ * four characters either way.
+ * @param serialized Whether requests are computed one at a time, like on a single GPU, so concurrent requests
+ * queue up and take longer.
+ * @param failures The number of requests, from the first one, answered with an error.
+ */
+class EmbeddingStubServer(
+    private val delayMillis: Long = 20,
+    private val nanosPerChar: Long = 0,
+    private val padded: Boolean = false,
+    private val serialized: Boolean = false,
+    failures: Int = 0
+) : AutoCloseable {
+
+    private val mapper = jacksonObjectMapper()
+    private val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+    private val inFlight = AtomicInteger()
+    private val remainingFailures = AtomicInteger(failures)
+    private val computeLock = Any()
+
+    /** The number of entities of every request, in arrival order. */
+    val batchSizes: MutableList<Int> = Collections.synchronizedList(ArrayList())
+
+    /** The lengths of the snippets of every request, in arrival order. */
+    val snippetLengths: MutableList<List<Int>> = Collections.synchronizedList(ArrayList())
+
+    /** The number of characters computed for every request, in arrival order. */
+    val computedChars: MutableList<Int> = Collections.synchronizedList(ArrayList())
+
+    /** The highest number of requests that were handled at the same time. */
+    val maxInFlight = AtomicInteger()
+
+    val endpointURL: String
+        get() = "http://127.0.0.1:${server.address.port}/generate_embeddings"
+
+    init {
+        server.executor = Executors.newCachedThreadPool()
+        server.createContext("/generate_embeddings") { exchange ->
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), ::maxOf)
+            try {
+                val request: Map<String, List<Map<String, String>>> = mapper.readValue(exchange.requestBody)
+                val entities = request.getValue("ir_entities")
+                if (remainingFailures.getAndDecrement() > 0) {
+                    exchange.sendResponseHeaders(500, -1)
+                    exchange.close()
+                    return@createContext
+                }
+                batchSizes.add(entities.size)
+                snippetLengths.add(entities.map { it.getValue("code_snippet").length })
+                val lengths = entities.map { minOf(MAX_SNIPPET_CHARS, it.getValue("code_snippet").length) }
+                val chars = if (padded) lengths.size * (lengths.maxOrNull() ?: 0) else lengths.sum()
+                computedChars.add(chars)
+                val computeTime = Duration.ofMillis(delayMillis).plusNanos(nanosPerChar * chars)
+                if (serialized) synchronized(computeLock) { Thread.sleep(computeTime) } else Thread.sleep(computeTime)
+
+                val embeddings = entities.associate { it.getValue("id") to expectedEmbedding(it.getValue("code_snippet")) }
+                val response = mapper.writeValueAsBytes(mapOf("embeddings" to embeddings))
+                exchange.sendResponseHeaders(200, response.size.toLong())
+                exchange.responseBody.use { it.write(response) }
+            } finally {
+                inFlight.decrementAndGet()
+            }
+        }
+        server.start()
+    }
+
+    override fun close() {
+        server.stop(0)
+        (server.executor as ExecutorService).shutdownNow()
+    }
+
+    companion object {
+        private const val MAX_SNIPPET_CHARS = 2048
+
+        /**
+         * The embedding the server returns for an entity.
+         */
+        fun expectedEmbedding(codeSnippet: String): FloatArray {
+            return floatArrayOf(codeSnippet.hashCode().toFloat(), codeSnippet.length.toFloat())
+        }
+    }
+}
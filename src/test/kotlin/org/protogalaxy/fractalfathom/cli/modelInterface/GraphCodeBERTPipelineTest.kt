@@ -0,0 +1,249 @@
+package org.protogalaxy.fractalfathom.cli.modelInterface
+
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.junit.platform.commons.logging.LoggerFactory
+import org.protogalaxy.fractalfathom.cli.analysis.CodeAnalyzer
+import org.protogalaxy.fractalfathom.cli.analysis.ir.IRClassEntity
+import org.protogalaxy.fractalfathom.cli.analysis.store.ColumnarIRStore
+import org.protogalaxy.fractalfathom.cli.modelInference.AdaptiveBatching
+import org.protogalaxy.fractalfathom.cli.modelInference.EmbeddingCache
+import org.protogalaxy.fractalfathom.cli.modelInference.EmbeddingConfig
+import org.protogalaxy.fractalfathom.cli.modelInference.GraphCodeBERTUtils
+import java.io.File
+
+class GraphCodeBERTPipelineTest {
+
+    @TempDir
+    lateinit var tempDir: File
+
+    private val logger = LoggerFactory.getLogger(GraphCodeBERTPipelineTest::class.java)
+    private val projectPath = "src/test/kotlin/org/protogalaxy/fractalfathom/cli/resources"
+
+    @Test
+    fun testBatchesAreFilledAcrossClasses() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+
+        EmbeddingStubServer().use { server ->
+            val config = EmbeddingConfig(
+                endpointURL = server.endpointURL, batchSize = 16, maxConcurrentRequests = 3, adaptiveBatching = null, bucketByLength = false
+            )
+            val graphCodeBERTUtils = GraphCodeBERTUtils(config = config)
+            val enhanced = graphCodeBERTUtils.enhanceIRDataWithEmbeddings(irData)
+            val snippetCount = graphCodeBERTUtils.lastStatistics!!.uniqueSnippetCount
+            logger.info { "${irData.size} classes, $snippetCount distinct snippets, batches ${server.batchSizes}" }
+
+            assertEquals(snippetCount, server.batchSizes.sum(), "Every distinct snippet should be sent exactly once")
+            assertEquals((snippetCount + 15) / 16, server.batchSizes.size, "Only the last batch may be partial")
+            assertTrue(server.batchSizes.count { it < 16 } <= 1, "Batches should be filled across class boundaries")
+            assertTrue(server.maxInFlight.get() <= 3, "At most 3 requests should be in flight, saw ${server.maxInFlight.get()}")
+
+            assertEquals(irData.map { it.name }, enhanced.map { it.name }, "Classes should keep their order")
+            enhanced.forEach { assertEmbedded(it, graphCodeBERTUtils) }
+        }
+    }
+
+    @Test
+    fun testEntitiesWithEqualSignaturesKeepTheirEmbeddings() = runBlocking {
+        // The same class in two source roots, with different snippets
+        val irClass = CodeAnalyzer(projectPath).analyzeProject().first()
+        val irData = listOf(irClass, irClass.copy(interfaces = irClass.interfaces + "java.io.Serializable"))
+
+        EmbeddingStubServer().use { server ->
+            val config = EmbeddingConfig(
+                endpointURL = server.endpointURL, batchSize = 64, maxConcurrentRequests = 1, adaptiveBatching = null, bucketByLength = false
+            )
+            val graphCodeBERTUtils = GraphCodeBERTUtils(config = config)
+            val enhanced = graphCodeBERTUtils.enhanceIRDataWithEmbeddings(irData)
+
+            assertEquals(1, server.batchSizes.size, "Both classes should be sent in one batch")
+            assertNotEquals(enhanced[0].embedding!!.values, enhanced[1].embedding!!.values)
+            enhanced.forEach { assertEmbedded(it, graphCodeBERTUtils) }
+        }
+    }
+
+    @Test
+    fun testKeepsSeveralRequestsInFlight() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+
+        EmbeddingStubServer(delayMillis = 100).use { server ->
+            val config = EmbeddingConfig(endpointURL = server.endpointURL, batchSize = 2, maxConcurrentRequests = 4, adaptiveBatching = null)
+            GraphCodeBERTUtils(config = config).enhanceIRDataWithEmbeddings(irData)
+
+            assertEquals(4, server.maxInFlight.get(), "Slow requests should overlap up to the limit")
+        }
+    }
+
+    @Test
+    fun testEnhancesTheColumnarStore() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+        val store = ColumnarIRStore()
+        irData.forEach { store.add(it) }
+
+        EmbeddingStubServer().use { server ->
+            val config = EmbeddingConfig(endpointURL = server.endpointURL, batchSize = 7, maxConcurrentRequests = 2)
+            val graphCodeBERTUtils = GraphCodeBERTUtils(config = config)
+            graphCodeBERTUtils.enhanceStoreWithEmbeddings(store)
+
+            val stored = store.asSequence().toList()
+            assertEquals(irData.map { it.name }, stored.map { it.name })
+            stored.forEach { assertEmbedded(it, graphCodeBERTUtils) }
+        }
+    }
+
+    @Test
+    fun testAdaptiveBatchingGrowsWithinTheBounds() = runBlocking {
+        val irData = copiesOfTheProject(40, distinct = true)
+        val bounds = AdaptiveBatching(initialBatchTokens = 512, maxConcurrency = 4, targetLatencyMillis = 500)
+
+        // A single model instance computing one request at a time, a few microseconds per character
+        EmbeddingStubServer(delayMillis = 2, nanosPerChar = 2_000, serialized = true).use { server ->
+            val config = EmbeddingConfig(endpointURL = server.endpointURL, adaptiveBatching = bounds)
+            val graphCodeBERTUtils = GraphCodeBERTUtils(config = config)
+            val enhanced = graphCodeBERTUtils.enhanceIRDataWithEmbeddings(irData)
+            logger.info { "${server.batchSizes.size} requests, batch sizes ${server.batchSizes}, ${server.maxInFlight.get()} in flight" }
+
+            assertTrue(server.batchSizes.max() > 2 * server.batchSizes.first(), "Fast requests should grow the batches")
+            assertTrue(server.maxInFlight.get() in 2..4, "The concurrency should grow within its bounds")
+            enhanced.forEach { assertEmbedded(it, graphCodeBERTUtils) }
+        }
+    }
+
+    @Test
+    fun testAdaptiveBatchingRetriesFailedBatches() = runBlocking {
+        val irData = copiesOfTheProject(2, distinct = true)
+
+        EmbeddingStubServer(failures = 2).use { server ->
+            val fixed = EmbeddingConfig(endpointURL = server.endpointURL, adaptiveBatching = null)
+            assertThrows(Exception::class.java) { GraphCodeBERTUtils(config = fixed).enhanceIRDataWithEmbeddings(irData) }
+        }
+        EmbeddingStubServer(failures = 2).use { server ->
+            val adaptive = EmbeddingConfig(endpointURL = server.endpointURL, adaptiveBatching = AdaptiveBatching(initialConcurrency = 1))
+            val graphCodeBERTUtils = GraphCodeBERTUtils(config = adaptive)
+            val enhanced = graphCodeBERTUtils.enhanceIRDataWithEmbeddings(irData)
+            enhanced.forEach { assertEmbedded(it, graphCodeBERTUtils) }
+        }
+    }
+
+    @Test
+    fun testSendsOnlyUncachedSnippets() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+        val cacheDir = File(tempDir, "embeddings")
+
+        EmbeddingStubServer().use { server ->
+            val config = EmbeddingConfig(endpointURL = server.endpointURL)
+            GraphCodeBERTUtils(config = config, embeddingCache = EmbeddingCache(cacheDir, config.modelId)).enhanceIRDataWithEmbeddings(irData)
+            val firstRunSnippets = server.batchSizes.sum()
+
+            // One changed class in the next run
+            val changed = irData.mapIndexed { index, irClass -> if (index == 0) irClass.copy(interfaces = irClass.interfaces + "java.io.Serializable") else irClass }
+            val cache = EmbeddingCache(cacheDir, config.modelId)
+            val graphCodeBERTUtils = GraphCodeBERTUtils(config = config, embeddingCache = cache)
+            val enhanced = graphCodeBERTUtils.enhanceIRDataWithEmbeddings(changed)
+
+            assertEquals(graphCodeBERTUtils.lastStatistics!!.uniqueSnippetCount, cache.hits + cache.misses)
+            assertEquals(1, cache.misses, "Only the snippet of the changed class should miss")
+            assertEquals(firstRunSnippets + 1, server.batchSizes.sum(), "Only the changed class should be sent")
+            enhanced.forEach { assertEmbedded(it, graphCodeBERTUtils) }
+        }
+    }
+
+    @Test
+    fun testSendsEqualSnippetsOnce() = runBlocking {
+        // The copies only differ in the class names, so their fields and methods have equal snippets
+        val irData = copiesOfTheProject(3)
+        val entityCount = irData.sumOf { 1 + it.fields.size + it.methods.size }
+
+        EmbeddingStubServer().use { server ->
+            val graphCodeBERTUtils = GraphCodeBERTUtils(config = EmbeddingConfig(endpointURL = server.endpointURL))
+            val enhanced = graphCodeBERTUtils.enhanceIRDataWithEmbeddings(irData)
+            val statistics = graphCodeBERTUtils.lastStatistics!!
+            logger.info { "$statistics, dedup ratio ${statistics.dedupRatio}" }
+
+            val distinctSnippets = irData.flatMap { graphCodeBERTUtils.entitySnippets(it) }.toSet()
+            assertEquals(entityCount, statistics.entityCount)
+            assertEquals(distinctSnippets.size, statistics.uniqueSnippetCount)
+            assertEquals(distinctSnippets.size, server.batchSizes.sum(), "Each distinct snippet should be sent once")
+            assertEquals(statistics.requestCount, server.batchSizes.size)
+            assertTrue(statistics.dedupRatio > 0.5, "Two of three copies of the members should be deduplicated")
+            enhanced.forEach { assertEmbedded(it, graphCodeBERTUtils) }
+        }
+    }
+
+    @Test
+    fun testBatchesHoldSnippetsOfSimilarLength() = runBlocking {
+        val irData = copiesOfTheProject(5, distinct = true)
+
+        EmbeddingStubServer().use { server ->
+            val config = EmbeddingConfig(endpointURL = server.endpointURL, batchSize = 16, maxConcurrentRequests = 3, adaptiveBatching = null)
+            val graphCodeBERTUtils = GraphCodeBERTUtils(config = config)
+            val enhanced = graphCodeBERTUtils.enhanceIRDataWithEmbeddings(irData)
+            logger.info { "Snippet lengths by batch ${server.snippetLengths}" }
+
+            assertEquals(graphCodeBERTUtils.lastStatistics!!.uniqueSnippetCount, server.batchSizes.sum(), "Every distinct snippet should be sent once")
+            server.snippetLengths.forEach { lengths ->
+                // Snippets of the same bucket differ by less than a factor of two, apart from truncated ones
+                val truncated = lengths.map { minOf(it, 2048) }
+                assertTrue(truncated.max() < 2 * truncated.min(), "A batch should hold snippets of similar length: $lengths")
+            }
+            enhanced.forEach { assertEmbedded(it, graphCodeBERTUtils) }
+        }
+    }
+
+    @Test
+    fun testLengthBucketingBenchmark() = runBlocking {
+        val irData = copiesOfTheProject(20, distinct = true)
+
+        // A single model instance computing padded batches, a few microseconds per character
+        fun embed(bucketByLength: Boolean): Pair<Int, Long> {
+            EmbeddingStubServer(delayMillis = 1, nanosPerChar = 3_000, padded = true, serialized = true).use { server ->
+                val config = EmbeddingConfig(
+                    endpointURL = server.endpointURL, batchSize = 16, maxConcurrentRequests = 2, adaptiveBatching = null,
+                    bucketByLength = bucketByLength
+                )
+                val startTime = System.nanoTime()
+                GraphCodeBERTUtils(config = config).enhanceIRDataWithEmbeddings(irData)
+                return server.computedChars.sum() to (System.nanoTime() - startTime) / 1_000_000
+            }
+        }
+
+        embed(bucketByLength = true)     // Warm up
+        val (declarationOrderChars, declarationOrderMillis) = embed(bucketByLength = false)
+        val (bucketedChars, bucketedMillis) = embed(bucketByLength = true)
+        logger.info { "Declaration order: $declarationOrderChars padded characters in $declarationOrderMillis ms" }
+        logger.info { "Length buckets: $bucketedChars padded characters in $bucketedMillis ms" }
+
+        assertTrue(bucketedChars < declarationOrderChars / 2, "Length buckets should at least halve the padded characters")
+        assertTrue(bucketedMillis < declarationOrderMillis, "Length buckets should be faster on a padding server")
+    }
+
+    // The classes of the test project, repeated under different names; `distinct` renames their members as well,
+    // so that no snippets are equal
+    private suspend fun copiesOfTheProject(copies: Int, distinct: Boolean = false): List<IRClassEntity> {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+        return (0 until copies).flatMap { copy ->
+            irData.map { irClass ->
+                if (distinct) {
+                    irClass.copy(
+                        name = "${irClass.name}$copy",
+                        fields = irClass.fields.map { it.copy(name = "${it.name}$copy") },
+                        methods = irClass.methods.map { it.copy(name = "${it.name}$copy") }
+                    )
+                } else {
+                    irClass.copy(name = "${irClass.name}$copy")
+                }
+            }
+        }
+    }
+
+    // The stub derives the embedding from the snippet, so it shows which entity it belongs to
+    private fun assertEmbedded(irClass: IRClassEntity, graphCodeBERTUtils: GraphCodeBERTUtils) {
+        val snippets = graphCodeBERTUtils.entitySnippets(irClass)
+        val embeddings = listOf(irClass.embedding) + irClass.fields.map { it.embedding } + irClass.methods.map { it.embedding }
+        snippets.zip(embeddings).forEachIndexed { slot, (snippet, embedding) ->
+            assertEquals(EmbeddingStubServer.expectedEmbedding(snippet).toList(), embedding!!.values, "Embedding $slot of ${irClass.name}")
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.protogalaxy.fractalfathom.cli.output
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.SerializationFeature
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.junit.platform.commons.logging.LoggerFactory
+import org.protogalaxy.fractalfathom.cli.analysis.CodeAnalyzer
+import java.io.File
+
+class IRDataWriterTest {
+
+    @TempDir
+    lateinit var tempDir: File
+
+    private val logger = LoggerFactory.getLogger(IRDataWriterTest::class.java)
+    private val mapper = jacksonObjectMapper()
+    private val projectPath = "src/test/kotlin/org/protogalaxy/fractalfathom/cli/resources"
+
+    @Test
+    fun testFlowEmitsTheSameClassesAsTheList() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+        val streamedIrData = CodeAnalyzer(projectPath).analyzeProjectFlow().toList()
+
+        assertEquals(irData.map { it.name }.sorted(), streamedIrData.map { it.name }.sorted(), "Flow should emit every class once")
+    }
+
+    @Test
+    fun testWritesOneClassPerLineInNdjson() = runBlocking {
+        val file = File(tempDir, "irData.ndjson")
+        val classCount = IRDataWriter(IRFormat.NDJSON).write(CodeAnalyzer(projectPath).analyzeProjectFlow(), file)
+
+        val lines = file.readLines()
+        assertEquals(classCount, lines.size, "Expected one line per class")
+        lines.forEach { line ->
+            val node = mapper.readTree(line)
+            assertTrue(node.isObject, "Every line should be a JSON object")
+            assertTrue(node.has("name") && node.has("methods"), "Every line should hold a complete class")
+        }
+    }
+
+    @Test
+    fun testWritesJsonDocument() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+        val file = File(tempDir, "irData.json")
+        IRDataWriter(IRFormat.JSON).write(irData, file)
+
+        val node = mapper.readTree(file)
+        assertEquals(listOf("files", "classes"), node.fieldNames().asSequence().toList(), "The file table should precede the classes")
+        val files = node["files"].map { it.asText() }
+        assertEquals(irData.map { it.name }, node["classes"].map { it["name"].asText() }, "JSON output should keep the class order")
+        assertEquals(files.distinct(), files, "Every file should be listed once")
+        node["classes"].forEach { irClass ->
+            val location = irClass["sourceCodeLocation"]
+            assertTrue(location.isArray && location.size() == 5, "Locations should be written as arrays")
+            assertEquals(irClass["filePath"].asText(), files[location[0].asInt()], "Location should refer to the file of its class")
+        }
+    }
+
+    @Test
+    fun testReadsWhatWasWritten() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+
+        IRFormat.entries.forEach { format ->
+            val file = File(tempDir, "irData.${format.fileExtension}")
+            IRDataWriter(format).write(irData, file)
+            val readIrData = IRDataReader(format).read(file)
+
+            assertEquals(irData.map { it.sourceCodeLocation }, readIrData.map { it.sourceCodeLocation }, "Class locations should survive $format")
+            assertEquals(
+                irData.flatMap { it.methods }.map { it.copy(features = emptyList(), mappings = emptyList()) },
+                readIrData.flatMap { it.methods }.map { it.copy(features = emptyList(), mappings = emptyList()) },
+                "Methods should survive $format"
+            )
+        }
+    }
+
+    @Test
+    fun testReadsDocumentsWithTheTableAfterTheClasses() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+        val file = File(tempDir, "irData.json")
+        IRDataWriter(IRFormat.JSON).write(irData, file)
+
+        // The layout of earlier versions
+        val node = mapper.readTree(file)
+        val earlierFile = File(tempDir, "earlier.json")
+        mapper.writeValue(earlierFile, mapper.createObjectNode().apply {
+            set<JsonNode>("classes", node["classes"])
+            set<JsonNode>("files", node["files"])
+        })
+
+        val readIrData = IRDataReader(IRFormat.JSON).read(earlierFile)
+        assertEquals(irData.map { it.sourceCodeLocation }, readIrData.map { it.sourceCodeLocation })
+    }
+
+    @Test
+    fun testFileTableShrinksJsonOutput() = runBlocking {
+        val irData = CodeAnalyzer(projectPath).analyzeProject()
+        val verboseFile = File(tempDir, "verbose.json")
+        val compactFile = File(tempDir, "compact.json")
+        jacksonObjectMapper().apply {
+            registerModule(JavaTimeModule())
+            disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        }.writerWithDefaultPrettyPrinter().writeValue(verboseFile, irData)
+        IRDataWriter(IRFormat.JSON).write(irData, compactFile)
+
+        logger.info { "Verbose locations: ${verboseFile.length()} bytes, file table: ${compactFile.length()} bytes" }
+        assertTrue(compactFile.length() < verboseFile.length(), "The file table should make the JSON output smaller")
+        assertEquals(irData.map { it.name }, IRDataReader(IRFormat.JSON).read(verboseFile).map { it.name }, "Plain arrays should still be readable")
+    }
+
+    @Test
+    fun testBinaryFormatsBenchmark() = runBlocking {
+        // Repeat the IR of the test resources to get a file of a few megabytes
+        val irData = CodeAnalyzer(projectPath).analyzeProject().let { classes -> List(200) { classes }.flatten() }
+        val sizes = HashMap<IRFormat, Long>()
+
+        listOf(IRFormat.JSON, IRFormat.SMILE, IRFormat.CBOR).forEach { format ->
+            val file = File(tempDir, "benchmark.${format.fileExtension}")
+            val writer = IRDataWriter(format)
+            val reader = IRDataReader(format)
+            // Warm up before measuring
+            writer.write(irData, file)
+            assertEquals(irData.size, reader.read(file).size, "$format should read every class back")
+
+            val iterations = 3
+            var writeNanos = 0L
+            var readNanos = 0L
+            repeat(iterations) {
+                val writeStart = System.nanoTime()
+                writer.write(irData, file)
+                writeNanos += System.nanoTime() - writeStart
+                val readStart = System.nanoTime()
+                reader.read(file)
+                readNanos += System.nanoTime() - readStart
+            }
+            sizes[format] = file.length()
+
+            logger.info {
+                "$format: ${file.length() / 1024}KB for ${irData.size} classes, " +
+                        "write ${writeNanos / iterations / 1_000_000}ms, read ${readNanos / iterations / 1_000_000}ms"
+            }
+        }
+
+        assertTrue(sizes[IRFormat.SMILE]!! < sizes[IRFormat.JSON]!!, "Smile should be smaller than JSON")
+        assertTrue(sizes[IRFormat.CBOR]!! < sizes[IRFormat.JSON]!!, "CBOR should be smaller than JSON")
+    }
+}